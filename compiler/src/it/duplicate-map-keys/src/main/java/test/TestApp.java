@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import dagger.MapKey;
+import dagger.Module;
+import dagger.Provides;
+import java.util.Map;
+import javax.inject.Inject;
+
+import static dagger.Provides.Type.MAP;
+
+class TestApp {
+  @Inject Map<String, String> strings;
+
+  @Module(entryPoints = TestApp.class, includes = OtherModule.class)
+  static class TestModule {
+    @Provides(type = MAP) @MapKey("a") String a() {
+      return "a";
+    }
+    @Provides(type = MAP) @MapKey("b") String b() {
+      return "b";
+    }
+    @Provides(type = MAP) @MapKey("b") String anotherB() {
+      return "b";
+    }
+  }
+
+  @Module(library = true)
+  static class OtherModule {
+    @Provides(type = MAP) @MapKey("a") String anotherA() {
+      return "a";
+    }
+  }
+}
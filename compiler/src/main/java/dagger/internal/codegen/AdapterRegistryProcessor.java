@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal.codegen;
+
+import com.squareup.java.JavaWriter;
+import dagger.internal.plugins.loading.AdapterRegistry;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import static dagger.internal.plugins.loading.ClassloadingPlugin.INJECT_ADAPTER_SUFFIX;
+import static dagger.internal.plugins.loading.ClassloadingPlugin.MODULE_ADAPTER_SUFFIX;
+import static dagger.internal.plugins.loading.ClassloadingPlugin.REGISTRY_INDEX;
+import static dagger.internal.plugins.loading.ClassloadingPlugin.STATIC_INJECTION_SUFFIX;
+import static java.lang.reflect.Modifier.FINAL;
+import static java.lang.reflect.Modifier.PUBLIC;
+
+/**
+ * Generates an {@link AdapterRegistry} that creates the adapters generated by
+ * {@code InjectProcessor} and {@code ProvidesProcessor} without reflection,
+ * and lists the registries in the {@link
+ * dagger.internal.plugins.loading.ClassloadingPlugin#REGISTRY_INDEX} resource.
+ *
+ * <p>Generated adapters are root elements of the round after the one that
+ * generated them, so each round's adapters are registered in the next round.
+ */
+@SupportedAnnotationTypes("*")
+public final class AdapterRegistryProcessor extends AbstractProcessor {
+  private final List<String> registryNames = new ArrayList<String>();
+
+  @Override public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override public boolean process(Set<? extends TypeElement> types, RoundEnvironment env) {
+    if (env.processingOver()) {
+      if (!registryNames.isEmpty()) {
+        try {
+          writeRegistryIndex();
+        } catch (IOException e) {
+          error("Code gen failed: " + e);
+        }
+      }
+      return false;
+    }
+
+    List<String> adapterNames = new ArrayList<String>();
+    for (Element element : env.getRootElements()) {
+      if (isAdapter(element)) {
+        adapterNames.add(((TypeElement) element).getQualifiedName().toString());
+      }
+    }
+    if (!adapterNames.isEmpty()) {
+      try {
+        writeRegistry(adapterNames);
+      } catch (IOException e) {
+        error("Code gen failed: " + e);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true if {@code element} is an adapter that the runtime would load
+   * by name: a public top-level class with a public no-arg constructor and
+   * one of the adapter suffixes.
+   */
+  private boolean isAdapter(Element element) {
+    if (element.getKind() != ElementKind.CLASS
+        || !element.getModifiers().contains(Modifier.PUBLIC)
+        || element.getModifiers().contains(Modifier.ABSTRACT)) {
+      return false;
+    }
+    String name = ((TypeElement) element).getQualifiedName().toString();
+    if (!name.endsWith(INJECT_ADAPTER_SUFFIX)
+        && !name.endsWith(MODULE_ADAPTER_SUFFIX)
+        && !name.endsWith(STATIC_INJECTION_SUFFIX)) {
+      return false;
+    }
+    for (ExecutableElement constructor
+        : ElementFilter.constructorsIn(element.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty()
+          && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Write a registry for {@code adapterNames} in the package of the first
+   * adapter. Its name is derived from the adapters it creates so that each
+   * round's registry has a distinct name.
+   */
+  private void writeRegistry(List<String> adapterNames) throws IOException {
+    String firstName = adapterNames.get(0);
+    int lastDot = firstName.lastIndexOf('.');
+    String packageName = lastDot != -1 ? firstName.substring(0, lastDot) : "";
+    String simpleName = "AdapterRegistry$$" + Integer.toHexString(adapterNames.hashCode());
+    String registryName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+    JavaFileObject sourceFile = processingEnv.getFiler().createSourceFile(registryName);
+    JavaWriter writer = new JavaWriter(sourceFile.openWriter());
+    writer.emitEndOfLineComment(ProcessorJavadocs.GENERATED_BY_DAGGER);
+    if (!packageName.isEmpty()) {
+      writer.emitPackage(packageName);
+    }
+
+    writer.emitEmptyLine();
+    writer.emitImports(CodeGen.setOf(AdapterRegistry.class.getName()));
+
+    writer.emitEmptyLine();
+    writer.emitJavadoc(ProcessorJavadocs.ADAPTER_REGISTRY_TYPE);
+    writer.beginType(registryName, "class", PUBLIC | FINAL, null,
+        AdapterRegistry.class.getSimpleName());
+
+    writer.emitAnnotation(Override.class);
+    writer.beginMethod("String[]", "getClassNames", PUBLIC);
+    StringBuilder names = new StringBuilder();
+    for (String adapterName : adapterNames) {
+      names.append("\n        ").append(JavaWriter.stringLiteral(adapterName)).append(",");
+    }
+    names.setLength(names.length() - 1);
+    writer.emitStatement("return new String[] {%s\n    }", names);
+    writer.endMethod();
+
+    writer.emitEmptyLine();
+    writer.emitAnnotation(Override.class);
+    writer.beginMethod("Object", "newInstance", PUBLIC, "int", "index");
+    writer.beginControlFlow("switch (index)");
+    for (int i = 0; i < adapterNames.size(); i++) {
+      writer.emitStatement("case %d: return new %s()", i, adapterNames.get(i));
+    }
+    writer.emitStatement("default: throw new IllegalArgumentException(String.valueOf(index))");
+    writer.endControlFlow();
+    writer.endMethod();
+
+    writer.endType();
+    writer.close();
+
+    registryNames.add(registryName);
+  }
+
+  private void writeRegistryIndex() throws IOException {
+    FileObject resource = processingEnv.getFiler()
+        .createResource(StandardLocation.CLASS_OUTPUT, "", REGISTRY_INDEX);
+    Writer writer = resource.openWriter();
+    try {
+      for (String registryName : registryNames) {
+        writer.write(registryName);
+        writer.write("\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
+  private void error(String msg) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg);
+  }
+}
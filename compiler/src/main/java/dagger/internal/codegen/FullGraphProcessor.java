@@ -15,12 +15,16 @@
  */
 package dagger.internal.codegen;
 
+import com.squareup.java.JavaWriter;
+import dagger.MapKey;
 import dagger.Module;
 import dagger.Provides;
 import dagger.internal.Binding;
 import dagger.internal.Linker;
+import dagger.internal.MapBinding;
 import dagger.internal.ProblemDetector;
 import dagger.internal.SetBinding;
+import dagger.internal.ValidationCertificate;
 import dagger.internal.plugins.AbstractProviderMethodBinding;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -30,6 +34,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -58,6 +63,9 @@ import javax.tools.StandardLocation;
 @SupportedAnnotationTypes("dagger.Module")
 public final class FullGraphProcessor extends AbstractProcessor {
   private final Set<String> delayedModuleNames = new LinkedHashSet<String>();
+  private final List<String> certificates = new ArrayList<String>();
+  /** Methods reported for duplicate map keys, which each module set may contribute again. */
+  private final Set<ExecutableElement> reportedMapEntries = new HashSet<ExecutableElement>();
 
   @Override public SourceVersion getSupportedSourceVersion() {
     return SourceVersion.latestSupported();
@@ -92,8 +100,9 @@ public final class FullGraphProcessor extends AbstractProcessor {
 
       if (annotation.get("complete").equals(Boolean.TRUE)) {
         Map<String, Binding<?>> bindings;
+        Set<String> installedKeys = new LinkedHashSet<String>();
         try {
-          bindings = processCompleteModule(moduleType, false);
+          bindings = processCompleteModule(moduleType, false, installedKeys);
           new ProblemDetector().detectCircularDependencies(bindings.values());
         } catch (ModuleValidationException e) {
           error("Graph validation failed: " + e.getMessage(), e.source);
@@ -102,6 +111,7 @@ public final class FullGraphProcessor extends AbstractProcessor {
           error("Graph validation failed: " + e.getMessage(), moduleType);
           continue;
         }
+        certify(moduleType, bindings, installedKeys);
         try {
           writeDotFile(moduleType, bindings);
         } catch (IOException e) {
@@ -114,7 +124,7 @@ public final class FullGraphProcessor extends AbstractProcessor {
       }
 
       if (annotation.get("library").equals(Boolean.FALSE)) {
-        Map<String, Binding<?>> bindings = processCompleteModule(moduleType, true);
+        Map<String, Binding<?>> bindings = processCompleteModule(moduleType, true, null);
         try {
           new ProblemDetector().detectUnusedBinding(bindings.values());
         } catch (IllegalStateException e) {
@@ -122,15 +132,66 @@ public final class FullGraphProcessor extends AbstractProcessor {
         }
       }
     }
+
+    if (!certificates.isEmpty()) {
+      try {
+        writeCertificateIndex();
+      } catch (IOException e) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Code gen failed: " + e);
+      }
+    }
     return true;
   }
 
+  /**
+   * Issues a {@link ValidationCertificate} for the modules of {@code
+   * rootModule}, which has no dependency cycles, if runtime validation of a
+   * graph of these modules would find no other problems.
+   */
+  private void certify(TypeElement rootModule, Map<String, Binding<?>> bindings,
+      Set<String> installedKeys) {
+    Map<String, TypeElement> allModules = new LinkedHashMap<String, TypeElement>();
+    collectIncludesRecursively(rootModule, allModules, new LinkedList<String>());
+    List<String> moduleNames = new ArrayList<String>();
+    for (TypeElement module : allModules.values()) {
+      Map<String, Object> annotation = CodeGen.getAnnotation(Module.class, module);
+      if (((Object[]) annotation.get("staticInjections")).length != 0) {
+        return; // Static injections aren't validated at compile time.
+      }
+      moduleNames.add(processingEnv.getElementUtils().getBinaryName(module).toString());
+    }
+    try {
+      new ProblemDetector().detectUnusedBinding(bindings.values());
+    } catch (IllegalStateException e) {
+      return; // Runtime validation reports unused bindings, even of library modules.
+    }
+    certificates.add(ValidationCertificate.digest(moduleNames, installedKeys));
+  }
+
+  private void writeCertificateIndex() throws IOException {
+    FileObject resource = processingEnv.getFiler()
+        .createResource(StandardLocation.CLASS_OUTPUT, "", ValidationCertificate.INDEX);
+    Writer writer = resource.openWriter();
+    try {
+      for (String certificate : certificates) {
+        writer.write(certificate);
+        writer.write("\n");
+      }
+    } finally {
+      writer.close();
+    }
+  }
+
   private void error(String message, Element element) {
     processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
   }
 
+  /**
+   * @param installedKeys receives the keys of the bindings installed by the
+   *     modules, or null.
+   */
   private Map<String, Binding<?>> processCompleteModule(TypeElement rootModule,
-      boolean ignoreCompletenessErrors) {
+      boolean ignoreCompletenessErrors, Set<String> installedKeys) {
     Map<String, TypeElement> allModules = new LinkedHashMap<String, TypeElement>();
     collectIncludesRecursively(rootModule, allModules, new LinkedList<String>());
 
@@ -143,6 +204,8 @@ public final class FullGraphProcessor extends AbstractProcessor {
     synchronized (linker) {
       Map<String, Binding<?>> baseBindings = new LinkedHashMap<String, Binding<?>>();
       Map<String, Binding<?>> overrideBindings = new LinkedHashMap<String, Binding<?>>();
+      // The method contributing each map entry, by binding set, map key and entry key.
+      Map<String, ExecutableElement> mapEntries = new LinkedHashMap<String, ExecutableElement>();
       for (TypeElement module : allModules.values()) {
         Map<String, Object> annotation = CodeGen.getAnnotation(Module.class, module);
         boolean overrides = (Boolean) annotation.get("overrides");
@@ -189,6 +252,27 @@ public final class FullGraphProcessor extends AbstractProcessor {
               SetBinding.add(addTo, elementKey, binding);
               break;
 
+            case MAP:
+              MapKey entryKey = providerMethod.getAnnotation(MapKey.class);
+              if (entryKey == null) {
+                break; // Reported by ProvidesProcessor.
+              }
+              String mapKey = GeneratorKeys.getMapKey(providerMethod);
+              String mapEntry = (overrides ? "overrides " : "") + mapKey + " "
+                  + JavaWriter.stringLiteral(entryKey.value());
+              ExecutableElement clobberedMethod = mapEntries.put(mapEntry, providerMethod);
+              if (clobberedMethod == null) {
+                MapBinding.add(addTo, mapKey, entryKey.value(), binding);
+              } else if (clobberedMethod.getEnclosingElement() != module
+                  && reportedMapEntries.add(providerMethod)) {
+                // Duplicates within a module are reported by ProvidesProcessor.
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Duplicate map key " + JavaWriter.stringLiteral(entryKey.value())
+                        + " for " + mapKey + ": " + shortMethodName(clobberedMethod)
+                        + ", " + shortMethodName(providerMethod), providerMethod);
+              }
+              break;
+
             default:
               throw new AssertionError("Unknown @Provides type " + provides.type());
           }
@@ -197,6 +281,10 @@ public final class FullGraphProcessor extends AbstractProcessor {
 
       linker.installBindings(baseBindings);
       linker.installBindings(overrideBindings);
+      if (installedKeys != null) {
+        installedKeys.addAll(baseBindings.keySet());
+        installedKeys.addAll(overrideBindings.keySet());
+      }
 
       // Link the bindings. This will traverse the dependency graph, and report
       // errors if any dependencies are missing.
@@ -18,12 +18,16 @@ package dagger.internal.codegen;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import javax.inject.Qualifier;
 import javax.lang.model.element.AnnotationMirror;
 import javax.lang.model.element.AnnotationValue;
 import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.VariableElement;
 import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.SimpleAnnotationValueVisitor6;
 
 /**
  * Creates keys using javac's mirror APIs. Unlike {@code Keys}, this class uses
@@ -31,6 +35,8 @@ import javax.lang.model.type.TypeMirror;
  */
 final class GeneratorKeys {
   private static final String SET_PREFIX = Set.class.getCanonicalName() + "<";
+  private static final String MAP_PREFIX = Map.class.getCanonicalName() + "<"
+      + String.class.getName() + ", ";
 
   private GeneratorKeys() {
   }
@@ -75,6 +81,19 @@ final class GeneratorKeys {
     return result.toString();
   }
 
+  /** Returns the provided key for {@code method} wrapped by {@code Map<String, ...>}. */
+  public static String getMapKey(ExecutableElement method) {
+    StringBuilder result = new StringBuilder();
+    AnnotationMirror qualifier = getQualifier(method.getAnnotationMirrors(), method);
+    if (qualifier != null) {
+      qualifierToString(qualifier, result);
+    }
+    result.append(MAP_PREFIX);
+    CodeGen.typeToString(method.getReturnType(), result, '$');
+    result.append(">");
+    return result.toString();
+  }
+
   /** Returns the provider key for {@code variable}. */
   public static String get(VariableElement variable) {
     StringBuilder result = new StringBuilder();
@@ -87,17 +106,74 @@ final class GeneratorKeys {
   }
 
   private static void qualifierToString(AnnotationMirror qualifier, StringBuilder result) {
-    // TODO: guarantee that element values are sorted by name (if there are multiple)
+    appendQualifier(qualifier, result);
+    result.append("/");
+  }
+
+  /**
+   * Appends the canonical form of {@code qualifier} used by {@code Keys}: every
+   * member, including those with default values, in order of member name.
+   */
+  private static void appendQualifier(AnnotationMirror qualifier, StringBuilder result) {
+    Map<String, AnnotationValue> values = new TreeMap<String, AnnotationValue>();
+    TypeElement annotationType = (TypeElement) qualifier.getAnnotationType().asElement();
+    for (ExecutableElement member : ElementFilter.methodsIn(annotationType.getEnclosedElements())) {
+      values.put(member.getSimpleName().toString(), member.getDefaultValue());
+    }
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+        : qualifier.getElementValues().entrySet()) {
+      values.put(entry.getKey().getSimpleName().toString(), entry.getValue());
+    }
+
     result.append('@');
     CodeGen.typeToString(qualifier.getAnnotationType(), result, '$');
     result.append('(');
-    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
-        : qualifier.getElementValues().entrySet()) {
-      result.append(entry.getKey().getSimpleName());
-      result.append('=');
-      result.append(entry.getValue().getValue());
+    boolean first = true;
+    for (Map.Entry<String, AnnotationValue> entry : values.entrySet()) {
+      if (!first) {
+        result.append(", ");
+      }
+      first = false;
+      result.append(entry.getKey()).append('=');
+      appendValue(entry.getValue(), result);
     }
-    result.append(")/");
+    result.append(')');
+  }
+
+  private static void appendValue(AnnotationValue value, final StringBuilder result) {
+    value.accept(new SimpleAnnotationValueVisitor6<Void, Void>() {
+      @Override protected Void defaultAction(Object o, Void v) {
+        result.append(o);
+        return null;
+      }
+      @Override public Void visitType(TypeMirror type, Void v) {
+        if (type.getKind().isPrimitive()) {
+          result.append(type);
+        } else {
+          CodeGen.typeToString(type, result, '$');
+        }
+        return null;
+      }
+      @Override public Void visitEnumConstant(VariableElement constant, Void v) {
+        result.append(constant.getSimpleName());
+        return null;
+      }
+      @Override public Void visitAnnotation(AnnotationMirror annotation, Void v) {
+        appendQualifier(annotation, result);
+        return null;
+      }
+      @Override public Void visitArray(List<? extends AnnotationValue> values, Void v) {
+        result.append('[');
+        for (int i = 0; i < values.size(); i++) {
+          if (i != 0) {
+            result.append(", ");
+          }
+          appendValue(values.get(i), result);
+        }
+        result.append(']');
+        return null;
+      }
+    }, null);
   }
 
   private static AnnotationMirror getQualifier(
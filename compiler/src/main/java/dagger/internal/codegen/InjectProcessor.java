@@ -18,6 +18,7 @@ package dagger.internal.codegen;
 import com.squareup.java.JavaWriter;
 import dagger.MembersInjector;
 import dagger.internal.Binding;
+import dagger.internal.Key;
 import dagger.internal.Linker;
 import dagger.internal.StaticInjection;
 import java.io.IOException;
@@ -51,6 +52,7 @@ import static dagger.internal.plugins.loading.ClassloadingPlugin.STATIC_INJECTIO
 import static java.lang.reflect.Modifier.FINAL;
 import static java.lang.reflect.Modifier.PRIVATE;
 import static java.lang.reflect.Modifier.PUBLIC;
+import static java.lang.reflect.Modifier.STATIC;
 
 /**
  * Generates an implementation of {@link Binding} that injects the
@@ -253,6 +255,19 @@ public final class InjectProcessor extends AbstractProcessor {
       writer.emitField(JavaWriter.type(Binding.class,
           CodeGen.rawTypeToString(supertype, '.')), "supertype", PRIVATE);
     }
+    if (constructor != null) {
+      for (VariableElement parameter : constructor.getParameters()) {
+        emitKeyField(writer, parameterName(disambiguateFields, parameter),
+            GeneratorKeys.get(parameter));
+      }
+    }
+    for (Element field : fields) {
+      emitKeyField(writer, fieldName(disambiguateFields, field),
+          GeneratorKeys.get((VariableElement) field));
+    }
+    if (supertype != null) {
+      emitKeyField(writer, "supertype", GeneratorKeys.rawMembersKey(supertype));
+    }
 
     writer.emitEmptyLine();
     writer.beginMethod(null, adapterName, PUBLIC);
@@ -276,7 +291,7 @@ public final class InjectProcessor extends AbstractProcessor {
               parameterName(disambiguateFields, parameter),
               writer.compressType(JavaWriter.type(Binding.class,
                   CodeGen.typeToString(parameter.asType()))),
-              JavaWriter.stringLiteral(GeneratorKeys.get(parameter)),
+              keyFieldName(parameterName(disambiguateFields, parameter)),
               strippedTypeName);
         }
       }
@@ -285,7 +300,7 @@ public final class InjectProcessor extends AbstractProcessor {
             fieldName(disambiguateFields, field),
             writer.compressType(JavaWriter.type(Binding.class,
                 CodeGen.typeToString(field.asType()))),
-            JavaWriter.stringLiteral(GeneratorKeys.get((VariableElement) field)),
+            keyFieldName(fieldName(disambiguateFields, field)),
             strippedTypeName);
       }
       if (supertype != null) {
@@ -293,7 +308,7 @@ public final class InjectProcessor extends AbstractProcessor {
             "supertype",
             writer.compressType(JavaWriter.type(Binding.class,
                 CodeGen.rawTypeToString(supertype, '.'))),
-            JavaWriter.stringLiteral(GeneratorKeys.rawMembersKey(supertype)),
+            keyFieldName("supertype"),
             strippedTypeName);
       }
       writer.endMethod();
@@ -375,6 +390,7 @@ public final class InjectProcessor extends AbstractProcessor {
     Set<String> imports = new LinkedHashSet<String>();
     imports.add(Binding.class.getCanonicalName());
     if (dependent) {
+      imports.add(Key.class.getCanonicalName());
       imports.add(Linker.class.getCanonicalName());
       imports.add(Set.class.getCanonicalName());
     }
@@ -404,6 +420,7 @@ public final class InjectProcessor extends AbstractProcessor {
     writer.emitImports(CodeGen.setOf(
         StaticInjection.class.getName(),
         Binding.class.getName(),
+        Key.class.getName(),
         Linker.class.getName()));
 
     writer.emitEmptyLine();
@@ -416,6 +433,9 @@ public final class InjectProcessor extends AbstractProcessor {
           CodeGen.typeToString(field.asType())),
           fieldName(false, field), PRIVATE);
     }
+    for (Element field : fields) {
+      emitKeyField(writer, fieldName(false, field), GeneratorKeys.get((VariableElement) field));
+    }
 
     writer.emitEmptyLine();
     writer.emitJavadoc(ProcessorJavadocs.ATTACH_METHOD);
@@ -426,7 +446,7 @@ public final class InjectProcessor extends AbstractProcessor {
           fieldName(false, field),
           writer.compressType(JavaWriter.type(Binding.class,
               CodeGen.typeToString(field.asType()))),
-          JavaWriter.stringLiteral(GeneratorKeys.get((VariableElement) field)),
+          keyFieldName(fieldName(false, field)),
           typeName);
     }
     writer.endMethod();
@@ -447,6 +467,20 @@ public final class InjectProcessor extends AbstractProcessor {
     writer.close();
   }
 
+  /**
+   * Emits a constant holding the interned key for the binding field {@code
+   * bindingName}, so {@code attach} doesn't look up keys by name.
+   */
+  private void emitKeyField(JavaWriter writer, String bindingName, String key)
+      throws IOException {
+    writer.emitField("Key", keyFieldName(bindingName), PRIVATE | STATIC | FINAL,
+        String.format("Key.get(%s)", JavaWriter.stringLiteral(key)));
+  }
+
+  private String keyFieldName(String bindingName) {
+    return "KEY_" + bindingName;
+  }
+
   private String fieldName(boolean disambiguateFields, Element field) {
     return (disambiguateFields ? "field_" : "") + field.getSimpleName().toString();
   }
@@ -16,10 +16,13 @@
 package dagger.internal.codegen;
 
 import com.squareup.java.JavaWriter;
+import dagger.MapKey;
 import dagger.Module;
 import dagger.Provides;
 import dagger.internal.Binding;
+import dagger.internal.Key;
 import dagger.internal.Linker;
+import dagger.internal.MapBinding;
 import dagger.internal.ModuleAdapter;
 import dagger.internal.SetBinding;
 import java.io.IOException;
@@ -164,6 +167,19 @@ public final class ProvidesProcessor extends AbstractProcessor {
         continue;
       }
 
+      boolean mapKey = providerMethod.getAnnotation(MapKey.class) != null;
+      boolean mapType = providerMethod.getAnnotation(Provides.class).type() == Provides.Type.MAP;
+      if (mapType && !mapKey) {
+        error("@Provides(type = MAP) method must be annotated @MapKey: "
+            + type.getQualifiedName() + "." + providerMethod, providerMethod);
+        continue;
+      }
+      if (mapKey && !mapType) {
+        error("@MapKey applies only to @Provides(type = MAP) methods: "
+            + type.getQualifiedName() + "." + providerMethod, providerMethod);
+        continue;
+      }
+
       List<ExecutableElement> methods = result.get(type.getQualifiedName().toString());
       if (methods == null) {
         methods = new ArrayList<ExecutableElement>();
@@ -226,14 +242,16 @@ public final class ProvidesProcessor extends AbstractProcessor {
         .createSourceFile(adapterName, type);
     JavaWriter writer = new JavaWriter(sourceFile.openWriter());
 
-    boolean multibindings = checkForMultibindings(providerMethods);
+    boolean setBindings = checkForMultibindings(providerMethods, Provides.Type.SET);
+    boolean mapBindings = checkForMultibindings(providerMethods, Provides.Type.MAP);
     boolean providerMethodDependencies = checkForDependencies(providerMethods);
 
     writer.emitEndOfLineComment(ProcessorJavadocs.GENERATED_BY_DAGGER);
     writer.emitPackage(CodeGen.getPackage(type).getQualifiedName().toString());
     writer.emitEmptyLine();
     writer.emitImports(
-        getImports(multibindings, !providerMethods.isEmpty(), providerMethodDependencies));
+        getImports(setBindings, mapBindings, !providerMethods.isEmpty(),
+            providerMethodDependencies));
 
     String typeName = type.getQualifiedName().toString();
     writer.emitEmptyLine();
@@ -280,6 +298,12 @@ public final class ProvidesProcessor extends AbstractProcessor {
         + "INCLUDES, %s /*complete*/, %s /*library*/)", overrides, complete, library);
     writer.endMethod();
 
+    writer.emitEmptyLine();
+    writer.emitAnnotation(Override.class);
+    writer.beginMethod(JavaWriter.type(ModuleAdapter.class, typeName), "newAdapter", PROTECTED);
+    writer.emitStatement("return new %s()", adapterName);
+    writer.endMethod();
+
     ExecutableElement noArgsConstructor = CodeGen.getNoArgsConstructor(type);
     if (noArgsConstructor != null && CodeGen.isCallableConstructor(noArgsConstructor)) {
       writer.emitEmptyLine();
@@ -299,6 +323,8 @@ public final class ProvidesProcessor extends AbstractProcessor {
       writer.emitAnnotation(Override.class);
       writer.beginMethod("void", "getBindings", PUBLIC, BINDINGS_MAP, "map");
 
+      Map<String, Map<String, ExecutableElement>> mapEntries
+          = new HashMap<String, Map<String, ExecutableElement>>();
       for (ExecutableElement providerMethod : providerMethods) {
         Provides provides = providerMethod.getAnnotation(Provides.class);
         switch (provides.type()) {
@@ -315,6 +341,17 @@ public final class ProvidesProcessor extends AbstractProcessor {
                 bindingClassName(providerMethod, methodToClassName, methodNameToNextId));
             break;
           }
+          case MAP: {
+            String key = GeneratorKeys.getMapKey(providerMethod);
+            String entryKey = providerMethod.getAnnotation(MapKey.class).value();
+            if (!addMapEntry(mapEntries, key, entryKey, providerMethod)) {
+              break;
+            }
+            writer.emitStatement("MapBinding.add(map, %s, %s, new %s(module))",
+                JavaWriter.stringLiteral(key), JavaWriter.stringLiteral(entryKey),
+                bindingClassName(providerMethod, methodToClassName, methodNameToNextId));
+            break;
+          }
           default:
             throw new AssertionError("Unknown @Provides type " + provides.type());
         }
@@ -331,7 +368,31 @@ public final class ProvidesProcessor extends AbstractProcessor {
     writer.close();
   }
 
-  private Set<String> getImports(boolean multibindings, boolean providers, boolean dependencies) {
+  /**
+   * Records that {@code providerMethod} contributes the entry for {@code
+   * entryKey} to the map bound to {@code key}. Returns false and reports an
+   * error if another method of the module already contributes it.
+   */
+  private boolean addMapEntry(Map<String, Map<String, ExecutableElement>> mapEntries, String key,
+      String entryKey, ExecutableElement providerMethod) {
+    Map<String, ExecutableElement> entries = mapEntries.get(key);
+    if (entries == null) {
+      entries = new HashMap<String, ExecutableElement>();
+      mapEntries.put(key, entries);
+    }
+    ExecutableElement clobbered = entries.put(entryKey, providerMethod);
+    if (clobbered != null) {
+      entries.put(entryKey, clobbered);
+      error("Duplicate map key " + JavaWriter.stringLiteral(entryKey) + " for " + key + ": "
+          + clobbered.getSimpleName() + "(), " + providerMethod.getSimpleName() + "()",
+          providerMethod);
+      return false;
+    }
+    return true;
+  }
+
+  private Set<String> getImports(boolean setBindings, boolean mapBindings, boolean providers,
+      boolean dependencies) {
     Set<String> imports = new LinkedHashSet<String>();
     imports.add(ModuleAdapter.class.getCanonicalName());
     if (providers) {
@@ -340,12 +401,16 @@ public final class ProvidesProcessor extends AbstractProcessor {
       imports.add(Provider.class.getCanonicalName());
     }
     if (dependencies) {
+      imports.add(Key.class.getCanonicalName());
       imports.add(Linker.class.getCanonicalName());
       imports.add(Set.class.getCanonicalName());
     }
-    if (multibindings) {
+    if (setBindings) {
       imports.add(SetBinding.class.getCanonicalName());
     }
+    if (mapBindings) {
+      imports.add(MapBinding.class.getCanonicalName());
+    }
     return imports;
   }
 
@@ -358,9 +423,10 @@ public final class ProvidesProcessor extends AbstractProcessor {
     return false;
   }
 
-  private boolean checkForMultibindings(List<ExecutableElement> providerMethods) {
+  private boolean checkForMultibindings(List<ExecutableElement> providerMethods,
+      Provides.Type type) {
     for (ExecutableElement element : providerMethods) {
-      if (element.getAnnotation(Provides.class).type() == Provides.Type.SET) {
+      if (element.getAnnotation(Provides.class).type() == type) {
         return true;
       }
     }
@@ -412,6 +478,10 @@ public final class ProvidesProcessor extends AbstractProcessor {
           CodeGen.typeToString(parameterType)),
           parameterName(parameter), PRIVATE);
     }
+    for (VariableElement parameter : parameters) {
+      writer.emitField("Key", keyFieldName(parameter), PRIVATE | STATIC | FINAL,
+          String.format("Key.get(%s)", JavaWriter.stringLiteral(GeneratorKeys.get(parameter))));
+    }
 
     writer.emitEmptyLine();
     writer.beginMethod(null, className, PUBLIC, moduleType, "module");
@@ -431,12 +501,11 @@ public final class ProvidesProcessor extends AbstractProcessor {
       writer.emitAnnotation(SuppressWarnings.class, JavaWriter.stringLiteral("unchecked"));
       writer.beginMethod("void", "attach", PUBLIC, Linker.class.getCanonicalName(), "linker");
       for (VariableElement parameter : parameters) {
-        String parameterKey = GeneratorKeys.get(parameter);
         writer.emitStatement("%s = (%s) linker.requestBinding(%s, %s.class)",
             parameterName(parameter),
             writer.compressType(JavaWriter.type(Binding.class,
                 CodeGen.typeToString(parameter.asType()))),
-            JavaWriter.stringLiteral(parameterKey),
+            keyFieldName(parameter),
             writer.compressType(moduleType));
       }
       writer.endMethod();
@@ -470,6 +539,11 @@ public final class ProvidesProcessor extends AbstractProcessor {
     writer.endType();
   }
 
+  /** Returns the name of the constant holding the interned key for {@code parameter}. */
+  private String keyFieldName(Element parameter) {
+    return "KEY_" + parameterName(parameter);
+  }
+
   private String parameterName(Element parameter) {
     if (parameter.getSimpleName().contentEquals("module")) {
       return "parameter_" + parameter.getSimpleName().toString();
@@ -17,19 +17,35 @@
 package dagger;
 
 import dagger.internal.Binding;
+import dagger.internal.IdentityIndex;
+import dagger.internal.Instrumentation;
+import dagger.internal.Key;
 import dagger.internal.Keys;
 import dagger.internal.Linker;
 import dagger.internal.ModuleAdapter;
 import dagger.internal.Plugin;
 import dagger.internal.ProblemDetector;
 import dagger.internal.RuntimeAggregatingPlugin;
+import dagger.internal.SingletonWarmUp;
 import dagger.internal.StaticInjection;
+import dagger.internal.StrictPlugin;
 import dagger.internal.ThrowingErrorHandler;
 import dagger.internal.UniqueMap;
+import dagger.internal.ValidationCertificate;
 import dagger.internal.plugins.loading.ClassloadingPlugin;
 import dagger.internal.plugins.reflect.ReflectivePlugin;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import static dagger.internal.RuntimeAggregatingPlugin.getAllModuleAdapters;
 
@@ -94,20 +110,113 @@ public abstract class ObjectGraph {
    */
   public abstract ObjectGraph plus(Object... modules);
 
+  /**
+   * Returns a template for graphs that {@link #plus} would create from modules
+   * of {@code moduleTypes}. Use it when many graphs are created from the same
+   * module types, for example one for each request.
+   *
+   * <p>The template finds the module adapters of these types and of the modules
+   * they include once. It also collects their entry points and static
+   * injections once, and checks their bindings for duplicates once. Each
+   * graph it creates only copies the adapters for its own module instances
+   * and installs their bindings. Like {@link #plus}, it doesn't link this
+   * graph.
+   */
+  public abstract Template planPlus(Class<?>... moduleTypes);
+
+  /**
+   * Creates graphs from modules of planned types. Templates are returned by
+   * {@link ObjectGraph#planCreate} and {@link ObjectGraph#planPlus}.
+   */
+  public abstract static class Template {
+    Template() {
+    }
+
+    /**
+     * Returns a new object graph with the objects in {@code modules}, plus all
+     * of the objects in the planned base graph if there is one. Each module
+     * must be an instance of one of the planned module types. Modules of
+     * planned types or their includes that aren't supplied are constructed,
+     * as they are by {@link ObjectGraph#create} and {@link ObjectGraph#plus}.
+     *
+     * <p>Every graph has its own modules, bindings and singletons. Once a
+     * graph created by this template passes {@link ObjectGraph#validate},
+     * validating the others only links them, because they all have the same
+     * bindings.
+     *
+     * @throws IllegalArgumentException if a module's type isn't one of the
+     *     planned module types.
+     */
+    public abstract ObjectGraph create(Object... modules);
+  }
+
   /**
    * Do runtime graph problem detection. For fastest graph creation, rely on
    * build time tools for graph validation.
    *
+   * <p>Bindings are marked once they are found to be free of dependency
+   * cycles, and are skipped by later validations of this graph and of graphs
+   * that share them. Validating a graph created with {@link #plus} after its
+   * base has been validated checks only the bindings the new graph adds.
+   *
+   * <p>Graphs created from modules that the compiler validated as a complete
+   * module are linked, which reports missing bindings, but aren't checked for
+   * dependency cycles or unused bindings again, unless their modules or
+   * bindings differ from the validated ones: for example, if a module is
+   * overridden by a subclass or adapted with reflection.
+   *
    * @throws IllegalStateException if this graph has problems.
    */
   public abstract void validate();
 
+  /**
+   * Do runtime problem detection for one entry point. This links the bindings
+   * that {@link #inject} and, if the entry point can be provided, {@link
+   * #get} use for {@code entryPoint}, plus their transitive dependencies, and
+   * checks them for dependency cycles. Unlike {@link #validate()}, it doesn't link the rest of
+   * the graph or report unused bindings.
+   *
+   * @throws IllegalArgumentException if {@code entryPoint} isn't an entry
+   *     point of this graph or one of its bases.
+   * @throws IllegalStateException if {@code entryPoint} has problems.
+   */
+  public abstract void validate(Class<?> entryPoint);
+
   /**
    * Injects the static fields of the classes listed in the object graph's
    * {@code staticInjections} property.
    */
   public abstract void injectStatics();
 
+  /**
+   * Constructs the singletons of this graph on {@code executor}, linking the
+   * graph first if necessary. Each singleton is constructed after the
+   * singletons it depends on, and singletons that don't depend on each other
+   * are constructed concurrently. Call this when an application starts so
+   * that its first requests don't construct expensive singletons one after
+   * another.
+   *
+   * @return a future that completes when all singletons are constructed, or
+   *     fails with the first exception thrown while constructing one.
+   * @throws IllegalStateException if this graph has problems that prevent
+   *     linking it, or if its singletons depend on each other in a cycle.
+   */
+  public abstract Future<Void> warmUp(Executor executor);
+
+  /**
+   * Returns an immutable copy of this graph. All of this graph's bindings,
+   * entry points and static injections are linked, and the linked bindings are
+   * then copied into compact arrays. The returned graph retains no linking
+   * state, and its {@link #get}, {@link #inject} and {@link #plus} methods
+   * don't take any locks.
+   *
+   * <p>The returned graph shares this graph's bindings and singletons, and
+   * doesn't reference this graph. Applications that have finished building
+   * their graph should keep only the frozen graph. Freezing a graph that has
+   * problems fails as {@link #validate} does when linking.
+   */
+  public abstract ObjectGraph freeze();
+
   /**
    * Returns a new dependency graph using the {@literal @}{@link
    * Module}-annotated modules.
@@ -120,11 +229,167 @@ public abstract class ObjectGraph {
    * <p>This <strong>does not</strong> validate the graph. Rely on build time
    * tools for graph validation, or call {@link #validate} to find problems in
    * the graph at runtime.
+   *
+   * <p>Use a {@link Builder} to configure how bindings are found.
    */
   public static ObjectGraph create(Object... modules) {
-    RuntimeAggregatingPlugin plugin = new RuntimeAggregatingPlugin(
-            new ClassloadingPlugin(), new ReflectivePlugin());
-    return DaggerObjectGraph.makeGraph(null, plugin, modules);
+    return DaggerObjectGraph.makeGraph(null, newRuntimePlugin(), modules);
+  }
+
+  /**
+   * Returns a template for graphs that {@link #create} would create from
+   * modules of {@code moduleTypes}. Use it when many graphs are created from
+   * the same module types, like in tests that each need fresh singletons.
+   *
+   * <p>The template finds the module adapters once, and checks their bindings
+   * for duplicates once. After one of its graphs has been validated, {@link
+   * #validate} doesn't repeat problem detection for the others.
+   */
+  public static Template planCreate(Class<?>... moduleTypes) {
+    return new DaggerTemplate(null, newRuntimePlugin(), moduleTypes.clone());
+  }
+
+  private static Plugin newRuntimePlugin() {
+    return new RuntimeAggregatingPlugin(defaultPlugins());
+  }
+
+  private static Plugin[] defaultPlugins() {
+    return new Plugin[] { new ClassloadingPlugin(), new ReflectivePlugin() };
+  }
+
+  /**
+   * Configures and creates an object graph. Graphs built without any
+   * configuration are the same as those returned by {@link #create}.
+   *
+   * <p>In strict mode, only generated classes may be used: the graph is
+   * linked when it's built, and it fails with a list of every module,
+   * injected class and static injection whose generated class is missing.
+   * Use it in tests to ensure that no binding is created with reflection.
+   */
+  public static final class Builder {
+    private final List<Object> modules = new ArrayList<Object>();
+    private Plugin[] plugins;
+    private Instrumentation instrumentation;
+    private Executor executor;
+    private Executor setExecutor;
+    private boolean strict;
+
+    /** Adds {@literal @}{@link Module}-annotated modules to the graph. */
+    public Builder addModules(Object... modules) {
+      Collections.addAll(this.modules, modules);
+      return this;
+    }
+
+    /**
+     * Resolves bindings, module adapters and static injections with {@code
+     * plugins}, consulted in order, instead of the default plugins. The
+     * defaults load generated classes and fall back to reflection.
+     *
+     * <p>To create classes without generated adapters from accessors that are
+     * generated at runtime rather than with reflection, opt in to {@link
+     * dagger.internal.plugins.bytecode.BytecodePlugin} before the reflective
+     * plugin: {@code plugins(new ClassloadingPlugin(), new BytecodePlugin(),
+     * new ReflectivePlugin())}. It defines classes in the injected classes'
+     * loaders.
+     */
+    public Builder plugins(Plugin... plugins) {
+      if (plugins.length == 0) {
+        throw new IllegalArgumentException("Must provide at least one plugin.");
+      }
+      this.plugins = plugins.clone();
+      return this;
+    }
+
+    /** Notifies {@code instrumentation} of each request a plugin resolves. */
+    public Builder instrumentation(Instrumentation instrumentation) {
+      this.instrumentation = instrumentation;
+      return this;
+    }
+
+    /**
+     * Constructs the singletons of the built graph on {@code executor}, as
+     * {@link ObjectGraph#warmUp} does. A singleton that fails to construct
+     * fails again when it's first requested.
+     */
+    public Builder executor(Executor executor) {
+      this.executor = executor;
+      return this;
+    }
+
+    /**
+     * Constructs the contributors of each {@code Set<T>} multibinding of the
+     * built graph, and of graphs created from it with {@link ObjectGraph#plus},
+     * concurrently on {@code executor}. Use it for sets whose contributors do
+     * slow work like I/O when they're constructed. Injected sets keep the
+     * order in which elements were contributed, and the first contributor in
+     * that order to fail determines the exception. Unlike {@link #executor},
+     * this doesn't construct singletons when the graph is built.
+     */
+    public Builder parallelSets(Executor executor) {
+      if (executor == null) throw new NullPointerException("executor");
+      this.setExecutor = executor;
+      return this;
+    }
+
+    /**
+     * Fails to build unless every module, injected class and static injection
+     * has a generated class. Only the generated classes found by the
+     * configured plugins count, so this excludes the default plugins that use
+     * reflection or generate classes at runtime. Graphs created from the built
+     * graph with {@link ObjectGraph#plus} fail on the first missing class.
+     */
+    public Builder strict() {
+      this.strict = true;
+      return this;
+    }
+
+    /**
+     * Returns a new graph of the added modules.
+     *
+     * @throws IllegalStateException in strict mode, if generated classes are
+     *     missing or the graph has problems that prevent linking it.
+     */
+    public ObjectGraph build() {
+      Object[] modules = this.modules.toArray();
+      if (!strict) {
+        Plugin[] plugins = (this.plugins != null) ? this.plugins : defaultPlugins();
+        DaggerObjectGraph graph = DaggerObjectGraph.makeGraph(
+            null, new RuntimeAggregatingPlugin(instrumentation, plugins), modules);
+        if (setExecutor != null) {
+          graph.linker.setMultibindingExecutor(setExecutor);
+        }
+        if (executor != null) {
+          graph.warmUp(executor);
+        }
+        return graph;
+      }
+
+      Plugin[] generated = (this.plugins != null)
+          ? this.plugins
+          : new Plugin[] { new ClassloadingPlugin() };
+      StrictPlugin strictPlugin = new StrictPlugin(new ReflectivePlugin());
+      Plugin[] plugins = new Plugin[generated.length + 1];
+      System.arraycopy(generated, 0, plugins, 0, generated.length);
+      plugins[generated.length] = strictPlugin;
+
+      DaggerObjectGraph graph;
+      try {
+        graph = DaggerObjectGraph.makeGraph(
+            null, new RuntimeAggregatingPlugin(instrumentation, plugins), modules);
+        if (setExecutor != null) {
+          graph.linker.setMultibindingExecutor(setExecutor);
+        }
+        graph.linkEverything();
+      } catch (RuntimeException e) {
+        strictPlugin.check(); // Missing generated classes are the likely cause.
+        throw e;
+      }
+      strictPlugin.check();
+      if (executor != null) {
+        graph.warmUp(executor);
+      }
+      return graph;
+    }
   }
 
   static class DaggerObjectGraph extends ObjectGraph {
@@ -135,11 +400,34 @@ public abstract class ObjectGraph {
     private final Map<String, Class<?>> entryPoints;
     private final Plugin plugin;
 
+    /** The template that created this graph, or null. */
+    private final DaggerTemplate template;
+
+    /**
+     * The modules and bindings of the certificate the compiler issues if it
+     * validated them, or null if this graph can't have one.
+     */
+    private final CertificateInputs certificateInputs;
+
+    /**
+     * Linked bindings for {@link #get}, keyed by the requested type. Once a
+     * type is present here, calls to {@code get} skip key building and don't
+     * take the linker's lock.
+     */
+    private final ConcurrentMap<Class<?>, Binding<?>> getBindings
+        = new ConcurrentHashMap<Class<?>, Binding<?>>();
+
+    /** Linked members injection bindings for {@link #inject}, keyed by class. */
+    private final ConcurrentMap<Class<?>, Binding<?>> injectBindings
+        = new ConcurrentHashMap<Class<?>, Binding<?>>();
+
     DaggerObjectGraph(DaggerObjectGraph base,
         Linker linker,
         Plugin plugin,
         Map<Class<?>, StaticInjection> staticInjections,
-        Map<String, Class<?>> entryPoints) {
+        Map<String, Class<?>> entryPoints,
+        DaggerTemplate template,
+        CertificateInputs certificateInputs) {
       if (linker == null) throw new NullPointerException("linker");
       if (plugin == null) throw new NullPointerException("plugin");
       if (staticInjections == null) throw new NullPointerException("staticInjections");
@@ -150,9 +438,12 @@ public abstract class ObjectGraph {
       this.plugin = plugin;
       this.staticInjections = staticInjections;
       this.entryPoints = entryPoints;
+      this.template = template;
+      this.certificateInputs = certificateInputs;
     }
 
-    private static ObjectGraph makeGraph(DaggerObjectGraph base, Plugin plugin, Object... modules) {
+    private static DaggerObjectGraph makeGraph(
+        DaggerObjectGraph base, Plugin plugin, Object... modules) {
       Map<String, Class<?>> entryPoints = new LinkedHashMap<String, Class<?>>();
       Map<Class<?>, StaticInjection> staticInjections
           = new LinkedHashMap<Class<?>, StaticInjection>();
@@ -161,7 +452,8 @@ public abstract class ObjectGraph {
       // duplicates are permitted.
       Map<String, Binding<?>> baseBindings = new UniqueMap<String, Binding<?>>();
       Map<String, Binding<?>> overrideBindings = new UniqueMap<String, Binding<?>>();
-      for (ModuleAdapter<?> moduleAdapter : getAllModuleAdapters(plugin, modules).values()) {
+      Map<Class<?>, ModuleAdapter<?>> moduleAdapters = getAllModuleAdapters(plugin, modules);
+      for (ModuleAdapter<?> moduleAdapter : moduleAdapters.values()) {
         for (String key : moduleAdapter.entryPoints) {
           entryPoints.put(key, moduleAdapter.getModule().getClass());
         }
@@ -172,21 +464,131 @@ public abstract class ObjectGraph {
         moduleAdapter.getBindings(addTo);
       }
 
+      CertificateInputs certificateInputs = (base == null)
+          ? new CertificateInputs(moduleAdapters, baseBindings, overrideBindings)
+          : null;
+      return makeGraph(base, plugin, classLoader(moduleAdapters.keySet()), staticInjections,
+          entryPoints, baseBindings, overrideBindings, null, certificateInputs);
+    }
+
+    /**
+     * The modules and bindings of a root graph, from which its certificate is
+     * computed when the graph is validated rather than when it's created.
+     */
+    private static final class CertificateInputs {
+      private final Map<Class<?>, ModuleAdapter<?>> moduleAdapters;
+      private final Map<String, Binding<?>> baseBindings;
+      private final Map<String, Binding<?>> overrideBindings;
+
+      CertificateInputs(Map<Class<?>, ModuleAdapter<?>> moduleAdapters,
+          Map<String, Binding<?>> baseBindings, Map<String, Binding<?>> overrideBindings) {
+        this.moduleAdapters = moduleAdapters;
+        this.baseBindings = baseBindings;
+        this.overrideBindings = overrideBindings;
+      }
+
+      /**
+       * Returns the certificate that the compiler would have issued for the
+       * graph, or null if it wouldn't have validated its modules. Modules
+       * without generated adapters and static injections aren't validated by
+       * the compiler.
+       */
+      ValidationCertificate certificate() {
+        List<String> moduleNames = new ArrayList<String>(moduleAdapters.size());
+        for (Map.Entry<Class<?>, ModuleAdapter<?>> entry : moduleAdapters.entrySet()) {
+          String moduleName = entry.getKey().getName();
+          ModuleAdapter<?> moduleAdapter = entry.getValue();
+          if (!moduleAdapter.getClass().getName()
+              .equals(moduleName + ClassloadingPlugin.MODULE_ADAPTER_SUFFIX)
+              || moduleAdapter.staticInjections.length != 0) {
+            return null;
+          }
+          moduleNames.add(moduleName);
+        }
+        if (moduleNames.isEmpty()) {
+          return null;
+        }
+        List<String> keys = new ArrayList<String>(baseBindings.size() + overrideBindings.size());
+        keys.addAll(baseBindings.keySet());
+        keys.addAll(overrideBindings.keySet());
+        return new ValidationCertificate(classLoader(moduleAdapters.keySet()), moduleNames, keys);
+      }
+    }
+
+    /**
+     * Returns the class loader of the first of {@code moduleTypes}, or null if
+     * there are none.
+     */
+    private static ClassLoader classLoader(Collection<Class<?>> moduleTypes) {
+      return moduleTypes.isEmpty() ? null : moduleTypes.iterator().next().getClassLoader();
+    }
+
+    private static DaggerObjectGraph makeGraph(DaggerObjectGraph base, Plugin plugin,
+        ClassLoader classLoader, Map<Class<?>, StaticInjection> staticInjections,
+        Map<String, Class<?>> entryPoints, Map<String, Binding<?>> baseBindings,
+        Map<String, Binding<?>> overrideBindings, DaggerTemplate template,
+        CertificateInputs certificateInputs) {
       // Create a linker and install all of the user's bindings
       Linker linker = new Linker((base != null) ? base.linker : null, plugin,
           new ThrowingErrorHandler());
+      if (classLoader != null) {
+        linker.setClassLoader(classLoader); // Otherwise the base linker's loader is used.
+      }
       linker.installBindings(baseBindings);
       linker.installBindings(overrideBindings);
 
-      return new DaggerObjectGraph(base, linker, plugin, staticInjections, entryPoints);
+      final DaggerObjectGraph graph =
+          new DaggerObjectGraph(base, linker, plugin, staticInjections, entryPoints, template,
+              certificateInputs);
+      linker.setRoots(new Linker.Roots() {
+        @Override public void request(Linker linker) {
+          graph.linkStaticInjections();
+          graph.linkEntryPoints();
+        }
+      });
+      return graph;
     }
 
 
     @Override public ObjectGraph plus(Object... modules) {
-      linkEverything();
+      // This graph isn't linked here: the child's linker links the bindings it
+      // needs from this graph on demand.
       return makeGraph(this, plugin, modules);
     }
 
+    @Override public Template planPlus(Class<?>... moduleTypes) {
+      return new DaggerTemplate(this, plugin, moduleTypes.clone());
+    }
+
+    @Override public ObjectGraph freeze() {
+      // Base graphs are linked lazily by their children; the frozen linker
+      // needs all of their bindings linked too.
+      for (DaggerObjectGraph graph = base; graph != null; graph = graph.base) {
+        if (graph instanceof FrozenObjectGraph) break;
+        graph.linkEverything();
+      }
+
+      Linker frozenLinker;
+      synchronized (linker) {
+        linkEverything(); // Also attaches the static injections.
+        frozenLinker = linker.freeze();
+      }
+
+      // Flatten the entry points of this graph and its bases. As in
+      // getEntryPointBinding(), entry points in this graph take precedence.
+      Map<String, Class<?>> allEntryPoints = new LinkedHashMap<String, Class<?>>();
+      for (DaggerObjectGraph graph = this; graph != null; graph = graph.base) {
+        for (Map.Entry<String, Class<?>> entry : graph.entryPoints.entrySet()) {
+          if (!allEntryPoints.containsKey(entry.getKey())) {
+            allEntryPoints.put(entry.getKey(), entry.getValue());
+          }
+        }
+      }
+
+      return new FrozenObjectGraph(frozenLinker, plugin,
+          new LinkedHashMap<Class<?>, StaticInjection>(staticInjections), allEntryPoints);
+    }
+
     private void linkStaticInjections() {
       for (Map.Entry<Class<?>, StaticInjection> entry : staticInjections.entrySet()) {
         StaticInjection staticInjection = entry.getValue();
@@ -205,8 +607,44 @@ public abstract class ObjectGraph {
     }
 
     @Override public void validate() {
+      // Linking reports missing bindings. The certificate doesn't cover them,
+      // because @Inject classes outside the modules may have changed since.
       Map<String, Binding<?>> allBindings = linkEverything();
-      new ProblemDetector().detectProblems(allBindings.values());
+      ValidationCertificate certificate =
+          (certificateInputs != null) ? certificateInputs.certificate() : null;
+      if (certificate != null && certificate.isIssued()) {
+        return; // The compiler found no problems in these modules and bindings.
+      }
+      if (template != null && template.validated) {
+        return; // Another graph with the same bindings has no problems.
+      }
+      // Entry points that don't depend on this graph's bindings are hoisted
+      // into base graphs, so they aren't among this graph's bindings.
+      List<Binding<?>> roots = new ArrayList<Binding<?>>(allBindings.values());
+      synchronized (linker) {
+        for (Map.Entry<String, Class<?>> entry : entryPoints.entrySet()) {
+          roots.add(linker.requestBinding(entry.getKey(), entry.getValue(), false, true));
+        }
+      }
+      ProblemDetector problemDetector = new ProblemDetector();
+      problemDetector.detectCircularDependencies(roots);
+      problemDetector.detectUnusedBinding(allBindings.values());
+      if (template != null) {
+        template.validated = true;
+      }
+    }
+
+    @Override public void validate(Class<?> entryPoint) {
+      String membersKey = Keys.getMembersKey(entryPoint);
+      List<Binding<?>> roots = new ArrayList<Binding<?>>();
+      Binding<?> membersBinding = getEntryPointBinding(membersKey, membersKey);
+      roots.add(membersBinding);
+      // Also check the binding that get() uses, if the entry point can be provided.
+      String key = Keys.get(entryPoint);
+      if (membersBinding.provideKey != null || linker.isInstalled(Key.get(key))) {
+        roots.add(getEntryPointBinding(membersKey, key));
+      }
+      new ProblemDetector().detectCircularDependencies(roots);
     }
 
     /**
@@ -221,15 +659,14 @@ public abstract class ObjectGraph {
     }
 
     @Override public void injectStatics() {
-      // We call linkStaticInjections() twice on purpose. The first time through
-      // we request all of the bindings we need. The linker returns null for
-      // bindings it doesn't have. Then we ask the linker to link all of those
-      // requested bindings. Finally we call linkStaticInjections() again: this
-      // time the linker won't return null because everything has been linked.
+      // Attaching the static injections requests the bindings they need. The
+      // linker returns each binding right away, before it's linked, or
+      // Binding.UNRESOLVED if it can't create one. Linking the requested
+      // bindings then completes them or reports the unresolved ones, so the
+      // static injections don't need to be attached again.
       synchronized (linker) {
         linkStaticInjections();
         linker.linkRequested();
-        linkStaticInjections();
       }
 
       for (Map.Entry<Class<?>, StaticInjection> entry : staticInjections.entrySet()) {
@@ -237,19 +674,34 @@ public abstract class ObjectGraph {
       }
     }
 
+    @Override public Future<Void> warmUp(Executor executor) {
+      return SingletonWarmUp.start(linkEverything().values(), executor);
+    }
+
     @Override public <T> T get(Class<T> type) {
-      String key = Keys.get(type);
-      String entryPointKey = Keys.getMembersKey(type);
+      Binding<?> binding = getBindings.get(type);
+      if (binding == null) {
+        String key = Keys.get(type);
+        String entryPointKey = Keys.getMembersKey(type);
+        binding = getEntryPointBinding(entryPointKey, key);
+        getBindings.put(type, binding);
+      }
       @SuppressWarnings("unchecked") // The linker matches keys to bindings by their type.
-      Binding<T> binding = (Binding<T>) getEntryPointBinding(entryPointKey, key);
-      return binding.get();
+      Binding<T> typedBinding = (Binding<T>) binding;
+      return typedBinding.get();
     }
 
     @Override public <T> T inject(T instance) {
-      String membersKey = Keys.getMembersKey(instance.getClass());
+      Class<?> type = instance.getClass();
+      Binding<?> binding = injectBindings.get(type);
+      if (binding == null) {
+        String membersKey = Keys.getMembersKey(type);
+        binding = getEntryPointBinding(membersKey, membersKey);
+        injectBindings.put(type, binding);
+      }
       @SuppressWarnings("unchecked") // The linker matches keys to bindings by their type.
-      Binding<Object> binding = (Binding<Object>) getEntryPointBinding(membersKey, membersKey);
-      binding.injectMembers(instance);
+      Binding<Object> typedBinding = (Binding<Object>) binding;
+      typedBinding.injectMembers(instance);
       return instance;
     }
 
@@ -281,4 +733,291 @@ public abstract class ObjectGraph {
       }
     }
   }
+
+  /**
+   * Creates graphs from modules of planned types, as children of {@code base}
+   * if it isn't null. The module adapters are resolved by the first graph created, because a module
+   * instance may be required to create them.
+   */
+  static final class DaggerTemplate extends Template {
+    private final DaggerObjectGraph base;
+    private final Plugin plugin;
+    private final Class<?>[] plannedTypes;
+    private volatile Plan plan;
+
+    /** True once a graph created by this template has passed validation. */
+    private volatile boolean validated;
+
+    DaggerTemplate(DaggerObjectGraph base, Plugin plugin, Class<?>[] plannedTypes) {
+      this.base = base;
+      this.plugin = plugin;
+      this.plannedTypes = plannedTypes;
+    }
+
+    @Override public ObjectGraph create(Object... modules) {
+      for (Object module : modules) {
+        if (indexOf(plannedTypes, module.getClass()) == -1) {
+          throw new IllegalArgumentException(module.getClass().getName()
+              + " is not one of the planned module types.");
+        }
+      }
+
+      Plan plan = this.plan;
+      if (plan == null) {
+        return planAndCreate(modules);
+      }
+
+      Map<String, Binding<?>> baseBindings =
+          new HashMap<String, Binding<?>>(capacity(plan.baseBindingCount));
+      Map<String, Binding<?>> overrideBindings =
+          new HashMap<String, Binding<?>>(capacity(plan.overrideBindingCount));
+      for (int i = 0; i < plan.adapters.length; i++) {
+        ModuleAdapter<?> moduleAdapter =
+            withModule(plan.adapters[i], find(modules, plan.moduleTypes[i]));
+        moduleAdapter.getBindings(moduleAdapter.overrides ? overrideBindings : baseBindings);
+      }
+
+      Map<Class<?>, StaticInjection> staticInjections
+          = new LinkedHashMap<Class<?>, StaticInjection>();
+      for (Class<?> c : plan.staticInjections) {
+        staticInjections.put(c, null);
+      }
+      return DaggerObjectGraph.makeGraph(base, plugin,
+          DaggerObjectGraph.classLoader(Arrays.asList(plannedTypes)),
+          staticInjections, plan.entryPoints, baseBindings, overrideBindings, this, null);
+    }
+
+    /**
+     * Creates a graph like {@link ObjectGraph#create} or {@link
+     * ObjectGraph#plus}, and keeps module adapters without modules as the plan
+     * for the following graphs.
+     */
+    private ObjectGraph planAndCreate(Object[] modules) {
+      Object[] seeds = new Object[plannedTypes.length];
+      for (int i = 0; i < plannedTypes.length; i++) {
+        Object module = find(modules, plannedTypes[i]);
+        seeds[i] = (module != null) ? module : plannedTypes[i];
+      }
+
+      Map<String, Class<?>> entryPoints = new LinkedHashMap<String, Class<?>>();
+      Map<Class<?>, StaticInjection> staticInjections
+          = new LinkedHashMap<Class<?>, StaticInjection>();
+      Map<String, Binding<?>> baseBindings = new UniqueMap<String, Binding<?>>();
+      Map<String, Binding<?>> overrideBindings = new UniqueMap<String, Binding<?>>();
+      Map<Class<?>, ModuleAdapter<?>> moduleAdapters = getAllModuleAdapters(plugin, seeds);
+      List<ModuleAdapter<?>> prototypes = new ArrayList<ModuleAdapter<?>>();
+      for (ModuleAdapter<?> moduleAdapter : moduleAdapters.values()) {
+        for (String key : moduleAdapter.entryPoints) {
+          entryPoints.put(key, moduleAdapter.getModule().getClass());
+        }
+        for (Class<?> c : moduleAdapter.staticInjections) {
+          staticInjections.put(c, null);
+        }
+        moduleAdapter.getBindings(moduleAdapter.overrides ? overrideBindings : baseBindings);
+        prototypes.add(moduleAdapter.withoutModule());
+      }
+
+      Map<String, Class<?>> unmodifiableEntryPoints = Collections.unmodifiableMap(entryPoints);
+      this.plan = new Plan(prototypes.toArray(new ModuleAdapter<?>[prototypes.size()]),
+          moduleAdapters.keySet().toArray(new Class<?>[moduleAdapters.size()]),
+          unmodifiableEntryPoints,
+          staticInjections.keySet().toArray(new Class<?>[staticInjections.size()]),
+          baseBindings.size(), overrideBindings.size());
+      return DaggerObjectGraph.makeGraph(base, plugin,
+          DaggerObjectGraph.classLoader(Arrays.asList(plannedTypes)),
+          staticInjections, unmodifiableEntryPoints, baseBindings, overrideBindings, this, null);
+    }
+
+    @SuppressWarnings("unchecked") // Modules are found by their exact type.
+    private static <T> ModuleAdapter<T> withModule(ModuleAdapter<T> prototype, Object module) {
+      return prototype.withModule((T) module);
+    }
+
+    /** Returns the module of exactly {@code type}, or null if there is none. */
+    private static Object find(Object[] modules, Class<?> type) {
+      for (Object module : modules) {
+        if (module.getClass() == type) {
+          return module;
+        }
+      }
+      return null;
+    }
+
+    private static int indexOf(Class<?>[] types, Class<?> type) {
+      for (int i = 0; i < types.length; i++) {
+        if (types[i] == type) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    /** Returns a hash map capacity that holds {@code size} entries without rehashing. */
+    private static int capacity(int size) {
+      return size * 4 / 3 + 1;
+    }
+
+    /** The module adapters and the entry points of the graphs created by a template. */
+    private static final class Plan {
+      /** Adapters without modules for the planned modules and their includes. */
+      final ModuleAdapter<?>[] adapters;
+      /** The module type of each adapter. */
+      final Class<?>[] moduleTypes;
+      final Map<String, Class<?>> entryPoints;
+      final Class<?>[] staticInjections;
+      final int baseBindingCount;
+      final int overrideBindingCount;
+
+      Plan(ModuleAdapter<?>[] adapters, Class<?>[] moduleTypes,
+          Map<String, Class<?>> entryPoints, Class<?>[] staticInjections, int baseBindingCount,
+          int overrideBindingCount) {
+        this.adapters = adapters;
+        this.moduleTypes = moduleTypes;
+        this.entryPoints = entryPoints;
+        this.staticInjections = staticInjections;
+        this.baseBindingCount = baseBindingCount;
+        this.overrideBindingCount = overrideBindingCount;
+      }
+    }
+  }
+
+  /**
+   * A graph whose bindings were linked and then frozen by {@link #freeze}.
+   * Entry points are looked up by class in immutable indexes, so no operation
+   * on this graph takes a lock.
+   */
+  static final class FrozenObjectGraph extends DaggerObjectGraph {
+    private final Linker frozenLinker;
+    private final Map<String, Class<?>> allEntryPoints;
+
+    /** Bindings used by {@link #get} and {@link #inject}, indexed by id. */
+    private final Binding<?>[] entryPointBindings;
+
+    /** Ids into {@link #entryPointBindings} for {@link #get}, by entry point type. */
+    private final IdentityIndex<Class<?>> getIds;
+
+    /** Ids into {@link #entryPointBindings} for {@link #inject}, by entry point type. */
+    private final IdentityIndex<Class<?>> injectIds;
+
+    FrozenObjectGraph(Linker frozenLinker, Plugin plugin,
+        Map<Class<?>, StaticInjection> staticInjections, Map<String, Class<?>> entryPoints) {
+      super(null, frozenLinker, plugin, Collections.unmodifiableMap(staticInjections),
+          Collections.unmodifiableMap(entryPoints), null, null);
+      this.frozenLinker = frozenLinker;
+      this.allEntryPoints = entryPoints;
+
+      List<Binding<?>> bindings = new ArrayList<Binding<?>>();
+      Map<Class<?>, Integer> getIdsByType = new HashMap<Class<?>, Integer>();
+      Map<Class<?>, Integer> injectIdsByType = new HashMap<Class<?>, Integer>();
+      for (Map.Entry<String, Class<?>> entry : entryPoints.entrySet()) {
+        Key membersKey = Key.get(entry.getKey());
+        Class<?> type = loadEntryPoint(membersKey, entry.getValue());
+        if (type == null) {
+          continue; // Lookups for this entry point will take the slow path.
+        }
+        Binding<?> injectBinding = frozenLinker.getFrozenBinding(membersKey);
+        if (injectBinding != null) {
+          injectIdsByType.put(type, bindings.size());
+          bindings.add(injectBinding);
+        }
+        Binding<?> getBinding = frozenLinker.getFrozenBinding(Key.get(Keys.get(type)));
+        if (getBinding != null) {
+          getIdsByType.put(type, bindings.size());
+          bindings.add(getBinding);
+        }
+      }
+      this.entryPointBindings = bindings.toArray(new Binding<?>[bindings.size()]);
+      this.getIds = new IdentityIndex<Class<?>>(getIdsByType);
+      this.injectIds = new IdentityIndex<Class<?>>(injectIdsByType);
+    }
+
+    /**
+     * Returns the class of the entry point identified by {@code membersKey},
+     * loaded by the class loader of the module that lists it, or null if that
+     * class cannot be loaded.
+     */
+    private static Class<?> loadEntryPoint(Key membersKey, Class<?> moduleClass) {
+      if (membersKey.className == null) {
+        return null;
+      }
+      try {
+        return Class.forName(membersKey.className, false, moduleClass.getClassLoader());
+      } catch (ClassNotFoundException e) {
+        return null;
+      }
+    }
+
+    @Override public <T> T get(Class<T> type) {
+      int id = getIds.get(type);
+      Binding<?> binding = (id != -1)
+          ? entryPointBindings[id]
+          : getFrozenEntryPointBinding(Keys.getMembersKey(type), Keys.get(type));
+      @SuppressWarnings("unchecked") // The linker matches keys to bindings by their type.
+      Binding<T> typedBinding = (Binding<T>) binding;
+      return typedBinding.get();
+    }
+
+    @Override public <T> T inject(T instance) {
+      Class<?> type = instance.getClass();
+      int id = injectIds.get(type);
+      Binding<?> binding;
+      if (id != -1) {
+        binding = entryPointBindings[id];
+      } else {
+        String membersKey = Keys.getMembersKey(type);
+        binding = getFrozenEntryPointBinding(membersKey, membersKey);
+      }
+      @SuppressWarnings("unchecked") // The linker matches keys to bindings by their type.
+      Binding<Object> typedBinding = (Binding<Object>) binding;
+      typedBinding.injectMembers(instance);
+      return instance;
+    }
+
+    /**
+     * Looks up an entry point binding that isn't in the indexes, either
+     * because its type couldn't be loaded when this graph was frozen or
+     * because it isn't an entry point at all.
+     */
+    private Binding<?> getFrozenEntryPointBinding(String entryPointKey, String key) {
+      if (!allEntryPoints.containsKey(entryPointKey)) {
+        throw new IllegalArgumentException("No entry point for " + entryPointKey
+            + ". You must explicitly add an entry point to one of your modules.");
+      }
+      Binding<?> binding = frozenLinker.getFrozenBinding(Key.get(key));
+      if (binding == null) {
+        throw new IllegalStateException("No binding for " + key + " in frozen graph.");
+      }
+      return binding;
+    }
+
+    @Override public void validate() {
+      new ProblemDetector().detectProblems(frozenLinker.getFrozenBindings());
+    }
+
+    @Override public void validate(Class<?> entryPoint) {
+      String membersKey = Keys.getMembersKey(entryPoint);
+      List<Binding<?>> roots = new ArrayList<Binding<?>>();
+      roots.add(getFrozenEntryPointBinding(membersKey, membersKey));
+      // Also check the binding that get() uses, if the entry point can be provided.
+      Binding<?> binding = frozenLinker.getFrozenBinding(Key.get(Keys.get(entryPoint)));
+      if (binding != null) {
+        roots.add(binding);
+      }
+      new ProblemDetector().detectCircularDependencies(roots);
+    }
+
+    @Override public Future<Void> warmUp(Executor executor) {
+      return SingletonWarmUp.start(frozenLinker.getFrozenBindings(), executor);
+    }
+
+    @Override public void injectStatics() {
+      for (StaticInjection staticInjection : super.staticInjections.values()) {
+        staticInjection.inject();
+      }
+    }
+
+    @Override public ObjectGraph freeze() {
+      return this;
+    }
+  }
 }
@@ -44,9 +44,19 @@ public @interface Provides {
      * The method's return type forms the generic type argument of a {@code Set<T>}, and the
      * returned value is contributed to the set. The object graph will pass dependencies to the
      * method as parameters. The {@code Set<T>} produced from the accumulation of values will be
-     * immutable.
+     * immutable. A {@code Set<Provider<T>>} or a {@code Set<Lazy<T>>} can be injected instead to
+     * construct only the elements that are used.
      */
-    SET
+    SET,
+
+    /**
+     * The method's return type forms the value type of a {@code Map<String, V>}, and the returned
+     * value is contributed to the map under the key given by the method's {@link MapKey}
+     * annotation. The {@code Map<String, V>} produced from the accumulation of values will be
+     * immutable, and keeps the order in which entries were contributed. A {@code
+     * Map<String, Provider<V>>} can be injected instead to get only the values that are used.
+     */
+    MAP
   }
 
   Type type() default Type.UNIQUE;
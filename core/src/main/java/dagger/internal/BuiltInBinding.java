@@ -20,10 +20,10 @@ package dagger.internal;
  * Injects a Provider or a MembersInjector.
  */
 final class BuiltInBinding<T> extends Binding<T> {
-  private final String delegateKey;
+  private final Key delegateKey;
   private Binding<?> delegate;
 
-  public BuiltInBinding(String key, Object requiredBy, String delegateKey) {
+  public BuiltInBinding(String key, Object requiredBy, Key delegateKey) {
     super(key, null, false, requiredBy);
     this.delegateKey = delegateKey;
   }
@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+/**
+ * Caches a value computed from a class, like the result of scanning its
+ * members with reflection. Cached values are read without locking.
+ *
+ * <p>Classes are weakly referenced. Values of classes loaded by Dagger's class
+ * loader or one of its parents are strongly held, because those loaders live
+ * as long as the cache. Other values are weakly held, so a value that refers
+ * back to its class doesn't keep the class loader alive; they are created
+ * again if they were collected.
+ */
+public abstract class ClassCache<V> extends WeakKeyCache<Class<?>, V> {
+  @Override protected final ClassLoader classLoader(Class<?> type) {
+    return type.getClassLoader();
+  }
+}
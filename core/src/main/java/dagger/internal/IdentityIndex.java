@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2012 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.util.Map;
+
+/**
+ * An immutable map from keys to dense integer ids. Keys are compared by
+ * identity, so they must be canonical instances such as interned {@link Key
+ * keys} or classes. Entries live in two parallel arrays with open addressing,
+ * so lookups allocate nothing and need no synchronization.
+ */
+public final class IdentityIndex<K> {
+  private final Object[] keys;
+  private final int[] ids;
+  private final int mask;
+
+  public IdentityIndex(Map<? extends K, Integer> map) {
+    int capacity = 2;
+    while (capacity < map.size() * 2) {
+      capacity <<= 1;
+    }
+    this.keys = new Object[capacity];
+    this.ids = new int[capacity];
+    this.mask = capacity - 1;
+    for (Map.Entry<? extends K, Integer> entry : map.entrySet()) {
+      K key = entry.getKey();
+      int i = spread(key.hashCode()) & mask;
+      while (keys[i] != null) {
+        if (keys[i] == key) throw new IllegalArgumentException("Duplicate key " + key);
+        i = (i + 1) & mask;
+      }
+      keys[i] = key;
+      ids[i] = entry.getValue();
+    }
+  }
+
+  /** Returns the id for {@code key}, or -1 if this index doesn't contain it. */
+  public int get(K key) {
+    int i = spread(key.hashCode()) & mask;
+    for (Object candidate; (candidate = keys[i]) != null; i = (i + 1) & mask) {
+      if (candidate == key) {
+        return ids[i];
+      }
+    }
+    return -1;
+  }
+
+  /** Spreads poorly distributed hash codes, like those of similar class names. */
+  private static int spread(int h) {
+    h ^= (h >>> 20) ^ (h >>> 12);
+    return h ^ (h >>> 7) ^ (h >>> 4);
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+/**
+ * Observes how the plugins of a graph resolve requests, for example to find
+ * the bindings that are created with reflection or that are slow to load.
+ * Implementations are called on the threads that link graphs, sometimes
+ * concurrently, and should be fast.
+ */
+public interface Instrumentation {
+  /**
+   * Called when {@code plugin} returned the binding for {@code className}.
+   *
+   * @param nanos the time taken to resolve the request, including the time
+   *     taken by plugins consulted before {@code plugin}.
+   */
+  void atInjectBindingResolved(String className, Plugin plugin, long nanos);
+
+  /** Called when {@code plugin} returned the module adapter for {@code moduleClass}. */
+  void moduleAdapterResolved(Class<?> moduleClass, Plugin plugin, long nanos);
+
+  /** Called when {@code plugin} returned the static injection for {@code injectedClass}. */
+  void staticInjectionResolved(Class<?> injectedClass, Plugin plugin, long nanos);
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2012 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import dagger.Lazy;
+import dagger.MembersInjector;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Provider;
+
+/**
+ * A canonical, parsed form of a string key built by {@link Keys}. Keys are
+ * interned: two keys with the same name are the same instance, so they may be
+ * compared by identity and their hash code is computed only once. Interned
+ * keys are weakly referenced, so keys that no graph or generated class uses
+ * anymore are collected.
+ *
+ * <p>Generated code should resolve its keys once, typically into static
+ * fields, and pass them to {@link Linker#requestBinding(Key, Object)}.
+ */
+public final class Key {
+  private static final String PROVIDER_PREFIX = Provider.class.getCanonicalName() + "<";
+  private static final String MEMBERS_INJECTOR_PREFIX =
+      MembersInjector.class.getCanonicalName() + "<";
+  private static final String LAZY_PREFIX = Lazy.class.getCanonicalName() + "<";
+  private static final String SET_PREFIX = Set.class.getCanonicalName() + "<";
+  private static final String MEMBERS_PREFIX = "members/";
+  private static final Key[] NO_TYPE_ARGUMENTS = new Key[0];
+
+  private static final ConcurrentMap<String, KeyReference> INTERNED =
+      new ConcurrentHashMap<String, KeyReference>();
+  private static final ReferenceQueue<Key> COLLECTED = new ReferenceQueue<Key>();
+
+  /** The string form of this key, as returned by {@link Keys}. */
+  public final String name;
+
+  /** The qualifier annotation, like {@code @javax.inject.Named(value=foo)}, or null. */
+  public final String qualifier;
+
+  /** True if this key injects members rather than providing instances. */
+  public final boolean members;
+
+  /** The raw type of this key, without qualifier, type arguments or array brackets. */
+  public final String rawType;
+
+  /** The unqualified keys of this key's type arguments. Empty if it has none. */
+  private final Key[] typeArguments;
+
+  /** The class name for plain class keys; null for parameterized and array keys. */
+  public final String className;
+
+  /**
+   * The key injected through this key if it is a {@code Provider<T>}, a
+   * {@code MembersInjector<T>} or a {@code Lazy<T>}; null otherwise.
+   */
+  private final Key delegate;
+
+  private final boolean lazy;
+
+  private final boolean set;
+
+  /**
+   * The multibinding key whose contributors this key injects if it is a
+   * {@code Set<Provider<T>>} or a {@code Set<Lazy<T>>}; null otherwise.
+   */
+  private final Key contributorsSet;
+
+  private final int hashCode;
+
+  private Key(String name) {
+    this.name = name;
+    this.hashCode = name.hashCode();
+
+    int start;
+    if (name.startsWith("@")) {
+      start = name.lastIndexOf('/') + 1;
+      this.qualifier = name.substring(0, start - 1);
+      this.members = false;
+    } else if (name.startsWith(MEMBERS_PREFIX)) {
+      start = MEMBERS_PREFIX.length();
+      this.qualifier = null;
+      this.members = true;
+    } else {
+      start = 0;
+      this.qualifier = null;
+      this.members = false;
+    }
+
+    int typeArgumentsStart = name.indexOf('<', start);
+    int arrayStart = name.indexOf('[', start);
+    int rawTypeEnd = typeArgumentsStart != -1 ? typeArgumentsStart
+        : arrayStart != -1 ? arrayStart
+        : name.length();
+    this.rawType = name.substring(start, rawTypeEnd);
+    this.className = (typeArgumentsStart == -1 && arrayStart == -1) ? rawType : null;
+    this.typeArguments = typeArgumentsStart != -1 && name.endsWith(">")
+        ? parseTypeArguments(name, typeArgumentsStart + 1, name.length() - 1)
+        : NO_TYPE_ARGUMENTS;
+
+    String prefix = name.substring(0, start);
+    boolean wrapper = !members && typeArguments.length == 1 && name.endsWith(">");
+    if (wrapper && name.startsWith(PROVIDER_PREFIX, start)) {
+      this.delegate = get(prefix + typeArguments[0].name);
+      this.lazy = false;
+    } else if (wrapper && name.startsWith(MEMBERS_INJECTOR_PREFIX, start)) {
+      this.delegate = get(MEMBERS_PREFIX + typeArguments[0].name);
+      this.lazy = false;
+    } else if (wrapper && name.startsWith(LAZY_PREFIX, start)) {
+      this.delegate = get(prefix + typeArguments[0].name);
+      this.lazy = true;
+    } else {
+      this.delegate = null;
+      this.lazy = false;
+    }
+    this.set = wrapper && name.startsWith(SET_PREFIX, start);
+    Key element = set ? typeArguments[0] : null;
+    this.contributorsSet = element != null && element.delegate != null && !element.delegate.members
+        ? get(prefix + SET_PREFIX + element.delegate.name + ">")
+        : null;
+  }
+
+  /** Returns the canonical key for {@code name}. */
+  public static Key get(String name) {
+    if (name == null) throw new NullPointerException("name");
+    KeyReference reference = INTERNED.get(name);
+    Key key = (reference != null) ? reference.get() : null;
+    if (key != null) {
+      return key;
+    }
+
+    removeCollectedKeys();
+    Key created = new Key(name);
+    KeyReference createdReference = new KeyReference(created);
+    while (true) { // If another thread interned a key in the meantime, return that one.
+      reference = INTERNED.putIfAbsent(name, createdReference);
+      if (reference == null) {
+        return created;
+      }
+      key = reference.get();
+      if (key != null) {
+        return key;
+      }
+      if (INTERNED.replace(name, reference, createdReference)) {
+        return created; // The interned key was collected.
+      }
+    }
+  }
+
+  private static void removeCollectedKeys() {
+    for (Reference<? extends Key> reference; (reference = COLLECTED.poll()) != null;) {
+      KeyReference keyReference = (KeyReference) reference;
+      INTERNED.remove(keyReference.name, keyReference);
+    }
+  }
+
+  /**
+   * Returns the keys of the top-level type arguments between {@code start}
+   * and {@code end}, like {@code java.lang.String} and {@code
+   * java.util.List<java.lang.Integer>} in {@code java.util.Map<java.lang.String,
+   * java.util.List<java.lang.Integer>>}.
+   */
+  private static Key[] parseTypeArguments(String name, int start, int end) {
+    List<Key> result = new ArrayList<Key>();
+    int depth = 0;
+    int argumentStart = start;
+    for (int i = start; i < end; i++) {
+      char c = name.charAt(i);
+      if (c == '<') {
+        depth++;
+      } else if (c == '>') {
+        depth--;
+      } else if (c == ',' && depth == 0) {
+        result.add(get(name.substring(argumentStart, i).trim()));
+        argumentStart = i + 1;
+      }
+    }
+    result.add(get(name.substring(argumentStart, end).trim()));
+    return result.toArray(new Key[result.size()]);
+  }
+
+  /** Returns the number of type arguments of this key's type. */
+  public int typeArgumentCount() {
+    return typeArguments.length;
+  }
+
+  /** Returns the unqualified key of the type argument at {@code index}. */
+  public Key typeArgument(int index) {
+    return typeArguments[index];
+  }
+
+  /**
+   * Returns the key for the binding that a {@code Provider<T>} or {@code
+   * MembersInjector<T>} key delegates to. This retains the qualifier of
+   * provider keys. Returns null for all other keys.
+   */
+  public Key getBuiltInBindingsKey() {
+    return (delegate != null && !lazy) ? delegate : null;
+  }
+
+  /**
+   * Returns the key for the binding that a {@code Lazy<T>} key delegates to,
+   * retaining its qualifier. Returns null for all other keys.
+   */
+  public Key getLazyKey() {
+    return lazy ? delegate : null;
+  }
+
+  /**
+   * Returns the key of the {@code Set<T>} whose contributors a {@code
+   * Set<Provider<T>>} key injects, retaining its qualifier. Returns null for
+   * all other keys.
+   */
+  public Key getSetProvidersKey() {
+    return contributorsSet != null && !typeArguments[0].lazy ? contributorsSet : null;
+  }
+
+  /**
+   * Returns the key of the {@code Set<T>} whose contributors a {@code
+   * Set<Lazy<T>>} key injects, retaining its qualifier. Returns null for all
+   * other keys.
+   */
+  public Key getSetLaziesKey() {
+    return contributorsSet != null && typeArguments[0].lazy ? contributorsSet : null;
+  }
+
+  /** Returns true if this key is a {@code Set<T>} key, such as a multibinding's key. */
+  public boolean isSet() {
+    return set;
+  }
+
+  /** Returns true if this key has a qualifier annotation. */
+  public boolean isAnnotated() {
+    return qualifier != null;
+  }
+
+  @Override public int hashCode() {
+    return hashCode;
+  }
+
+  // equals() is not overridden: keys are interned so identity is equality.
+
+  @Override public String toString() {
+    return name;
+  }
+
+  /** A weak reference to an interned key, which remembers its name to remove it. */
+  private static final class KeyReference extends WeakReference<Key> {
+    private final String name;
+
+    KeyReference(Key key) {
+      super(key, COLLECTED);
+      this.name = key.name;
+    }
+  }
+}
@@ -16,14 +16,19 @@
  */
 package dagger.internal;
 
-import dagger.Lazy;
-import dagger.MembersInjector;
 import java.lang.annotation.Annotation;
+import java.lang.reflect.Array;
 import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import javax.inject.Provider;
 import javax.inject.Qualifier;
 
 /**
@@ -37,22 +42,65 @@ import javax.inject.Qualifier;
  * </ol>
  * Bindings from {@code @Provides} methods are of the first two types. Bindings
  * created from {@code @Inject}-annotated members of a class are of the first
- * and last types.
+ * and last types. The linker parses and interns these strings as {@link Key}
+ * instances.
+ *
+ * <p>Qualifiers are written in a canonical form that lists every member of the
+ * annotation, including those with default values, in order of member name:
+ * {@code @com.square.Bar(name=baz, size=3)}. Keys generated at compile time
+ * use the same form, so the form doesn't depend on the runtime's {@link
+ * Annotation#toString} implementation.
  */
 public final class Keys {
-  private static final String PROVIDER_PREFIX = Provider.class.getCanonicalName() + "<";
-  private static final String MEMBERS_INJECTOR_PREFIX =
-      MembersInjector.class.getCanonicalName() + "<";
-  private static final String LAZY_PREFIX = Lazy.class.getCanonicalName() + "<";
   private static final String SET_PREFIX = Set.class.getCanonicalName() + "<";
+  private static final String MAP_PREFIX = Map.class.getCanonicalName() + "<"
+      + String.class.getName() + ", ";
 
-  private static final LruCache<Class<? extends Annotation>, Boolean> IS_QUALIFIER_ANNOTATION
-      = new LruCache<Class<? extends Annotation>, Boolean>(Integer.MAX_VALUE) {
-    @Override protected Boolean create(Class<? extends Annotation> annotationType) {
+  private static final ClassCache<Boolean> IS_QUALIFIER_ANNOTATION = new ClassCache<Boolean>() {
+    @Override protected Boolean create(Class<?> annotationType) {
       return annotationType.isAnnotationPresent(Qualifier.class);
     }
   };
 
+  private static final ClassCache<AnnotationType> ANNOTATION_TYPES
+      = new ClassCache<AnnotationType>() {
+    @Override protected AnnotationType create(Class<?> annotationType) {
+      return new AnnotationType(annotationType);
+    }
+  };
+
+  /**
+   * Keys for types that are parameterized, arrays or qualified, which are
+   * slower to compute than the names of plain classes. Only keys whose classes
+   * are all loaded by Dagger's class loader or one of its parents are cached,
+   * so that the cache doesn't keep other class loaders alive.
+   */
+  private static final LruCache<TypeKey, String> KEYS = new LruCache<TypeKey, String>(4096) {
+    @Override protected String create(TypeKey typeKey) {
+      return typeKey.toKey();
+    }
+  };
+
+  /**
+   * Canonical qualifier strings. Annotations are equal if their members are
+   * equal. Like {@link #KEYS}, this only caches qualifiers whose classes are
+   * loaded by Dagger's class loader or one of its parents.
+   */
+  private static final LruCache<Annotation, String> QUALIFIERS
+      = new LruCache<Annotation, String>(1024) {
+    @Override protected String create(Annotation qualifier) {
+      StringBuilder result = new StringBuilder();
+      qualifierToString(qualifier, result);
+      return result.toString();
+    }
+  };
+
+  private static final Comparator<Method> BY_NAME = new Comparator<Method>() {
+    @Override public int compare(Method a, Method b) {
+      return a.getName().compareTo(b.getName());
+    }
+  };
+
   Keys() {
   }
 
@@ -73,12 +121,7 @@ public final class Keys {
     if (annotation == null && type instanceof Class && !((Class<?>) type).isArray()) {
       return ((Class<?>) type).getName();
     }
-    StringBuilder result = new StringBuilder();
-    if (annotation != null) {
-      result.append(annotation).append("/");
-    }
-    typeToString(type, result, true);
-    return result.toString();
+    return get(new TypeKey(type, annotation, null));
   }
 
   /**
@@ -90,15 +133,24 @@ public final class Keys {
    */
   public static String getElementKey(Type type, Annotation[] annotations, Object subject) {
     Annotation qualifier = extractQualifier(annotations, subject);
-    type = boxIfPrimitive(type);
-    StringBuilder result = new StringBuilder();
-    if (qualifier != null) {
-      result.append(qualifier).append("/");
-    }
-    result.append(SET_PREFIX);
-    typeToString(type, result, true);
-    result.append(">");
-    return result.toString();
+    return get(new TypeKey(boxIfPrimitive(type), qualifier, SET_PREFIX));
+  }
+
+  /**
+   * Returns a key for {@code type} annotated with {@code annotations},
+   * wrapped by {@code Map<String, ...>}, reporting failures against {@code
+   * subject}.
+   *
+   * @param annotations the annotations on a single method, field or parameter.
+   *     This array may contain at most one qualifier annotation.
+   */
+  public static String getMapKey(Type type, Annotation[] annotations, Object subject) {
+    Annotation qualifier = extractQualifier(annotations, subject);
+    return get(new TypeKey(boxIfPrimitive(type), qualifier, MAP_PREFIX));
+  }
+
+  private static String get(TypeKey typeKey) {
+    return typeKey.isCacheSafe() ? KEYS.get(typeKey) : typeKey.toKey();
   }
 
   /**
@@ -131,6 +183,116 @@ public final class Keys {
     return qualifier;
   }
 
+  /**
+   * Appends the canonical form of {@code qualifier}, like {@code
+   * @com.square.Bar(name=baz, size=3)}.
+   */
+  private static void qualifierToString(Annotation qualifier, StringBuilder result) {
+    Class<? extends Annotation> annotationType = qualifier.annotationType();
+    Method[] members = ANNOTATION_TYPES.get(annotationType).members;
+    result.append('@').append(annotationType.getName()).append('(');
+    for (int i = 0; i < members.length; i++) {
+      Method member = members[i];
+      if (i != 0) {
+        result.append(", ");
+      }
+      result.append(member.getName()).append('=');
+      valueToString(memberValue(qualifier, member), result);
+    }
+    result.append(')');
+  }
+
+  /** Appends an annotation member's value as it appears in a qualifier string. */
+  private static void valueToString(Object value, StringBuilder result) {
+    if (value instanceof Class) {
+      typeToString((Class<?>) value, result, false);
+    } else if (value instanceof Enum) {
+      result.append(((Enum<?>) value).name());
+    } else if (value instanceof Annotation) {
+      qualifierToString((Annotation) value, result);
+    } else if (value.getClass().isArray()) {
+      result.append('[');
+      for (int i = 0, length = Array.getLength(value); i < length; i++) {
+        if (i != 0) {
+          result.append(", ");
+        }
+        valueToString(Array.get(value, i), result);
+      }
+      result.append(']');
+    } else {
+      result.append(value);
+    }
+  }
+
+  private static Object memberValue(Annotation annotation, Method member) {
+    try {
+      return member.invoke(annotation);
+    } catch (Exception e) {
+      throw new RuntimeException("Unable to read " + member, e);
+    }
+  }
+
+  /**
+   * Returns true if {@code type} and the classes it is parameterized with are
+   * loaded by Dagger's class loader or one of its parents.
+   */
+  private static boolean isCacheSafe(Type type) {
+    if (type instanceof Class) {
+      return WeakKeyCache.isCacheSafe(((Class<?>) type).getClassLoader());
+    } else if (type instanceof ParameterizedType) {
+      ParameterizedType parameterizedType = (ParameterizedType) type;
+      if (!isCacheSafe(parameterizedType.getRawType())) {
+        return false;
+      }
+      for (Type argument : parameterizedType.getActualTypeArguments()) {
+        if (!isCacheSafe(argument)) {
+          return false;
+        }
+      }
+      return true;
+    } else if (type instanceof GenericArrayType) {
+      return isCacheSafe(((GenericArrayType) type).getGenericComponentType());
+    } else {
+      return false; // Uninjectable; not worth caching.
+    }
+  }
+
+  /**
+   * Returns true if {@code annotation}'s type and the classes among its
+   * member values are loaded by Dagger's class loader or one of its parents.
+   */
+  private static boolean isCacheSafe(Annotation annotation) {
+    Class<? extends Annotation> annotationType = annotation.annotationType();
+    if (!isCacheSafe(annotationType)) {
+      return false;
+    }
+    AnnotationType type = ANNOTATION_TYPES.get(annotationType);
+    if (!type.mayHoldClasses) {
+      return true;
+    }
+    for (Method member : type.members) {
+      if (!isValueCacheSafe(memberValue(annotation, member))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isValueCacheSafe(Object value) {
+    if (value instanceof Class) {
+      return isCacheSafe((Class<?>) value);
+    } else if (value instanceof Annotation) {
+      return isCacheSafe((Annotation) value);
+    } else if (value instanceof Object[]) {
+      for (Object element : (Object[]) value) {
+        if (!isValueCacheSafe(element)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
   /**
    * @param topLevel true if this is a top-level type where primitive types
    *     like 'int' are forbidden. Recursive calls pass 'false' to support
@@ -178,14 +340,8 @@ public final class Keys {
    * keys and MembersInjector keys.
    */
   static String getBuiltInBindingsKey(String key) {
-    int start = startOfType(key);
-    if (substringStartsWith(key, start, PROVIDER_PREFIX)) {
-      return extractKey(key, start, key.substring(0, start), PROVIDER_PREFIX);
-    } else if (substringStartsWith(key, start, MEMBERS_INJECTOR_PREFIX)) {
-      return extractKey(key, start, "members/", MEMBERS_INJECTOR_PREFIX);
-    } else {
-      return null;
-    }
+    Key builtInBindingsKey = Key.get(key).getBuiltInBindingsKey();
+    return builtInBindingsKey != null ? builtInBindingsKey.name : null;
   }
 
   /**
@@ -194,43 +350,8 @@ public final class Keys {
    * {@code Foo}. This retains annotations.
    */
   static String getLazyKey(String key) {
-    int start = startOfType(key);
-    if (substringStartsWith(key, start, LAZY_PREFIX)) {
-      return extractKey(key, start, key.substring(0, start), LAZY_PREFIX);
-    } else {
-      return null;
-    }
-  }
-
-  /**
-   * Returns the start of a key if it is a plain key, and the start of the
-   * underlying key if it is an annotated key
-   */
-  private static int startOfType(String key) {
-    return (key.startsWith("@")) ? key.lastIndexOf('/') + 1 : 0;
-  }
-
-  /**
-   * Returns an unwrapped key (the key for T from a Provider<T> for example),
-   * removing all wrapping key information, but preserving annotations or known
-   * prefixes.
-   *
-   * @param key the key from which the delegate key should be extracted.
-   * @param start
-   *          an index into the key representing the key's "real" start after
-   *          any annotations.
-   * @param delegatePrefix
-   *          key prefix elements extracted from the underlying delegate
-   *          (annotations, "members/", etc.)
-   * @param prefix the prefix to strip.
-   */
-  private static String extractKey(String key, int start, String delegatePrefix, String prefix) {
-    return delegatePrefix + key.substring(start + prefix.length(), key.length() - 1);
-  }
-
-  /** Returns true if {@code string.substring(offset).startsWith(substring)}. */
-  private static boolean substringStartsWith(String string, int offset, String substring) {
-    return string.regionMatches(offset, substring, 0, substring.length());
+    Key lazyKey = Key.get(key).getLazyKey();
+    return lazyKey != null ? lazyKey.name : null;
   }
 
   /** Returns true if {@code key} is a binding that supports members injection. */
@@ -249,13 +370,7 @@ public final class Keys {
    * or an array type.
    */
   public static String getClassName(String key) {
-    int start = 0;
-    if (key.startsWith("@") || key.startsWith("members/")) {
-      start = key.lastIndexOf('/') + 1;
-    }
-    return (key.indexOf('<', start) == -1 && key.indexOf('[', start) == -1)
-        ? key.substring(start)
-        : null;
+    return Key.get(key).className;
   }
 
   /** Returns true if {@code name} is the name of a platform-provided class. */
@@ -276,4 +391,90 @@ public final class Keys {
     return type;
   }
 
+  /** The members of an annotation type, which qualifier strings are formed from. */
+  private static final class AnnotationType {
+    /** Members sorted by name. */
+    final Method[] members;
+    /**
+     * True if a member's value may contain a class, which could be loaded by
+     * any class loader.
+     */
+    final boolean mayHoldClasses;
+
+    AnnotationType(Class<?> annotationType) {
+      List<Method> members = new ArrayList<Method>();
+      boolean mayHoldClasses = false;
+      for (Method method : annotationType.getDeclaredMethods()) {
+        if (method.isSynthetic() || Modifier.isStatic(method.getModifiers())) {
+          continue;
+        }
+        method.setAccessible(true); // Qualifiers may be declared by non-public annotations.
+        members.add(method);
+        Class<?> returnType = method.getReturnType();
+        Class<?> valueType = returnType.isArray() ? returnType.getComponentType() : returnType;
+        if (valueType == Class.class
+            || (valueType.isAnnotation() && ANNOTATION_TYPES.get(valueType).mayHoldClasses)) {
+          mayHoldClasses = true;
+        }
+      }
+      Collections.sort(members, BY_NAME);
+      this.members = members.toArray(new Method[members.size()]);
+      this.mayHoldClasses = mayHoldClasses;
+    }
+  }
+
+  /** A type and its qualifier, for looking up the key that they form. */
+  private static final class TypeKey {
+    final Type type;
+    final Annotation qualifier;
+    /** The prefix of the collection wrapping {@code type}, or null. */
+    final String wrapper;
+
+    TypeKey(Type type, Annotation qualifier, String wrapper) {
+      this.type = type;
+      this.qualifier = qualifier;
+      this.wrapper = wrapper;
+    }
+
+    String toKey() {
+      StringBuilder result = new StringBuilder();
+      if (qualifier != null) {
+        if (Keys.isCacheSafe(qualifier)) {
+          result.append(QUALIFIERS.get(qualifier));
+        } else {
+          qualifierToString(qualifier, result);
+        }
+        result.append("/");
+      }
+      if (wrapper != null) {
+        result.append(wrapper);
+        typeToString(type, result, true);
+        result.append(">");
+      } else {
+        typeToString(type, result, true);
+      }
+      return result.toString();
+    }
+
+    /** Returns true if this may be cached without keeping a class loader alive. */
+    boolean isCacheSafe() {
+      return Keys.isCacheSafe(type) && (qualifier == null || Keys.isCacheSafe(qualifier));
+    }
+
+    @Override public boolean equals(Object o) {
+      if (!(o instanceof TypeKey)) {
+        return false;
+      }
+      TypeKey other = (TypeKey) o;
+      return type.equals(other.type)
+          && (qualifier == null ? other.qualifier == null : qualifier.equals(other.qualifier))
+          && (wrapper == null ? other.wrapper == null : wrapper.equals(other.wrapper));
+    }
+
+    @Override public int hashCode() {
+      int result = type.hashCode();
+      result = 31 * result + (qualifier != null ? qualifier.hashCode() : 0);
+      return 31 * result + (wrapper != null ? wrapper.hashCode() : 0);
+    }
+  }
 }
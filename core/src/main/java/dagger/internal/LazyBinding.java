@@ -17,18 +17,24 @@
 package dagger.internal;
 
 import dagger.Lazy;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /**
- * Injects a Lazy wrapper for a type T
+ * Injects a Lazy wrapper for a type T. Singletons already remember their
+ * instance, so every injected Lazy of a singleton is the same stateless
+ * instance. Other types get a new Lazy that remembers its value.
  */
 final class LazyBinding<T> extends Binding<Lazy<T>> {
 
   private final static Object NOT_PRESENT = new Object();
 
-  private final String lazyKey;
+  private final Key lazyKey;
   private Binding<T> delegate;
 
-  public LazyBinding(String key, Object requiredBy, String lazyKey) {
+  /** The Lazy injected everywhere if the delegate is a singleton, or null. */
+  private Lazy<T> singletonLazy;
+
+  public LazyBinding(String key, Object requiredBy, Key lazyKey) {
     super(key, null, false, requiredBy);
     this.lazyKey = lazyKey;
   }
@@ -37,6 +43,24 @@ final class LazyBinding<T> extends Binding<Lazy<T>> {
   @Override
   public void attach(Linker linker) {
     delegate = (Binding<T>) linker.requestBinding(lazyKey, requiredBy);
+    if (delegate.isSingleton()) {
+      singletonLazy = newLazy(delegate);
+    }
+  }
+
+  /**
+   * Returns a Lazy of {@code delegate}'s value. Lazies of singletons are
+   * stateless; others remember their value.
+   */
+  static <T> Lazy<T> newLazy(final Binding<T> delegate) {
+    if (!delegate.isSingleton()) {
+      return new OnceLazy<T>(delegate);
+    }
+    return new Lazy<T>() {
+      @Override public T get() {
+        return delegate.get();
+      }
+    };
   }
 
   @Override public void injectMembers(Lazy<T> t) {
@@ -45,24 +69,101 @@ final class LazyBinding<T> extends Binding<Lazy<T>> {
 
   @Override
   public Lazy<T> get() {
-    return new Lazy<T>() {
-      private volatile Object cacheValue = NOT_PRESENT;
+    return singletonLazy != null ? singletonLazy : new OnceLazy<T>(delegate);
+  }
 
-      @SuppressWarnings("unchecked") // Delegate is of type T
-      @Override
-      public T get() {
-        if (cacheValue == NOT_PRESENT) {
-          synchronized (this) {
-            if (cacheValue == NOT_PRESENT) {
-              cacheValue = delegate.get();
-            }
+  // public void getDependencies() not overridden.
+  // We don't add 'delegate' because it isn't actually used by get() or injectMembers().
+
+  /**
+   * Computes its value once, on the first call to {@link #get}. The thread
+   * that computes the value claims it with a compare-and-set, so a Lazy that
+   * is used by one thread takes no locks. Threads that call {@code get} while
+   * another thread is computing the value wait for it.
+   */
+  private static final class OnceLazy<T> implements Lazy<T> {
+    @SuppressWarnings("rawtypes") // Field updaters can't be created for generic types.
+    private static final AtomicReferenceFieldUpdater<OnceLazy, Object> VALUE =
+        AtomicReferenceFieldUpdater.newUpdater(OnceLazy.class, Object.class, "value");
+
+    private final Binding<T> delegate;
+
+    /** {@link #NOT_PRESENT}, a {@link Computation} in progress, or the value. */
+    private volatile Object value = NOT_PRESENT;
+
+    OnceLazy(Binding<T> delegate) {
+      this.delegate = delegate;
+    }
+
+    @SuppressWarnings("unchecked") // Value is of type T once computed.
+    @Override public T get() {
+      Object result = value;
+      if (result == NOT_PRESENT || result instanceof Computation) {
+        result = compute();
+      }
+      return (T) result;
+    }
+
+    private Object compute() {
+      while (true) {
+        Object current = value;
+        if (current == NOT_PRESENT) {
+          Computation computation = new Computation();
+          if (VALUE.compareAndSet(this, NOT_PRESENT, computation)) {
+            return computation.run(this);
           }
+        } else if (current instanceof Computation) {
+          ((Computation) current).await(this);
+        } else {
+          return current;
         }
-        return (T) cacheValue;
       }
-    };
+    }
   }
 
-  // public void getDependencies() not overridden.
-  // We don't add 'delegate' because it isn't actually used by get() or injectMembers().
+  /** Computes the value of a {@link OnceLazy} for the thread that claimed it. */
+  private static final class Computation {
+    private final Thread thread = Thread.currentThread();
+    private volatile boolean waiting;
+
+    /**
+     * Computes and publishes the value of {@code lazy}. If the delegate
+     * throws, the lazy's value is left unset so that it is computed again.
+     */
+    Object run(OnceLazy<?> lazy) {
+      Object result = NOT_PRESENT;
+      try {
+        result = lazy.delegate.get();
+        return result;
+      } finally {
+        lazy.value = result;
+        if (waiting) {
+          synchronized (this) {
+            notifyAll();
+          }
+        }
+      }
+    }
+
+    /** Waits until this computation of {@code lazy}'s value has finished. */
+    void await(OnceLazy<?> lazy) {
+      if (thread == Thread.currentThread()) {
+        throw new IllegalStateException("Lazy value of " + lazy.delegate + " depends on itself");
+      }
+      boolean interrupted = false;
+      synchronized (this) {
+        waiting = true;
+        while (lazy.value == this) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            interrupted = true;
+          }
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
 }
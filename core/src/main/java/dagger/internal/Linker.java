@@ -16,12 +16,17 @@
 package dagger.internal;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * Links bindings to their dependencies.
@@ -36,22 +41,82 @@ public final class Linker {
    */
   private final Linker base;
 
-  /** Bindings requiring a call to attach(). May contain deferred bindings. */
-  private final Queue<Binding<?>> toLink = new LinkedList<Binding<?>>();
+  /**
+   * Bindings requiring a call to attach(). Null if this linker is frozen.
+   */
+  private final Queue<Binding<?>> toLink;
+
+  /** The number of bindings linked, for linking metrics. */
+  private int linkedCount;
+
+  /** All errors encountered during injection. Null if this linker is frozen. */
+  private final List<String> errors;
 
-  /** True unless calls to requestBinding() were unable to satisfy the binding. */
-  private boolean attachSuccess = true;
+  /**
+   * All of the object graph's bindings. This may contain unlinked bindings.
+   * Null if this linker is frozen.
+   */
+  private final Map<Key, Binding<?>> bindings;
 
-  /** All errors encountered during injection. */
-  private final List<String> errors = new ArrayList<String>();
+  /** The ids of a frozen linker's bindings, by key. Null unless this linker is frozen. */
+  private final IdentityIndex<Key> frozenIndex;
 
-  /** All of the object graph's bindings. This may contain unlinked bindings. */
-  private final Map<String, Binding<?>> bindings = new HashMap<String, Binding<?>>();
+  /** A frozen linker's bindings, indexed by id. Null unless this linker is frozen. */
+  private final Binding<?>[] frozenBindings;
 
   private final Plugin plugin;
 
   private final ErrorHandler errorHandler;
 
+  /** Requests this linker's roots that aren't installed bindings. May be null. */
+  private Roots roots;
+
+  /** True once this linker's roots and installed bindings have all been linked. */
+  private boolean rootsLinked;
+
+  /**
+   * Keys that child linkers couldn't hoist into this linker, mapped to true if
+   * the attempt didn't require an injectable type. Null if this linker is
+   * frozen.
+   */
+  private final Map<Key, Boolean> notHoistable;
+
+  /**
+   * The keys bound while this linker speculatively links a binding for a
+   * child linker. Null unless such a link is in progress.
+   */
+  private List<Key> hoisted;
+
+  /**
+   * The keys requested by the speculative link in progress, including those
+   * requested by the hoisted bindings it uses. Null unless such a link is in
+   * progress.
+   */
+  private Set<Key> hoistClosure;
+
+  /**
+   * The keys requested to link each binding hoisted into this linker, as
+   * collected in {@link #hoistClosure}. A child can't share a hoisted binding
+   * if it, or a linker between it and this one, installs one of these keys:
+   * linked in the child, the binding would have used the child's binding.
+   */
+  private final Map<Key, Set<Key>> hoistedClosures;
+
+  /** The keys of the bindings installed in this linker. */
+  private final Set<Key> installedKeys;
+
+  /**
+   * The executor that constructs the contributors of the set multibindings
+   * this linker links, or null to use the base linker's.
+   */
+  private Executor multibindingExecutor;
+
+  /**
+   * The class loader of the classes of just-in-time bindings this linker
+   * creates, or null to use the base linker's.
+   */
+  private ClassLoader classLoader;
+
   public Linker(Linker base, Plugin plugin, ErrorHandler errorHandler) {
     if (plugin == null) throw new NullPointerException("plugin");
     if (errorHandler == null) throw new NullPointerException("errorHandler");
@@ -59,6 +124,73 @@ public final class Linker {
     this.base = base;
     this.plugin = plugin;
     this.errorHandler = errorHandler;
+    this.toLink = new LinkedList<Binding<?>>();
+    this.errors = new ArrayList<String>();
+    this.bindings = new HashMap<Key, Binding<?>>();
+    this.notHoistable = new HashMap<Key, Boolean>();
+    this.hoistedClosures = new HashMap<Key, Set<Key>>();
+    this.installedKeys = new HashSet<Key>();
+    this.frozenIndex = null;
+    this.frozenBindings = null;
+  }
+
+  private Linker(Linker base, Plugin plugin, ErrorHandler errorHandler,
+      IdentityIndex<Key> frozenIndex, Binding<?>[] frozenBindings,
+      Map<Key, Set<Key>> hoistedClosures, Set<Key> installedKeys) {
+    this.base = base;
+    this.plugin = plugin;
+    this.errorHandler = errorHandler;
+    this.toLink = null;
+    this.errors = null;
+    this.bindings = null;
+    this.notHoistable = null;
+    this.hoistedClosures = hoistedClosures;
+    this.installedKeys = installedKeys;
+    this.frozenIndex = frozenIndex;
+    this.frozenBindings = frozenBindings;
+  }
+
+  /**
+   * Constructs the contributors of each {@code Set<T>} multibinding that this
+   * linker and its children link concurrently on {@code executor}. Call this
+   * before linking.
+   */
+  public void setMultibindingExecutor(Executor executor) {
+    assertNotFrozen();
+    this.multibindingExecutor = executor;
+  }
+
+  /** Returns the multibinding executor of this linker or its bases, or null. */
+  Executor getMultibindingExecutor() {
+    for (Linker linker = this; linker != null; linker = linker.base) {
+      if (linker.multibindingExecutor != null) {
+        return linker.multibindingExecutor;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Loads the classes of the just-in-time bindings that this linker and its
+   * children create with {@code classLoader}, typically the loader of the
+   * graph's modules. Call this before linking.
+   */
+  public void setClassLoader(ClassLoader classLoader) {
+    assertNotFrozen();
+    this.classLoader = classLoader;
+  }
+
+  /**
+   * Returns the class loader of this linker or its bases, or Dagger's class
+   * loader if none was set.
+   */
+  private ClassLoader getClassLoader() {
+    for (Linker linker = this; linker != null; linker = linker.base) {
+      if (linker.classLoader != null) {
+        return linker.classLoader;
+      }
+    }
+    return Linker.class.getClassLoader();
   }
 
   /**
@@ -67,8 +199,11 @@ public final class Linker {
    * bindings can be used.
    */
   public void installBindings(Map<String, ? extends Binding<?>> toInstall) {
+    assertNotFrozen();
     for (Map.Entry<String, ? extends Binding<?>> entry : toInstall.entrySet()) {
-      bindings.put(entry.getKey(), scope(entry.getValue()));
+      Key key = Key.get(entry.getKey());
+      bindings.put(key, scope(entry.getValue()));
+      installedKeys.add(key);
     }
   }
 
@@ -80,72 +215,63 @@ public final class Linker {
    * @return all bindings known by this linker, which will all be linked.
    */
   public Map<String, Binding<?>> linkAll() {
+    assertNotFrozen();
+    requestInstalled();
+    linkRequested();
+    Map<String, Binding<?>> result = new LinkedHashMap<String, Binding<?>>();
+    for (Map.Entry<Key, Binding<?>> entry : bindings.entrySet()) {
+      result.put(entry.getKey().name, entry.getValue());
+    }
+    return result;
+  }
+
+  /** Enqueues all installed bindings that aren't linked yet. */
+  private void requestInstalled() {
     for (Binding<?> binding : bindings.values()) {
-      if (!binding.isLinked()) {
+      if (binding != Binding.UNRESOLVED && !binding.isLinked()) {
         toLink.add(binding);
       }
     }
-    linkRequested();
-    return bindings;
   }
 
   /**
    * Links all requested bindings plus their transitive dependencies. This
    * creates JIT bindings as necessary to fill in the gaps.
+   *
+   * <p>Each binding is attached exactly once: {@link #requestBinding} creates
+   * missing bindings as they are requested, so {@code attach} never has to be
+   * retried. Linking is linear in the number of bindings and dependencies.
    */
   public void linkRequested() {
     assertLockHeld();
+    assertNotFrozen();
+    attachQueued();
+    try {
+      errorHandler.handleErrors(errors);
+    } finally {
+      errors.clear();
+    }
+  }
 
+  /** Attaches each queued binding that isn't linked yet. */
+  private void attachQueued() {
     Binding<?> binding;
     while ((binding = toLink.poll()) != null) {
-      if (binding instanceof DeferredBinding) {
-        DeferredBinding deferredBinding = (DeferredBinding) binding;
-        String key = deferredBinding.deferredKey;
-        boolean mustBeInjectable = deferredBinding.mustBeInjectable;
-        if (bindings.containsKey(key)) {
-          continue; // A binding for this key has since been linked.
-        }
-        try {
-          Binding<?> jitBinding = createJitBinding(key, binding.requiredBy, mustBeInjectable);
-          jitBinding.setLibrary(binding.library());
-          jitBinding.setDependedOn(binding.dependedOn());
-          // Fail if the type of binding we got wasn't capable of what was requested.
-          if (!key.equals(jitBinding.provideKey) && !key.equals(jitBinding.membersKey)) {
-            throw new IllegalStateException("Unable to create binding for " + key);
-          }
-          // Enqueue the JIT binding so its own dependencies can be linked.
-          Binding<?> scopedJitBinding = scope(jitBinding);
-          toLink.add(scopedJitBinding);
-          putBinding(scopedJitBinding);
-        } catch (Exception e) {
-          if (e.getMessage() != null) {
-            addError(e.getMessage() + " required by " + binding.requiredBy);
-            bindings.put(key, Binding.UNRESOLVED);
-          } else if (e instanceof RuntimeException) {
-            throw (RuntimeException) e;
-          } else {
-            throw new RuntimeException(e);
-          }
-        }
-      } else {
-        // Attempt to attach the binding to its dependencies. If any dependency
-        // is not available, the attach will fail. We'll enqueue creation of
-        // that dependency and retry the attachment later.
-        attachSuccess = true;
-        binding.attach(this);
-        if (attachSuccess) {
-          binding.setLinked();
-        } else {
-          toLink.add(binding);
-        }
+      if (binding.isLinked()) {
+        continue; // This binding was enqueued more than once.
       }
+      binding.attach(this);
+      binding.setLinked();
+      linkedCount++;
     }
+  }
 
-    try {
-      errorHandler.handleErrors(errors);
-    } finally {
-      errors.clear();
-    }
+  /**
+   * Returns the number of bindings linked by this linker. Each of them was
+   * attached exactly once.
+   */
+  public int getLinkedCount() {
+    return linkedCount;
   }
 
   /**
@@ -157,6 +283,123 @@ public final class Linker {
     if (!Thread.holdsLock(this)) throw new AssertionError();
   }
 
+  private void assertNotFrozen() {
+    if (isFrozen()) throw new IllegalStateException("Frozen linkers cannot link bindings.");
+  }
+
+  /** Returns true if this linker was created by {@link #freeze}. */
+  public boolean isFrozen() {
+    return frozenIndex != null;
+  }
+
+  /**
+   * Returns an immutable linker holding the bindings of this linker and its
+   * unfrozen base linkers, all of which must already be linked. Each binding
+   * is numbered and looked up in arrays by its key's id; the returned linker
+   * holds none of the linking state of this one and can be read without a
+   * lock. Its base is the nearest frozen base linker, if any.
+   */
+  public Linker freeze() {
+    assertLockHeld();
+    if (isFrozen()) {
+      return this;
+    }
+
+    // Collect bindings from the top-most unfrozen linker down, so that each
+    // linker's bindings shadow those of its base, as they do in requestBinding.
+    List<Linker> unfrozen = new ArrayList<Linker>();
+    Linker frozenBase = this;
+    while (frozenBase != null && !frozenBase.isFrozen()) {
+      unfrozen.add(0, frozenBase);
+      frozenBase = frozenBase.base;
+    }
+
+    Map<Key, Integer> ids = new HashMap<Key, Integer>();
+    Map<Binding<?>, Integer> bindingIds = new HashMap<Binding<?>, Integer>();
+    List<Binding<?>> bindingsById = new ArrayList<Binding<?>>();
+    Map<Key, Set<Key>> closures = new HashMap<Key, Set<Key>>();
+    Set<Key> installed = new HashSet<Key>();
+    for (Linker linker : unfrozen) {
+      synchronized (linker) {
+        for (Map.Entry<Key, Binding<?>> entry : linker.bindings.entrySet()) {
+          Binding<?> binding = entry.getValue();
+          if (binding == Binding.UNRESOLVED || !binding.isLinked()) {
+            continue; // Nothing linked depends on this binding.
+          }
+          Integer id = bindingIds.get(binding);
+          if (id == null) {
+            id = bindingsById.size();
+            bindingIds.put(binding, id);
+            bindingsById.add(binding);
+          }
+          ids.put(entry.getKey(), id);
+          Set<Key> closure = linker.hoistedClosures.get(entry.getKey());
+          if (closure != null) {
+            closures.put(entry.getKey(), closure);
+          } else {
+            closures.remove(entry.getKey()); // Shadowed by a binding that isn't hoisted.
+          }
+        }
+        installed.addAll(linker.installedKeys);
+      }
+    }
+
+    Linker frozen = new Linker(frozenBase, plugin, errorHandler, new IdentityIndex<Key>(ids),
+        bindingsById.toArray(new Binding<?>[bindingsById.size()]), closures, installed);
+    frozen.multibindingExecutor = getMultibindingExecutor(); // For children of the frozen graph.
+    frozen.classLoader = getClassLoader();
+    return frozen;
+  }
+
+  /**
+   * Returns true if this linker or one of its bases has an installed binding
+   * for {@code key}, such as one provided by a module. This doesn't need the
+   * linker's lock.
+   */
+  public boolean isInstalled(Key key) {
+    for (Linker linker = this; linker != null; linker = linker.base) {
+      if (linker.installedKeys.contains(key)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the binding for {@code key} from this frozen linker or its bases,
+   * or null if there is no such binding. Unlike {@link #requestBinding}, this
+   * does not require the linker's lock.
+   */
+  public Binding<?> getFrozenBinding(Key key) {
+    if (!isFrozen()) throw new IllegalStateException("Linker is not frozen.");
+    for (Linker linker = this; linker != null; linker = linker.base) {
+      Binding<?> binding = linker.getBinding(key);
+      if (binding != null) {
+        return binding;
+      }
+    }
+    return null;
+  }
+
+  /** Returns all bindings of this frozen linker and its bases. */
+  public List<Binding<?>> getFrozenBindings() {
+    if (!isFrozen()) throw new IllegalStateException("Linker is not frozen.");
+    List<Binding<?>> result = new ArrayList<Binding<?>>();
+    for (Linker linker = this; linker != null; linker = linker.base) {
+      result.addAll(Arrays.asList(linker.frozenBindings));
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  /** Returns this linker's own binding for {@code key}, or null. */
+  private Binding<?> getBinding(Key key) {
+    if (frozenIndex != null) {
+      int id = frozenIndex.get(key);
+      return id != -1 ? frozenBindings[id] : null;
+    }
+    return bindings.get(key);
+  }
+
   /**
    * Creates a just-in-time binding for the key in {@code deferred}. The type of binding
    * to be created depends on the key's type:
@@ -164,23 +407,33 @@ public final class Linker {
    *   <li>Injections of {@code Provider<Foo>}, {@code MembersInjector<Bar>}, and
    *       {@code Lazy<Blah>} will delegate to the bindings of {@code Foo}, {@code Bar}, and
    *       {@code Blah} respectively.
+   *   <li>Injections of {@code Set<Provider<Foo>>} and {@code Set<Lazy<Foo>>} will
+   *       delegate to the contributors of the {@code Set<Foo>} multibinding.
    *   <li>Injections of other types will use the injectable constructors of those classes.
    * </ul>
    */
-  private Binding<?> createJitBinding(String key, Object requiredBy, boolean mustBeInjectable)
+  private Binding<?> createJitBinding(Key key, Object requiredBy, boolean mustBeInjectable)
       throws ClassNotFoundException {
-    String builtInBindingsKey = Keys.getBuiltInBindingsKey(key);
+    Key builtInBindingsKey = key.getBuiltInBindingsKey();
     if (builtInBindingsKey != null) {
-      return new BuiltInBinding<Object>(key, requiredBy, builtInBindingsKey);
+      return new BuiltInBinding<Object>(key.name, requiredBy, builtInBindingsKey);
     }
-    String lazyKey = Keys.getLazyKey(key);
+    Key lazyKey = key.getLazyKey();
     if (lazyKey != null) {
-      return new LazyBinding<Object>(key, requiredBy, lazyKey);
+      return new LazyBinding<Object>(key.name, requiredBy, lazyKey);
+    }
+    Key setProvidersKey = key.getSetProvidersKey();
+    if (setProvidersKey != null) {
+      return new SetBinding.ContributorsBinding(key.name, requiredBy, setProvidersKey, false);
+    }
+    Key setLaziesKey = key.getSetLaziesKey();
+    if (setLaziesKey != null) {
+      return new SetBinding.ContributorsBinding(key.name, requiredBy, setLaziesKey, true);
     }
 
-    String className = Keys.getClassName(key);
-    if (className != null && !Keys.isAnnotated(key)) {
-      Binding<?> atInjectBinding = plugin.getAtInjectBinding(key, className, mustBeInjectable);
+    if (key.className != null && !key.isAnnotated()) {
+      Binding<?> atInjectBinding = plugin.getAtInjectBinding(
+          key.name, key.className, getClassLoader(), mustBeInjectable);
       if (atInjectBinding != null) {
         return atInjectBinding;
       }
@@ -190,45 +443,80 @@ public final class Linker {
   }
 
   /**
-   * Returns the binding if it exists immediately. Otherwise this returns
-   * null. If the returned binding didn't exist or was unlinked, it will be
-   * enqueued to be linked.
+   * Returns the binding for {@code key}, creating a just-in-time binding if
+   * necessary. If the returned binding is not yet linked, it will be enqueued
+   * to be linked by {@link #linkRequested}.
    */
   public Binding<?> requestBinding(String key, Object requiredBy) {
+    return requestBinding(Key.get(key), requiredBy, true, true);
+  }
+
+  /**
+   * Returns the binding for {@code key}, creating a just-in-time binding if
+   * necessary. If the returned binding is not yet linked, it will be enqueued
+   * to be linked by {@link #linkRequested}.
+   */
+  public Binding<?> requestBinding(Key key, Object requiredBy) {
     return requestBinding(key, requiredBy, true, true);
   }
 
   /**
-   * Returns the binding if it exists immediately. Otherwise this returns
-   * null. If the returned binding didn't exist or was unlinked, it will be
-   * enqueued to be linked.
+   * Returns the binding for {@code key}, creating a just-in-time binding if
+   * necessary. If the returned binding is not yet linked, it will be enqueued
+   * to be linked by {@link #linkRequested}.
+   *
+   * @see #requestBinding(Key, Object, boolean, boolean)
+   */
+  public Binding<?> requestBinding(String key, Object requiredBy, boolean mustBeInjectable,
+      boolean library) {
+    return requestBinding(Key.get(key), requiredBy, mustBeInjectable, library);
+  }
+
+  /**
+   * Returns the binding for {@code key}, creating a just-in-time binding if
+   * necessary. If the returned binding is not yet linked, it will be enqueued
+   * to be linked by {@link #linkRequested}. If no binding can be created, the
+   * failure is reported when the requested bindings are linked and this
+   * returns {@link Binding#UNRESOLVED}.
    *
    * @param mustBeInjectable true if the the referenced key doesn't need to be
    *     injectable. This is necessary for entry points (so that framework code
    *     can inject arbitrary entry points like JUnit test cases or Android
    *     activities) and for supertypes.
    */
-  public Binding<?> requestBinding(String key, Object requiredBy, boolean mustBeInjectable,
+  public Binding<?> requestBinding(Key key, Object requiredBy, boolean mustBeInjectable,
       boolean library) {
     assertLockHeld();
 
-    Binding<?> binding = null;
-    for (Linker linker = this; linker != null; linker = linker.base) {
-      binding = linker.bindings.get(key);
-      if (binding != null) {
-        if (linker != this && !binding.isLinked()) throw new AssertionError();
-        break;
+    Binding<?> binding = getBinding(key);
+    if (hoistClosure != null) {
+      hoistClosure.add(key);
+      Set<Key> closure = (binding != null) ? hoistedClosures.get(key) : null;
+      if (closure != null) {
+        hoistClosure.addAll(closure);
+      }
+    }
+    if (binding == null && base != null) {
+      binding = base.resolveForChild(key, this, hoistClosure);
+      if (binding == null) {
+        // Before creating a JIT binding here, make sure it doesn't belong to a
+        // base linker: a base owns every binding reachable from its roots.
+        base.linkRootsForChildren();
+        binding = base.resolveForChild(key, this, hoistClosure);
+      }
+      if (binding == null) {
+        binding = base.hoist(key, requiredBy, mustBeInjectable, this, hoistClosure);
       }
     }
-
     if (binding == null) {
-      // We can't satisfy this binding. Make sure it'll work next time!
-      Binding<?> deferredBinding = new DeferredBinding(key, requiredBy, mustBeInjectable);
-      deferredBinding.setLibrary(library);
-      deferredBinding.setDependedOn(true);
-      toLink.add(deferredBinding);
-      attachSuccess = false;
-      return null;
+      assertNotFrozen();
+      binding = createScopedJitBinding(key, requiredBy, mustBeInjectable);
+    }
+    if (binding == Binding.UNRESOLVED) {
+      if (hoisted != null) {
+        addError("No binding for " + key + " required by " + requiredBy);
+      }
+      return binding;
     }
 
     if (!binding.isLinked()) {
@@ -240,16 +528,248 @@ public final class Linker {
     return binding;
   }
 
+  /**
+   * Sets the roots of this linker that aren't installed bindings, like the
+   * entry points and static injections of its object graph. They are linked
+   * the first time a child linker needs a binding this linker doesn't have.
+   */
+  public void setRoots(Roots roots) {
+    assertNotFrozen();
+    this.roots = roots;
+  }
+
+  /**
+   * Returns the linked binding for {@code key} from this linker or its bases,
+   * or null if none of them has one that {@code requester} may share.
+   * Bindings that aren't linked yet are linked now, in the linker that owns
+   * them, so a child only links the parts of its bases that it uses.
+   *
+   * <p>This is called by child linkers holding their own lock, and it takes
+   * the lock of each base linker it visits. Locks are only ever acquired from
+   * child to base, so linkers can't deadlock.
+   *
+   * @param closure the requester's {@link #hoistClosure}, which receives the
+   *     closure of the returned binding if it was hoisted. May be null.
+   */
+  private Binding<?> resolveForChild(Key key, Linker requester, Set<Key> closure) {
+    if (isFrozen()) {
+      for (Linker linker = this; linker != null; linker = linker.base) {
+        Binding<?> binding = linker.getBinding(key);
+        if (binding != null) {
+          return linker.shareHoisted(key, binding, requester, closure);
+        }
+      }
+      return null;
+    }
+
+    synchronized (this) {
+      Binding<?> binding = bindings.get(key);
+      if (binding == null) {
+        return (base != null) ? base.resolveForChild(key, requester, closure) : null;
+      }
+      if (binding == Binding.UNRESOLVED) {
+        return null; // The child may be able to satisfy this key itself.
+      }
+      if (!binding.isLinked()) {
+        toLink.add(binding);
+        linkRequested();
+      }
+      return shareHoisted(key, binding, requester, closure);
+    }
+  }
+
+  /**
+   * Returns {@code binding}, this linker's binding for {@code key}, unless it
+   * was hoisted and {@code requester} shadows a key in its closure. Adds the
+   * closure of a shared hoisted binding to {@code closure} if it isn't null.
+   */
+  private Binding<?> shareHoisted(Key key, Binding<?> binding, Linker requester,
+      Set<Key> closure) {
+    Set<Key> hoistedClosure = hoistedClosures.get(key);
+    if (hoistedClosure == null) {
+      return binding; // Linked for this linker, so its children see it too.
+    }
+    if (isShadowedFor(requester, hoistedClosure)) {
+      return null;
+    }
+    if (closure != null) {
+      closure.addAll(hoistedClosure);
+    }
+    return binding;
+  }
+
+  /**
+   * Returns true if {@code requester} or a linker between it and this one
+   * installs a binding for one of {@code keys}. Installed keys never change,
+   * so this doesn't need their locks.
+   */
+  private boolean isShadowedFor(Linker requester, Set<Key> keys) {
+    for (Linker linker = requester; linker != this; linker = linker.base) {
+      for (Key installed : linker.installedKeys) {
+        if (keys.contains(installed)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Links the roots and installed bindings of this linker and its bases, so
+   * that each of them holds every binding it can reach. This happens at most
+   * once per linker.
+   */
+  private void linkRootsForChildren() {
+    if (base != null) {
+      base.linkRootsForChildren();
+    }
+    if (isFrozen()) {
+      return; // Frozen linkers were fully linked when they were frozen.
+    }
+    synchronized (this) {
+      if (rootsLinked) {
+        return;
+      }
+      if (roots != null) {
+        roots.request(this);
+      }
+      requestInstalled();
+      linkRequested();
+      rootsLinked = true;
+    }
+  }
+
+  /**
+   * Returns a JIT binding for {@code key} created and linked in the highest of
+   * this linker and its unfrozen bases that can link it and all of its new
+   * dependencies, or null if none of them can. Callers must have linked the
+   * roots of these linkers first.
+   *
+   * <p>Every child of a linker shares the bindings hoisted into it, so each
+   * binding is created only once. Singleton bindings are never hoisted: a
+   * linker only owns singletons that are reachable from its roots, which it
+   * already has.
+   */
+  private Binding<?> hoist(Key key, Object requiredBy, boolean mustBeInjectable,
+      Linker requester, Set<Key> closure) {
+    if (base != null) {
+      Binding<?> binding = base.hoist(key, requiredBy, mustBeInjectable, requester, closure);
+      if (binding != null) {
+        return binding;
+      }
+    }
+    if (isFrozen()) {
+      return null;
+    }
+
+    synchronized (this) {
+      Binding<?> binding = bindings.get(key);
+      if (binding != null) {
+        return binding != Binding.UNRESOLVED // Hoisted by another child.
+            ? shareHoisted(key, binding, requester, closure)
+            : null;
+      }
+      // An attempt that didn't require an injectable type would have failed too.
+      Boolean failedLenient = notHoistable.get(key);
+      if (failedLenient != null && (failedLenient || mustBeInjectable)) {
+        return null;
+      }
+      binding = linkSpeculatively(key, requiredBy, mustBeInjectable, requester, failedLenient);
+      Set<Key> hoistedClosure = (binding != null) ? hoistedClosures.get(key) : null;
+      if (hoistedClosure != null && closure != null) {
+        closure.addAll(hoistedClosure);
+      }
+      return binding;
+    }
+  }
+
+  /**
+   * Creates and links a JIT binding for {@code key} in this linker. Returns
+   * null and removes every binding created for the attempt if that produces
+   * any errors, or if {@code requester} shadows any key the attempt requested.
+   */
+  private Binding<?> linkSpeculatively(Key key, Object requiredBy, boolean mustBeInjectable,
+      Linker requester, Boolean failedLenient) {
+    int errorCount = errors.size();
+    hoisted = new ArrayList<Key>();
+    hoistClosure = new HashSet<Key>();
+    hoistClosure.add(key);
+    boolean success = false;
+    try {
+      Binding<?> binding = createScopedJitBinding(key, requiredBy, mustBeInjectable);
+      if (binding != Binding.UNRESOLVED) {
+        toLink.add(binding);
+        attachQueued();
+      }
+      if (errors.size() != errorCount) {
+        notHoistable.put(key, !mustBeInjectable || Boolean.TRUE.equals(failedLenient));
+        return null;
+      }
+      if (isShadowedFor(requester, hoistClosure)) {
+        return null; // Another child may still share it, so don't record the key.
+      }
+      for (Key added : hoisted) {
+        hoistedClosures.put(added, hoistClosure);
+      }
+      success = true;
+      return binding;
+    } finally {
+      if (!success) {
+        for (Key added : hoisted) {
+          bindings.remove(added);
+        }
+        toLink.clear();
+        errors.subList(errorCount, errors.size()).clear();
+      }
+      hoisted = null;
+      hoistClosure = null;
+    }
+  }
+
+  /**
+   * Creates, scopes and installs a JIT binding for {@code key}. Failures are
+   * enqueued as errors and leave {@link Binding#UNRESOLVED} bound to the key.
+   */
+  private Binding<?> createScopedJitBinding(Key key, Object requiredBy,
+      boolean mustBeInjectable) {
+    try {
+      Binding<?> jitBinding = createJitBinding(key, requiredBy, mustBeInjectable);
+      // Fail if the type of binding we got wasn't capable of what was requested.
+      if (!key.name.equals(jitBinding.provideKey) && !key.name.equals(jitBinding.membersKey)) {
+        throw new IllegalStateException("Unable to create binding for " + key);
+      }
+      if (hoisted != null && jitBinding.isSingleton()) {
+        throw new IllegalStateException("Cannot hoist singleton " + key);
+      }
+      Binding<?> scopedJitBinding = scope(jitBinding);
+      putBinding(scopedJitBinding);
+      return scopedJitBinding;
+    } catch (Exception e) {
+      if (e.getMessage() != null) {
+        addError(e.getMessage() + " required by " + requiredBy);
+        bindings.put(key, Binding.UNRESOLVED);
+        if (hoisted != null) {
+          hoisted.add(key);
+        }
+        return Binding.UNRESOLVED;
+      } else if (e instanceof RuntimeException) {
+        throw (RuntimeException) e;
+      } else {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
   private <T> void putBinding(final Binding<T> binding) {
 
     // At binding insertion time it's possible that another binding for the same
     // key to already exist. This occurs when an @Provides method returns a type T
     // and we also inject the members of that type.
     if (binding.provideKey != null) {
-      putIfAbsent(bindings, binding.provideKey, binding);
+      putIfAbsent(Key.get(binding.provideKey), binding);
     }
     if (binding.membersKey != null) {
-      putIfAbsent(bindings, binding.membersKey, binding);
+      putIfAbsent(Key.get(binding.membersKey), binding);
     }
   }
 
@@ -265,18 +785,24 @@ public final class Linker {
   }
 
   /**
-   * Puts the mapping {@code key, value} in {@code map} if no mapping for {@code
-   * key} already exists.
+   * Puts the mapping {@code key, value} in {@link #bindings} if no mapping for
+   * {@code key} already exists.
    */
-  private <K, V> void putIfAbsent(Map<K, V> map, K key, V value) {
-    V replaced = map.put(key, value); // Optimistic: prefer only one hash operation lookup.
+  private void putIfAbsent(Key key, Binding<?> value) {
+    // Optimistic: prefer only one hash operation lookup.
+    Binding<?> replaced = bindings.put(key, value);
     if (replaced != null) {
-      map.put(key, replaced);
+      bindings.put(key, replaced);
+    } else if (hoisted != null) {
+      hoisted.add(key);
     }
   }
 
-  /** Enqueue {@code message} as a fatal error to be reported to the user. */
-  private void addError(String message) {
+  /**
+   * Enqueue {@code message} as a fatal error to be reported to the user. Bindings
+   * call this from {@link Binding#attach} for dependencies they can't use.
+   */
+  void addError(String message) {
     errors.add(message);
   }
 
@@ -349,6 +875,15 @@ public final class Linker {
     }
   }
 
+  /** Requests the bindings an object graph needs beyond its installed bindings. */
+  public interface Roots {
+    /**
+     * Requests the roots of {@code linker} with {@link Linker#requestBinding}
+     * without linking them. Called with the linker's lock held.
+     */
+    void request(Linker linker);
+  }
+
   /** Handles linker errors appropriately. */
   public interface ErrorHandler {
     ErrorHandler NULL = new ErrorHandler() {
@@ -365,21 +900,4 @@ public final class Linker {
      */
     void handleErrors(List<String> errors);
   }
-
-  private static class DeferredBinding extends Binding<Object> {
-    final String deferredKey;
-    final boolean mustBeInjectable;
-
-    private DeferredBinding(String deferredKey, Object requiredBy, boolean mustBeInjectable) {
-      super(null, null, false, requiredBy);
-      this.deferredKey = deferredKey;
-      this.mustBeInjectable = mustBeInjectable;
-    }
-    @Override public void injectMembers(Object t) {
-      throw new UnsupportedOperationException("Deferred bindings must resolve first.");
-    }
-    @Override public void getDependencies(Set<Binding<?>> get, Set<Binding<?>> injectMembers) {
-      throw new UnsupportedOperationException("Deferred bindings must resolve first.");
-    }
-  }
 }
@@ -17,21 +17,46 @@ package dagger.internal;
 
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Private copy of {@code android.util.LruCache}.
+ * A concurrent variant of {@code android.util.LruCache}.
+ *
+ * <p>Cache hits don't take a lock. Values are looked up in a concurrent map,
+ * and each hit is recorded in a small buffer striped by thread. Access order
+ * is only updated when the buffers are drained into the recency list, which
+ * happens under the lock when a buffer fills and before entries are added or
+ * evicted.
+ * Hits recorded while a buffer is full may be dropped, so recency is
+ * approximate under heavy contention. All other operations take the lock.
  */
 class LruCache<K, V> {
-  private final LinkedHashMap<K, V> map;
+  /** Hits recorded by each stripe between drains. Must be a power of two. */
+  private static final int READ_BUFFER_SIZE = 16;
+  private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+  private final ConcurrentHashMap<K, Node<K, V>> map;
+  private final ReadBuffer<K, V>[] readBuffers;
+
+  /** Guards the recency list, the sizes, and the counts other than hits. */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * The sentinel of a circular list of nodes ordered from least recently
+   * accessed to most recently accessed.
+   */
+  private final Node<K, V> head = new Node<K, V>(null, null);
 
   /** Size of this cache in units. Not necessarily the number of elements. */
   private int size;
-  private int maxSize;
+  private final int maxSize;
 
   private int putCount;
   private int createCount;
   private int evictionCount;
-  private int hitCount;
   private int missCount;
 
   /**
@@ -44,7 +69,16 @@ class LruCache<K, V> {
       throw new IllegalArgumentException("maxSize <= 0");
     }
     this.maxSize = maxSize;
-    this.map = new LinkedHashMap<K, V>(0, 0.75f, true);
+    this.map = new ConcurrentHashMap<K, Node<K, V>>();
+    int stripes = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+    @SuppressWarnings({"unchecked", "rawtypes"}) // Generic array creation.
+    ReadBuffer<K, V>[] readBuffers = new ReadBuffer[stripes];
+    this.readBuffers = readBuffers;
+    for (int i = 0; i < stripes; i++) {
+      readBuffers[i] = new ReadBuffer<K, V>();
+    }
+    head.prev = head;
+    head.next = head;
   }
 
   /**
@@ -58,14 +92,22 @@ class LruCache<K, V> {
       throw new NullPointerException("key == null");
     }
 
-    V mapValue;
-    synchronized (this) {
-      mapValue = map.get(key);
-      if (mapValue != null) {
-        hitCount++;
-        return mapValue;
+    Node<K, V> node = map.get(key);
+    if (node != null) {
+      recordHit(node);
+      return node.value;
+    }
+
+    lock.lock();
+    try {
+      node = map.get(key);
+      if (node != null) {
+        recordHit(node);
+        return node.value;
       }
       missCount++;
+    } finally {
+      lock.unlock();
     }
 
     /*
@@ -80,16 +122,22 @@ class LruCache<K, V> {
       return null;
     }
 
-    synchronized (this) {
+    V mapValue = null;
+    lock.lock();
+    try {
       createCount++;
-      mapValue = map.put(key, createdValue);
-
-      if (mapValue != null) {
-        // There was a conflict so undo that last put
-        map.put(key, mapValue);
+      Node<K, V> existing = map.get(key);
+      if (existing != null) {
+        mapValue = existing.value;
       } else {
+        Node<K, V> created = new Node<K, V>(key, createdValue);
+        map.put(key, created);
+        drainReadBuffers();
+        linkLast(created);
         size += safeSizeOf(key, createdValue);
       }
+    } finally {
+      lock.unlock();
     }
 
     if (mapValue != null) {
@@ -112,14 +160,22 @@ class LruCache<K, V> {
       throw new NullPointerException("key == null || value == null");
     }
 
-    V previous;
-    synchronized (this) {
+    V previous = null;
+    lock.lock();
+    try {
       putCount++;
       size += safeSizeOf(key, value);
-      previous = map.put(key, value);
-      if (previous != null) {
+      Node<K, V> node = new Node<K, V>(key, value);
+      Node<K, V> previousNode = map.put(key, node);
+      if (previousNode != null) {
+        unlink(previousNode);
+        previous = previousNode.value;
         size -= safeSizeOf(key, previous);
       }
+      drainReadBuffers();
+      linkLast(node);
+    } finally {
+      lock.unlock();
     }
 
     if (previous != null) {
@@ -138,7 +194,8 @@ class LruCache<K, V> {
     while (true) {
       K key;
       V value;
-      synchronized (this) {
+      lock.lock();
+      try {
         if (size < 0 || (map.isEmpty() && size != 0)) {
           throw new IllegalStateException(getClass().getName()
               + ".sizeOf() is reporting inconsistent results!");
@@ -148,12 +205,16 @@ class LruCache<K, V> {
           break;
         }
 
-        Map.Entry<K, V> toEvict = map.entrySet().iterator().next();
-        key = toEvict.getKey();
-        value = toEvict.getValue();
-        map.remove(key);
+        drainReadBuffers();
+        Node<K, V> toEvict = head.next;
+        key = toEvict.key;
+        value = toEvict.value;
+        map.remove(key, toEvict);
+        unlink(toEvict);
         size -= safeSizeOf(key, value);
         evictionCount++;
+      } finally {
+        lock.unlock();
       }
 
       entryRemoved(true, key, value, null);
@@ -170,12 +231,17 @@ class LruCache<K, V> {
       throw new NullPointerException("key == null");
     }
 
-    V previous;
-    synchronized (this) {
-      previous = map.remove(key);
-      if (previous != null) {
+    V previous = null;
+    lock.lock();
+    try {
+      Node<K, V> previousNode = map.remove(key);
+      if (previousNode != null) {
+        unlink(previousNode);
+        previous = previousNode.value;
         size -= safeSizeOf(key, previous);
       }
+    } finally {
+      lock.unlock();
     }
 
     if (previous != null) {
@@ -185,6 +251,60 @@ class LruCache<K, V> {
     return previous;
   }
 
+  /**
+   * Records a hit on {@code node} in the calling thread's read buffer,
+   * draining the buffers if it's full and the lock is free.
+   */
+  private void recordHit(Node<K, V> node) {
+    ReadBuffer<K, V> buffer =
+        readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+    int index = buffer.writes.getAndIncrement() & READ_BUFFER_MASK;
+    buffer.nodes.lazySet(index, node);
+    if (index == READ_BUFFER_MASK && lock.tryLock()) {
+      try {
+        drainReadBuffers();
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Moves the nodes recorded in the read buffers to the most recently
+   * accessed end of the recency list. Must be called with the lock held.
+   */
+  private void drainReadBuffers() {
+    for (ReadBuffer<K, V> buffer : readBuffers) {
+      int writes = buffer.writes.get();
+      if (writes - buffer.reads > READ_BUFFER_SIZE) {
+        buffer.reads = writes - READ_BUFFER_SIZE; // Older hits were overwritten.
+      }
+      for (; buffer.reads != writes; buffer.reads++) {
+        Node<K, V> node = buffer.nodes.getAndSet(buffer.reads & READ_BUFFER_MASK, null);
+        if (node != null && node.next != null) {
+          unlink(node);
+          linkLast(node);
+        }
+      }
+    }
+  }
+
+  /** Adds {@code node} as the most recently accessed. Must be called with the lock held. */
+  private void linkLast(Node<K, V> node) {
+    node.prev = head.prev;
+    node.next = head;
+    head.prev.next = node;
+    head.prev = node;
+  }
+
+  /** Removes {@code node} from the recency list. Must be called with the lock held. */
+  private void unlink(Node<K, V> node) {
+    node.prev.next = node.next;
+    node.next.prev = node.prev;
+    node.prev = null;
+    node.next = null;
+  }
+
   /**
    * Called for entries that have been evicted or removed. This method is
    * invoked when a value is evicted to make space, removed by a call to
@@ -253,8 +373,13 @@ class LruCache<K, V> {
    * of entries in the cache. For all other caches, this returns the sum of
    * the sizes of the entries in this cache.
    */
-  public synchronized final int size() {
-    return size;
+  public final int size() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
@@ -262,14 +387,18 @@ class LruCache<K, V> {
    * number of entries in the cache. For all other caches, this returns the
    * maximum sum of the sizes of the entries in this cache.
    */
-  public synchronized final int maxSize() {
+  public final int maxSize() {
     return maxSize;
   }
 
   /**
    * Returns the number of times {@link #get} returned a value.
    */
-  public synchronized final int hitCount() {
+  public final int hitCount() {
+    int hitCount = 0;
+    for (ReadBuffer<K, V> buffer : readBuffers) {
+      hitCount += buffer.writes.get();
+    }
     return hitCount;
   }
 
@@ -277,43 +406,101 @@ class LruCache<K, V> {
    * Returns the number of times {@link #get} returned null or required a new
    * value to be created.
    */
-  public synchronized final int missCount() {
-    return missCount;
+  public final int missCount() {
+    lock.lock();
+    try {
+      return missCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * Returns the number of times {@link #create(Object)} returned a value.
    */
-  public synchronized final int createCount() {
-    return createCount;
+  public final int createCount() {
+    lock.lock();
+    try {
+      return createCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * Returns the number of times {@link #put} was called.
    */
-  public synchronized final int putCount() {
-    return putCount;
+  public final int putCount() {
+    lock.lock();
+    try {
+      return putCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * Returns the number of values that have been evicted.
    */
-  public synchronized final int evictionCount() {
-    return evictionCount;
+  public final int evictionCount() {
+    lock.lock();
+    try {
+      return evictionCount;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
    * Returns a copy of the current contents of the cache, ordered from least
    * recently accessed to most recently accessed.
    */
-  public synchronized final Map<K, V> snapshot() {
-    return new LinkedHashMap<K, V>(map);
+  public final Map<K, V> snapshot() {
+    lock.lock();
+    try {
+      drainReadBuffers();
+      Map<K, V> result = new LinkedHashMap<K, V>();
+      for (Node<K, V> node = head.next; node != head; node = node.next) {
+        result.put(node.key, node.value);
+      }
+      return result;
+    } finally {
+      lock.unlock();
+    }
   }
 
-  @Override public synchronized final String toString() {
+  @Override public final String toString() {
+    int hitCount = hitCount();
+    int missCount = missCount();
     int accesses = hitCount + missCount;
     int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
     return String.format("LruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
         maxSize, hitCount, missCount, hitPercent);
   }
-}
\ No newline at end of file
+
+  /** An entry in the map and in the recency list. */
+  private static final class Node<K, V> {
+    final K key;
+    final V value;
+    /** Guarded by the lock. Null when this node isn't in the recency list. */
+    Node<K, V> prev;
+    Node<K, V> next;
+
+    Node(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * A ring of recently hit nodes. Threads that share a buffer claim slots by
+   * incrementing {@code writes}, which also counts the buffer's hits.
+   */
+  private static final class ReadBuffer<K, V> {
+    final AtomicInteger writes = new AtomicInteger();
+    final AtomicReferenceArray<Node<K, V>> nodes =
+        new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+    /** The number of writes drained. Guarded by the lock. */
+    int reads;
+  }
+}
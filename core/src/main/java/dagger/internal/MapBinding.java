@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.inject.Provider;
+
+/**
+ * A {@code Binding<Map<String, V>>} whose entries are contributed by other
+ * bindings (marked with {@code @Provides(type = MAP)} and {@code @MapKey}),
+ * to which it delegates provision requests.
+ *
+ * <p>Each map binding is installed with a companion binding for {@code
+ * Map<String, Provider<V>>}. Its map is built once when it is linked, and
+ * contributors are only asked for values that are looked up.
+ */
+public final class MapBinding<V> extends Binding<Map<String, V>> {
+  private static final String MAP_PREFIX = Map.class.getCanonicalName() + "<"
+      + String.class.getName() + ", ";
+  private static final String PROVIDER_PREFIX = Provider.class.getCanonicalName() + "<";
+
+  /**
+   * Adds {@code binding} to the map bound to {@code mapKey} in {@code
+   * bindings} as the entry for {@code entryKey}.
+   *
+   * @throws IllegalArgumentException if the map already has an entry for
+   *     {@code entryKey}.
+   */
+  public static <V> void add(Map<String, Binding<?>> bindings, String mapKey, String entryKey,
+      Binding<?> binding) {
+    @SuppressWarnings("unchecked")
+    MapBinding<V> mapBinding = (MapBinding<V>) bindings.get(mapKey);
+    if (mapBinding == null) {
+      mapBinding = new MapBinding<V>(mapKey);
+      bindings.put(mapBinding.provideKey, mapBinding);
+      ProvidersBinding<V> providersBinding = new ProvidersBinding<V>(mapBinding);
+      bindings.put(providersBinding.provideKey, providersBinding);
+    }
+    Binding<?> clobbered = mapBinding.contributors.put(entryKey, Linker.scope(binding));
+    if (clobbered != null) {
+      mapBinding.contributors.put(entryKey, clobbered);
+      throw new IllegalArgumentException("Duplicate map key " + entryKey + " for " + mapKey
+          + ":\n    " + clobbered + "\n    " + binding);
+    }
+  }
+
+  /**
+   * Returns the key of the {@code Map<String, Provider<V>>} for the {@code
+   * Map<String, V>} bound to {@code mapKey}.
+   */
+  public static String getProvidersKey(String mapKey) {
+    int start = mapKey.startsWith("@") ? mapKey.lastIndexOf('/') + 1 : 0;
+    if (!mapKey.startsWith(MAP_PREFIX, start) || !mapKey.endsWith(">")) {
+      throw new IllegalArgumentException("Not a map key: " + mapKey);
+    }
+    return mapKey.substring(0, start + MAP_PREFIX.length()) + PROVIDER_PREFIX
+        + mapKey.substring(start + MAP_PREFIX.length(), mapKey.length() - 1) + ">>";
+  }
+
+  private final Map<String, Binding<?>> contributors = new LinkedHashMap<String, Binding<?>>();
+
+  /** True if every contributor is a singleton. Set when linked. */
+  private boolean allSingletons;
+
+  /** The map built from singleton contributors, or null if not built yet. */
+  private volatile Map<String, V> singletonMap;
+
+  public MapBinding(String key) {
+    super(key, null, false, null);
+  }
+
+  @Override public void attach(Linker linker) {
+    boolean allSingletons = true;
+    for (Binding<?> contributor : contributors.values()) {
+      contributor.attach(linker);
+      allSingletons &= contributor.isSingleton();
+    }
+    this.allSingletons = allSingletons;
+  }
+
+  @Override public Map<String, V> get() {
+    if (!allSingletons) {
+      return Collections.unmodifiableMap(getEntries());
+    }
+    // Racing threads may each build the map, but they get the same singletons.
+    Map<String, V> result = singletonMap;
+    if (result == null) {
+      result = Collections.unmodifiableMap(getEntries());
+      singletonMap = result;
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked") // Bindings<V> are the only thing added to contributors.
+  private Map<String, V> getEntries() {
+    Map<String, V> result = new LinkedHashMap<String, V>(contributors.size() * 4 / 3 + 1);
+    for (Map.Entry<String, Binding<?>> entry : contributors.entrySet()) {
+      result.put(entry.getKey(), (V) entry.getValue().get()); // Let runtime exceptions through.
+    }
+    return result;
+  }
+
+  @Override public void getDependencies(
+      Set<Binding<?>> getBindings, Set<Binding<?>> injectMembersBindings) {
+    getBindings.addAll(contributors.values());
+  }
+
+  @Override public void injectMembers(Map<String, V> t) {
+    throw new UnsupportedOperationException("Cannot inject into a multi-binder Map");
+  }
+
+  @Override public String toString() {
+    return "MapBinding" + contributors;
+  }
+
+  /**
+   * Injects the contributors of a map as providers. The map is built when
+   * this binding is linked and shared by every request.
+   *
+   * <p>Like a {@code Provider<T>}, this binding doesn't report its
+   * contributors from {@link #getDependencies}: it doesn't call them when
+   * it's injected, so a contributor may depend on its own map of providers
+   * without forming a dependency cycle.
+   */
+  private static final class ProvidersBinding<V> extends Binding<Map<String, Provider<V>>> {
+    private final MapBinding<V> mapBinding;
+    private volatile Map<String, Provider<V>> providers;
+
+    ProvidersBinding(MapBinding<V> mapBinding) {
+      super(getProvidersKey(mapBinding.provideKey), null, false, null);
+      this.mapBinding = mapBinding;
+      setLibrary(true); // Installed implicitly, so it's never reported as unused.
+    }
+
+    @SuppressWarnings("unchecked") // Bindings<V> are the only thing added to contributors.
+    @Override public void attach(Linker linker) {
+      // Link the contributors, which are attached by the map binding that's
+      // linked for the map's key.
+      Binding<?> linked = linker.requestBinding(mapBinding.provideKey, requiredBy);
+      if (linked == UNRESOLVED) {
+        return; // Reported by the linker.
+      }
+      if (!(linked instanceof MapBinding)) {
+        linker.addError("No binding for " + provideKey + " (" + mapBinding.provideKey
+            + " isn't a multibinding) required by " + requiredBy);
+        return;
+      }
+      Map<String, Binding<?>> contributors = ((MapBinding<V>) linked).contributors;
+      Map<String, Provider<V>> result =
+          new LinkedHashMap<String, Provider<V>>(contributors.size() * 4 / 3 + 1);
+      for (Map.Entry<String, Binding<?>> entry : contributors.entrySet()) {
+        result.put(entry.getKey(), (Provider<V>) entry.getValue());
+      }
+      providers = Collections.unmodifiableMap(result);
+    }
+
+    @Override public Map<String, Provider<V>> get() {
+      return providers;
+    }
+
+    @Override public void injectMembers(Map<String, Provider<V>> t) {
+      throw new UnsupportedOperationException("Cannot inject into a multi-binder Map");
+    }
+
+    @Override public String toString() {
+      return "ProvidersBinding" + mapBinding.contributors.keySet();
+    }
+  }
+}
@@ -60,4 +60,42 @@ public abstract class ModuleAdapter<T> {
   public T getModule() {
     return module;
   }
+
+  /**
+   * Returns a copy of this adapter for {@code module}, or for a new instance of
+   * the module class if {@code module} is null. The copy is created by {@link
+   * #newAdapter}, so it shares no state with this adapter besides its entry
+   * points, static injections and includes.
+   */
+  public ModuleAdapter<T> withModule(T module) {
+    ModuleAdapter<T> result = newAdapter();
+    result.module = (module != null) ? module : newModule();
+    return result;
+  }
+
+  /**
+   * Returns a copy of this adapter without a module, to be copied again with
+   * {@link #withModule}. Its bindings cannot be used.
+   */
+  public ModuleAdapter<T> withoutModule() {
+    return newAdapter();
+  }
+
+  /**
+   * Returns a new adapter for the same module class as this one, without a
+   * module. The default creates one with this class's public no-args
+   * constructor. Adapters without one, or whose constructor doesn't recreate
+   * their state, must override this.
+   */
+  protected ModuleAdapter<T> newAdapter() {
+    try {
+      @SuppressWarnings("unchecked") // Instances of this class adapt modules of type 'T'.
+      ModuleAdapter<T> result = getClass().getConstructor().newInstance();
+      return result;
+    } catch (NoSuchMethodException e) {
+      throw new UnsupportedOperationException("No no-args constructor on " + getClass().getName());
+    } catch (Exception e) {
+      throw new RuntimeException("Unable to create " + getClass().getName(), e);
+    }
+  }
 }
@@ -19,20 +19,29 @@ package dagger.internal;
  * Provides a point of configuration of the basic resolving functions within Dagger, namely
  * that of Module handling, injection binding creation, and static injection.  A plugin must
  * provide all resolution methods
+ *
+ * <p>When plugins are aggregated, a plugin that can't handle a request should
+ * return null rather than throw, so the next plugin is consulted without the
+ * cost of an exception.
  */
 public interface Plugin {
   /**
-   * Returns a binding that uses {@code @Inject} annotations.
+   * Returns a binding that uses {@code @Inject} annotations, or null if this
+   * plugin has none for {@code className}. The class is loaded by {@code
+   * classLoader}, the loader of the requesting graph's modules.
    */
-  Binding<?> getAtInjectBinding(String key, String className, boolean mustBeInjectable);
+  Binding<?> getAtInjectBinding(
+      String key, String className, ClassLoader classLoader, boolean mustBeInjectable);
 
   /**
-   * Returns a module adapter for {@code module}.
+   * Returns a module adapter for {@code module}, or null if this plugin has
+   * none for {@code moduleClass}.
    */
   <T> ModuleAdapter<T> getModuleAdapter(Class<? extends T> moduleClass, T module);
 
   /**
-   * Returns the static injection for {@code injectedClass}.
+   * Returns the static injection for {@code injectedClass}, or null if this
+   * plugin has none for it.
    */
   StaticInjection getStaticInjection(Class<?> injectedClass);
 }
\ No newline at end of file
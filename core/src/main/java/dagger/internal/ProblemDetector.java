@@ -19,21 +19,50 @@ import dagger.internal.plugins.AbstractProviderMethodBinding;
 import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Detects problems like cyclic dependencies.
  */
 public final class ProblemDetector {
+  /**
+   * Throws if {@code bindings} or their dependencies depend on each other in
+   * cycles, describing one cycle of each set of bindings that do. Bindings
+   * from which no cycle is reachable are marked {@link Binding#isCycleFree
+   * cycle-free}, and are skipped by later calls.
+   *
+   * <p>This finds the strongly connected components of the dependency graph
+   * with Tarjan's algorithm. It uses an explicit stack rather than recursion,
+   * so deep graphs don't overflow the thread's stack, and runs in time
+   * proportional to the number of bindings and dependencies visited.
+   */
   public void detectCircularDependencies(Collection<Binding<?>> bindings) {
-    detectCircularDependencies(bindings, new ArrayList<Binding<?>>());
+    List<List<Binding<?>>> cycles = new CycleFinder().findCycles(bindings);
+    if (cycles.isEmpty()) {
+      return;
+    }
+    StringBuilder message = new StringBuilder();
+    for (List<Binding<?>> cycle : cycles) {
+      if (message.length() != 0) {
+        message.append("\n");
+      }
+      message.append("Dependency cycle:");
+      for (int i = 0; i < cycle.size(); i++) {
+        message.append("\n    ").append(i).append(". ")
+            .append(cycle.get(i).provideKey).append(" bound by ").append(cycle.get(i));
+      }
+      message.append("\n    ").append(0).append(". ").append(cycle.get(0).provideKey);
+    }
+    throw new IllegalStateException(message.toString());
   }
 
   public void detectUnusedBinding(Collection<Binding<?>> bindings) {
     ArrayList<Binding> unusedBindings = new ArrayList<Binding>();
     for (Binding<?> binding : bindings) {
-      if (!binding.library() && !binding.dependedOn()) {
+      if (binding != Binding.UNRESOLVED && !binding.library() && !binding.dependedOn()) {
         unusedBindings.add(binding);
       }
     }
@@ -42,6 +71,10 @@ public final class ProblemDetector {
       builder.append("You have these unused @Provider methods! ");
       builder.append("Set library=true in your module to disable this check.\n");
       for (Binding<?> binding : unusedBindings) {
+        if (!(binding instanceof AbstractProviderMethodBinding)) {
+          builder.append(binding.provideKey).append(" bound by ").append(binding).append("\n");
+          continue;
+        }
         AbstractProviderMethodBinding<?> providerBinding =
             (AbstractProviderMethodBinding<?>) binding;
         builder.append(providerBinding.getModuleName())
@@ -53,42 +86,169 @@ public final class ProblemDetector {
     }
   }
 
-  private static void detectCircularDependencies(Collection<Binding<?>> bindings,
-      List<Binding<?>> path) {
-    for (Binding<?> binding : bindings) {
-      if (binding.isCycleFree()) {
-        continue;
+  public void detectProblems(Collection<Binding<?>> values) {
+    detectCircularDependencies(values);
+    detectUnusedBinding(values);
+  }
+
+  /** Finds the cycles among bindings that aren't known to be cycle-free. */
+  private static final class CycleFinder {
+    private final Map<Binding<?>, Node> nodes = new IdentityHashMap<Binding<?>, Node>();
+    /** Nodes whose strongly connected components haven't been completed. */
+    private final List<Node> componentStack = new ArrayList<Node>();
+    /** The path of nodes being visited, replacing recursive calls. */
+    private final List<Node> visitStack = new ArrayList<Node>();
+    private final ArraySet<Binding<?>> dependencies = new ArraySet<Binding<?>>();
+    private final List<List<Binding<?>>> cycles = new ArrayList<List<Binding<?>>>();
+
+    List<List<Binding<?>>> findCycles(Collection<Binding<?>> bindings) {
+      for (Binding<?> binding : bindings) {
+        if (binding != null && !binding.isCycleFree() && !nodes.containsKey(binding)) {
+          visit(binding);
+        }
+      }
+      return cycles;
+    }
+
+    private void visit(Binding<?> root) {
+      push(root);
+      while (!visitStack.isEmpty()) {
+        Node node = visitStack.get(visitStack.size() - 1);
+        if (node.next < node.dependencies.length) {
+          Binding<?> dependency = node.dependencies[node.next++];
+          if (dependency == null || dependency.isCycleFree()) {
+            continue;
+          }
+          Node dependencyNode = nodes.get(dependency);
+          if (dependencyNode == null) {
+            push(dependency);
+          } else if (dependencyNode.onStack) {
+            node.lowLink = Math.min(node.lowLink, dependencyNode.index);
+          }
+          continue;
+        }
+
+        visitStack.remove(visitStack.size() - 1);
+        if (!visitStack.isEmpty()) {
+          Node parent = visitStack.get(visitStack.size() - 1);
+          parent.lowLink = Math.min(parent.lowLink, node.lowLink);
+        }
+        if (node.lowLink == node.index) {
+          completeComponent(node);
+        }
+      }
+    }
+
+    private void push(Binding<?> binding) {
+      dependencies.clear();
+      binding.getDependencies(dependencies, dependencies);
+      Node node = new Node(binding, nodes.size(), dependencies.toArray());
+      nodes.put(binding, node);
+      componentStack.add(node);
+      visitStack.add(node);
+    }
+
+    /**
+     * Pops the strongly connected component whose first visited node is
+     * {@code root}. Components are completed after every component they
+     * depend on, so whether those reach a cycle is already known.
+     */
+    private void completeComponent(Node root) {
+      int start = componentStack.lastIndexOf(root);
+      List<Node> component = componentStack.subList(start, componentStack.size());
+      for (Node node : component) {
+        node.onStack = false;
+        node.component = root.index;
       }
 
-      if (binding.isVisiting()) {
-        int index = path.indexOf(binding);
-        StringBuilder message = new StringBuilder()
-            .append("Dependency cycle:");
-        for (int i = index; i < path.size(); i++) {
-          message.append("\n    ").append(i - index).append(". ")
-              .append(path.get(i).provideKey).append(" bound by ").append(path.get(i));
+      boolean cyclic = component.size() > 1 || root.dependsOn(root);
+      boolean reachesCycle = cyclic;
+      for (int i = 0; i < component.size() && !reachesCycle; i++) {
+        for (Binding<?> dependency : component.get(i).dependencies) {
+          Node dependencyNode = (dependency != null) ? nodes.get(dependency) : null;
+          if (dependencyNode != null && dependencyNode.reachesCycle) {
+            reachesCycle = true;
+            break;
+          }
         }
-        message.append("\n    ").append(0).append(". ").append(binding.provideKey);
-        throw new IllegalStateException(message.toString());
       }
 
-      binding.setVisiting(true);
-      path.add(binding);
-      try {
-        ArraySet<Binding<?>> dependencies = new ArraySet<Binding<?>>();
-        binding.getDependencies(dependencies, dependencies);
-        detectCircularDependencies(dependencies, path);
-        binding.setCycleFree(true);
-      } finally {
-        path.remove(path.size() - 1);
-        binding.setVisiting(false);
+      if (cyclic) {
+        cycles.add(findCycle(root));
       }
+      for (Node node : component) {
+        node.reachesCycle = reachesCycle;
+        if (!reachesCycle) {
+          node.binding.setCycleFree(true);
+        }
+      }
+      component.clear();
+    }
+
+    /**
+     * Returns a shortest cycle through {@code root}, found by a breadth-first
+     * search of the component that {@code root} was the first node visited in.
+     */
+    private List<Binding<?>> findCycle(Node root) {
+      Map<Node, Node> parents = new IdentityHashMap<Node, Node>();
+      List<Node> queue = new ArrayList<Node>();
+      queue.add(root);
+      for (int i = 0; i < queue.size(); i++) {
+        Node node = queue.get(i);
+        for (Binding<?> dependency : node.dependencies) {
+          Node dependencyNode = (dependency != null) ? nodes.get(dependency) : null;
+          if (dependencyNode == null || dependencyNode.component != root.index) {
+            continue; // Not in the component.
+          }
+          if (dependencyNode == root) {
+            List<Binding<?>> cycle = new ArrayList<Binding<?>>();
+            for (Node n = node; n != null; n = parents.get(n)) {
+              cycle.add(0, n.binding);
+            }
+            return cycle;
+          }
+          if (!parents.containsKey(dependencyNode)) {
+            parents.put(dependencyNode, node);
+            queue.add(dependencyNode);
+          }
+        }
+      }
+      throw new AssertionError("No cycle through " + root.binding);
     }
   }
 
-  public void detectProblems(Collection<Binding<?>> values) {
-    detectCircularDependencies(values);
-    detectUnusedBinding(values);
+  /** A binding's state while finding cycles. */
+  private static final class Node {
+    final Binding<?> binding;
+    /** The order in which this node was first visited. */
+    final int index;
+    final Binding<?>[] dependencies;
+    /** The index of the next dependency to visit. */
+    int next;
+    /** The lowest index of a node on the component stack reachable from this one. */
+    int lowLink;
+    boolean onStack = true;
+    /** The index of the first visited node of this node's component, once it's complete. */
+    int component = -1;
+    /** True if a cycle is reachable from this node, once its component is complete. */
+    boolean reachesCycle;
+
+    Node(Binding<?> binding, int index, Object[] dependencies) {
+      this.binding = binding;
+      this.index = index;
+      this.lowLink = index;
+      this.dependencies = new Binding<?>[dependencies.length];
+      System.arraycopy(dependencies, 0, this.dependencies, 0, dependencies.length);
+    }
+
+    boolean dependsOn(Node node) {
+      for (Binding<?> dependency : dependencies) {
+        if (dependency == node.binding) {
+          return true;
+        }
+      }
+      return false;
+    }
   }
 
   static class ArraySet<T> extends AbstractSet<T> {
@@ -103,6 +263,14 @@ public final class ProblemDetector {
       return list.iterator();
     }
 
+    @Override public void clear() {
+      list.clear();
+    }
+
+    @Override public Object[] toArray() {
+      return list.toArray();
+    }
+
     @Override public int size() {
       throw new UnsupportedOperationException();
     }
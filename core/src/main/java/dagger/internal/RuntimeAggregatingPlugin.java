@@ -32,11 +32,23 @@ public final class RuntimeAggregatingPlugin implements Plugin {
   /** A list of {@code Linker.Plugin}s which will be consulted in-order to resolve requests. */
   private final Plugin[] plugins;
 
+  /** Notified of each resolved request, or null. */
+  private final Instrumentation instrumentation;
+
   public RuntimeAggregatingPlugin(Plugin ... plugins) {
+    this(null, plugins);
+  }
+
+  /**
+   * @param instrumentation notified of each request that a plugin resolves,
+   *     or null.
+   */
+  public RuntimeAggregatingPlugin(Instrumentation instrumentation, Plugin ... plugins) {
     if (plugins == null || plugins.length == 0) {
       throw new IllegalArgumentException("Must provide at least one plugin.");
     }
     this.plugins = plugins;
+    this.instrumentation = instrumentation;
   }
 
   /**
@@ -93,44 +105,76 @@ public final class RuntimeAggregatingPlugin implements Plugin {
    * Obtains a module adapter for {@code module} from the first responding resolver.
    */
   @Override public <T> ModuleAdapter<T> getModuleAdapter(Class<? extends T> moduleClass, T module) {
+    long start = (instrumentation != null) ? System.nanoTime() : 0L;
     for (int i = 0; i < plugins.length; i++) {
       try {
         ModuleAdapter<T> result = plugins[i].getModuleAdapter(moduleClass, module);
+        if (result == null) {
+          logNotFound("Module adapter", moduleClass.getName(), null);
+          continue;
+        }
         result.module = (module != null) ? module : result.newModule();
+        if (instrumentation != null) {
+          instrumentation.moduleAdapterResolved(moduleClass, plugins[i], System.nanoTime() - start);
+        }
         return result;
       } catch (RuntimeException e) {
         if (i == plugins.length - 1) throw e;
         logNotFound("Module adapter", moduleClass.getName(), e);
       }
     }
-    throw new AssertionError();
+    throw new IllegalArgumentException("No module adapter for " + moduleClass.getName());
   }
 
+  /**
+   * Obtains a binding from the first responding resolver. Returns null if no
+   * resolver has one, as when {@code className} names an interface.
+   */
   @Override public Binding<?> getAtInjectBinding(String key, String className,
-      boolean mustBeInjectable) {
+      ClassLoader classLoader, boolean mustBeInjectable) {
+    long start = (instrumentation != null) ? System.nanoTime() : 0L;
     for (int i = 0; i < plugins.length; i++) {
       try {
-        return plugins[i].getAtInjectBinding(key, className, mustBeInjectable);
+        Binding<?> result =
+            plugins[i].getAtInjectBinding(key, className, classLoader, mustBeInjectable);
+        if (result != null) {
+          if (instrumentation != null) {
+            instrumentation.atInjectBindingResolved(
+                className, plugins[i], System.nanoTime() - start);
+          }
+          return result;
+        }
+        logNotFound("Binding", className, null);
       } catch (RuntimeException e) {
         if (i == plugins.length - 1) throw e;
         logNotFound("Binding", className, e);
       }
     }
-    throw new AssertionError();
+    return null;
   }
 
   @Override public StaticInjection getStaticInjection(Class<?> injectedClass) {
+    long start = (instrumentation != null) ? System.nanoTime() : 0L;
     for (int i = 0; i < plugins.length; i++) {
       try {
-        return plugins[i].getStaticInjection(injectedClass);
+        StaticInjection result = plugins[i].getStaticInjection(injectedClass);
+        if (result != null) {
+          if (instrumentation != null) {
+            instrumentation.staticInjectionResolved(
+                injectedClass, plugins[i], System.nanoTime() - start);
+          }
+          return result;
+        }
+        logNotFound("Static injection", injectedClass.getName(), null);
       } catch (RuntimeException e) {
         if (i == plugins.length - 1) throw e;
         logNotFound("Static injection", injectedClass.getName(), e);
       }
     }
-    throw new AssertionError();
+    throw new IllegalArgumentException("No static injection for " + injectedClass.getName());
   }
 
+  /** @param e the exception thrown by the plugin, or null if it returned null. */
   private void logNotFound(String type, String name, RuntimeException e) {
     if (logger.isLoggable(Level.FINE)) {
       logger.log(Level.FINE, String.format("%s for %s not found.", type, name), e);
@@ -16,15 +16,32 @@
  */
 package dagger.internal;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * A {@code Binding<T>} which contains contributors (other bindings marked with
  * {@code @Provides} {@code @OneOf}), to which it delegates provision
  * requests on an as-needed basis.
+ *
+ * <p>If every contributor is a singleton, the set can never change: it is
+ * built once into a compact immutable set that every request shares.
+ *
+ * <p>If the linker has a {@linkplain Linker#setMultibindingExecutor
+ * multibinding executor}, contributors are constructed concurrently on it.
+ * The set keeps the order in which they were contributed.
  */
 public final class SetBinding<T> extends Binding<Set<T>> {
 
@@ -41,23 +58,115 @@ public final class SetBinding<T> extends Binding<Set<T>> {
 
   private final Set<Binding<?>> contributors = new LinkedHashSet<Binding<?>>();
 
+  /** True if every contributor is a singleton. Set when linked. */
+  private boolean allSingletons;
+
+  /** The set built from singleton contributors, or null if not built yet. */
+  private volatile Set<T> singletonSet;
+
+  /** Constructs contributors concurrently, or null to construct them in turn. */
+  private Executor executor;
+
   public SetBinding(String key) {
     super(key, null, false, null);
   }
 
   @Override public void attach(Linker linker) {
+    boolean allSingletons = true;
     for (Binding<?> contributor : contributors) {
       contributor.attach(linker);
+      allSingletons &= contributor.isSingleton();
     }
+    this.allSingletons = allSingletons;
+    this.executor = linker.getMultibindingExecutor();
   }
 
-  @SuppressWarnings("unchecked") // Bindings<T> are the only thing added to contributors.
   @Override public Set<T> get() {
+    if (!allSingletons) {
+      return Collections.unmodifiableSet(getElements());
+    }
+    // Racing threads may each build the set, but they get the same singletons.
+    Set<T> result = singletonSet;
+    if (result == null) {
+      result = new ImmutableArraySet<T>(getElements().toArray());
+      singletonSet = result;
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked") // Bindings<T> are the only thing added to contributors.
+  private Set<T> getElements() {
+    if (executor != null && contributors.size() > 1) {
+      return getElementsConcurrently();
+    }
     Set<T> result = new LinkedHashSet<T>(contributors.size());
     for (Binding<?> contributor : contributors) {
       result.add((T) contributor.get()); // Let runtime exceptions through.
     }
-    return Collections.unmodifiableSet(result);
+    return result;
+  }
+
+  /**
+   * Constructs the contributors on the executor. The calling thread constructs
+   * the contributors that no executor thread has started, in order, so a
+   * saturated executor can't deadlock a request. If contributors fail, this
+   * throws the exception of the first one to fail in contribution order.
+   */
+  @SuppressWarnings("unchecked") // Bindings<T> are the only thing added to contributors.
+  private Set<T> getElementsConcurrently() {
+    List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>(contributors.size());
+    for (final Binding<?> contributor : contributors) {
+      tasks.add(new FutureTask<Object>(new Callable<Object>() {
+        @Override public Object call() {
+          return contributor.get();
+        }
+      }));
+    }
+    try {
+      for (int i = 1; i < tasks.size(); i++) {
+        executor.execute(tasks.get(i));
+      }
+    } catch (RejectedExecutionException ignored) {
+      // The calling thread constructs the contributors that weren't submitted.
+    }
+
+    Set<T> result = new LinkedHashSet<T>(contributors.size());
+    try {
+      for (FutureTask<Object> task : tasks) {
+        task.run(); // Does nothing if an executor thread started the task.
+        result.add((T) getUninterruptibly(task));
+      }
+    } finally {
+      for (FutureTask<Object> task : tasks) {
+        task.cancel(false); // Only tasks that weren't started remain after a failure.
+      }
+    }
+    return result;
+  }
+
+  private static Object getUninterruptibly(FutureTask<Object> task) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause; // Let runtime exceptions through.
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
   }
 
   @Override public void getDependencies(
@@ -72,4 +181,110 @@ public final class SetBinding<T> extends Binding<Set<T>> {
   @Override public String toString() {
     return "SetBinding" + contributors;
   }
+
+  /**
+   * Injects the contributors of a multibinding as a {@code Set<Provider<T>>}
+   * or a {@code Set<Lazy<T>>}, so that elements are only constructed when
+   * they are used. The set is built once when linked and shared by every
+   * request, unless it holds lazies of contributors that aren't singletons:
+   * each of those remembers its own value.
+   */
+  static final class ContributorsBinding extends Binding<Set<Object>> {
+    private final Key setKey;
+    private final boolean lazy;
+    private Binding<?>[] contributors;
+
+    /** The set injected everywhere, or null if each request gets new lazies. */
+    private Set<Object> sharedSet;
+
+    ContributorsBinding(String key, Object requiredBy, Key setKey, boolean lazy) {
+      super(key, null, false, requiredBy);
+      this.setKey = setKey;
+      this.lazy = lazy;
+    }
+
+    @Override public void attach(Linker linker) {
+      Binding<?> setBinding = linker.requestBinding(setKey, requiredBy);
+      if (setBinding == UNRESOLVED) {
+        return; // Reported by the linker.
+      }
+      if (!(setBinding instanceof SetBinding)) {
+        linker.addError("No binding for " + provideKey + " (" + setKey
+            + " isn't a multibinding) required by " + requiredBy);
+        return;
+      }
+      Set<Binding<?>> contributorSet = ((SetBinding<?>) setBinding).contributors;
+      contributors = contributorSet.toArray(new Binding<?>[contributorSet.size()]);
+      boolean allSingletons = true;
+      for (Binding<?> contributor : contributors) {
+        allSingletons &= contributor.isSingleton();
+      }
+      if (!lazy) {
+        sharedSet = new ImmutableArraySet<Object>(contributors.clone());
+      } else if (allSingletons) {
+        sharedSet = new ImmutableArraySet<Object>(newLazies());
+      }
+    }
+
+    @Override public Set<Object> get() {
+      return sharedSet != null ? sharedSet : new ImmutableArraySet<Object>(newLazies());
+    }
+
+    private Object[] newLazies() {
+      Object[] result = new Object[contributors.length];
+      for (int i = 0; i < contributors.length; i++) {
+        result[i] = LazyBinding.newLazy(contributors[i]);
+      }
+      return result;
+    }
+
+    // public void getDependencies() not overridden.
+    // Like Provider<T> bindings, it doesn't call its contributors when injected.
+
+    @Override public void injectMembers(Set<Object> t) {
+      throw new UnsupportedOperationException("Cannot inject into a multi-binder Set");
+    }
+
+    @Override public String toString() {
+      return "ContributorsBinding[" + setKey + "]";
+    }
+  }
+
+  /**
+   * An immutable set of distinct elements in an array. Lookups are linear,
+   * which is fast for the small sets that modules contribute.
+   */
+  private static final class ImmutableArraySet<T> extends AbstractSet<T> {
+    private final Object[] elements;
+
+    ImmutableArraySet(Object[] elements) {
+      this.elements = elements;
+    }
+
+    @Override public Iterator<T> iterator() {
+      return new Iterator<T>() {
+        private int next;
+
+        @Override public boolean hasNext() {
+          return next < elements.length;
+        }
+
+        @SuppressWarnings("unchecked") // Only T elements are added.
+        @Override public T next() {
+          if (next == elements.length) {
+            throw new NoSuchElementException();
+          }
+          return (T) elements[next++];
+        }
+
+        @Override public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override public int size() {
+      return elements.length;
+    }
+  }
 }
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Constructs the singletons reachable from a set of linked bindings on an
+ * executor. A singleton is constructed once every singleton it needs to be
+ * constructed has been, and singletons that don't depend on each other are
+ * constructed concurrently.
+ *
+ * <p>Dependencies are found with {@link Binding#getDependencies}, looking
+ * through bindings that aren't singletons. {@code Provider} and {@code Lazy}
+ * bindings don't report their delegates, so they don't order construction.
+ */
+public final class SingletonWarmUp {
+  private static final Runnable DONE = new Runnable() {
+    @Override public void run() {
+    }
+  };
+
+  private final Executor executor;
+  private final Completion completion = new Completion();
+  private final AtomicInteger remaining;
+  private final List<Node> roots = new ArrayList<Node>();
+
+  private SingletonWarmUp(Collection<Node> nodes, Executor executor) {
+    this.executor = executor;
+    this.remaining = new AtomicInteger(nodes.size());
+    for (Node node : nodes) {
+      if (node.pending.get() == 0) {
+        roots.add(node);
+      }
+    }
+  }
+
+  /**
+   * Starts constructing the singletons reachable from {@code bindings}, which
+   * must all be linked. The returned future completes when every singleton
+   * has been constructed, or fails with the first exception thrown by one.
+   *
+   * @throws IllegalStateException if singletons depend on each other in a
+   *     cycle.
+   */
+  public static Future<Void> start(Collection<? extends Binding<?>> bindings, Executor executor) {
+    if (executor == null) throw new NullPointerException("executor");
+    Collection<Node> nodes = buildGraph(bindings);
+    SingletonWarmUp warmUp = new SingletonWarmUp(nodes, executor);
+    if (nodes.isEmpty()) {
+      warmUp.completion.succeed();
+    }
+    for (Node root : warmUp.roots) {
+      warmUp.submit(root);
+    }
+    return warmUp.completion;
+  }
+
+  /**
+   * Returns a node for each singleton reachable from {@code bindings}, with
+   * edges to the singletons it needs.
+   */
+  private static Collection<Node> buildGraph(Collection<? extends Binding<?>> bindings) {
+    Map<Binding<?>, Set<Binding<?>>> frontiers = new HashMap<Binding<?>, Set<Binding<?>>>();
+    Map<Binding<?>, Node> nodes = new LinkedHashMap<Binding<?>, Node>();
+    List<Binding<?>> singletons = new ArrayList<Binding<?>>();
+    for (Binding<?> binding : bindings) {
+      singletons.addAll(nearestSingletons(binding, frontiers));
+    }
+
+    for (int i = 0; i < singletons.size(); i++) {
+      Binding<?> binding = singletons.get(i);
+      if (nodes.containsKey(binding)) {
+        continue;
+      }
+      Node node = new Node(binding);
+      nodes.put(binding, node);
+      for (Binding<?> dependency : dependencies(binding)) {
+        node.needed.addAll(nearestSingletons(dependency, frontiers));
+      }
+      node.needed.remove(binding);
+      singletons.addAll(node.needed);
+    }
+
+    for (Node node : nodes.values()) {
+      for (Binding<?> singleton : node.needed) {
+        nodes.get(singleton).dependents.add(node);
+      }
+      node.pending.set(node.needed.size());
+    }
+    checkAcyclic(nodes.values());
+    return nodes.values();
+  }
+
+  /** Fails if the singletons can't all be constructed in dependency order. */
+  private static void checkAcyclic(Collection<Node> nodes) {
+    Map<Node, Integer> pending = new HashMap<Node, Integer>();
+    List<Node> ready = new ArrayList<Node>();
+    for (Node node : nodes) {
+      pending.put(node, node.needed.size());
+      if (node.needed.isEmpty()) {
+        ready.add(node);
+      }
+    }
+    for (int i = 0; i < ready.size(); i++) {
+      for (Node dependent : ready.get(i).dependents) {
+        int count = pending.get(dependent) - 1;
+        pending.put(dependent, count);
+        if (count == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    if (ready.size() != nodes.size()) {
+      throw new IllegalStateException("Singletons depend on each other in a cycle.");
+    }
+  }
+
+  /**
+   * Returns {@code binding} if it is a singleton. Otherwise returns the
+   * nearest singletons it reaches through bindings that aren't singletons,
+   * memoized in {@code frontiers}.
+   */
+  private static Set<Binding<?>> nearestSingletons(Binding<?> binding,
+      Map<Binding<?>, Set<Binding<?>>> frontiers) {
+    if (binding.isSingleton()) {
+      return Collections.<Binding<?>>singleton(binding);
+    }
+    Set<Binding<?>> result = frontiers.get(binding);
+    if (result != null) {
+      return result;
+    }
+    result = new LinkedHashSet<Binding<?>>();
+    frontiers.put(binding, result); // Stops at cycles between non-singletons.
+    for (Binding<?> dependency : dependencies(binding)) {
+      result.addAll(nearestSingletons(dependency, frontiers));
+    }
+    return result;
+  }
+
+  private static Set<Binding<?>> dependencies(Binding<?> binding) {
+    Set<Binding<?>> dependencies = new LinkedHashSet<Binding<?>>();
+    binding.getDependencies(dependencies, dependencies);
+    return dependencies;
+  }
+
+  private void submit(final Node node) {
+    try {
+      executor.execute(newTask(node));
+    } catch (RuntimeException e) {
+      completion.fail(e); // Likely a RejectedExecutionException.
+    }
+  }
+
+  private Runnable newTask(final Node node) {
+    return new Runnable() {
+      @Override public void run() {
+        if (completion.isDone()) {
+          return; // Failed or cancelled.
+        }
+        try {
+          node.binding.get();
+        } catch (Throwable t) {
+          completion.fail(t);
+          return;
+        }
+        for (Node dependent : node.dependents) {
+          if (dependent.pending.decrementAndGet() == 0) {
+            submit(dependent);
+          }
+        }
+        if (remaining.decrementAndGet() == 0) {
+          completion.succeed();
+        }
+      }
+    };
+  }
+
+  private static final class Node {
+    final Binding<?> binding;
+    /** The singletons that must be constructed before this one. */
+    final Set<Binding<?>> needed = new LinkedHashSet<Binding<?>>();
+    final List<Node> dependents = new ArrayList<Node>();
+    final AtomicInteger pending = new AtomicInteger();
+
+    Node(Binding<?> binding) {
+      this.binding = binding;
+    }
+  }
+
+  /** A future completed by the warm-up tasks. */
+  private static final class Completion extends FutureTask<Void> {
+    Completion() {
+      super(DONE, null);
+    }
+
+    void succeed() {
+      set(null);
+    }
+
+    void fail(Throwable t) {
+      setException(t);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static dagger.internal.plugins.loading.ClassloadingPlugin.INJECT_ADAPTER_SUFFIX;
+import static dagger.internal.plugins.loading.ClassloadingPlugin.MODULE_ADAPTER_SUFFIX;
+import static dagger.internal.plugins.loading.ClassloadingPlugin.STATIC_INJECTION_SUFFIX;
+
+/**
+ * The last plugin of a strict graph's chain. It resolves the requests that the
+ * plugins before it couldn't with a fallback plugin, and records the generated
+ * class that was missing for each one.
+ *
+ * <p>Until {@link #check} is called, requests keep being resolved so that one
+ * check reports every missing class. After that, requests that reach this
+ * plugin fail immediately.
+ */
+public final class StrictPlugin implements Plugin {
+  private final Plugin fallback;
+  private final Set<String> missing = new LinkedHashSet<String>();
+  private boolean checked;
+
+  public StrictPlugin(Plugin fallback) {
+    if (fallback == null) throw new NullPointerException("fallback");
+    this.fallback = fallback;
+  }
+
+  @Override public Binding<?> getAtInjectBinding(
+      String key, String className, ClassLoader classLoader, boolean mustBeInjectable) {
+    Binding<?> result =
+        fallback.getAtInjectBinding(key, className, classLoader, mustBeInjectable);
+    if (result != null) {
+      // Types that can't be injected at all, like interfaces, are left to the linker to report.
+      recordMissing(className + INJECT_ADAPTER_SUFFIX);
+    }
+    return result;
+  }
+
+  @Override public <T> ModuleAdapter<T> getModuleAdapter(Class<? extends T> moduleClass, T module) {
+    recordMissing(moduleClass.getName() + MODULE_ADAPTER_SUFFIX);
+    return fallback.getModuleAdapter(moduleClass, module);
+  }
+
+  @Override public StaticInjection getStaticInjection(Class<?> injectedClass) {
+    recordMissing(injectedClass.getName() + STATIC_INJECTION_SUFFIX);
+    return fallback.getStaticInjection(injectedClass);
+  }
+
+  private synchronized void recordMissing(String generatedClassName) {
+    if (checked) {
+      throw new IllegalStateException("Strict mode: missing generated class " + generatedClassName
+          + ". Run dagger-compiler on its source.");
+    }
+    missing.add(generatedClassName);
+  }
+
+  /**
+   * Throws if any request has reached this plugin, listing the generated
+   * classes that were missing. Requests that reach this plugin afterwards
+   * fail immediately.
+   *
+   * @throws IllegalStateException if generated classes were missing.
+   */
+  public synchronized void check() {
+    checked = true;
+    if (missing.isEmpty()) {
+      return;
+    }
+    StringBuilder message = new StringBuilder()
+        .append("Strict mode: missing ").append(missing.size())
+        .append(" generated classes. Run dagger-compiler on their sources:");
+    for (String generatedClassName : missing) {
+      message.append("\n  ").append(generatedClassName);
+    }
+    missing.clear();
+    throw new IllegalStateException(message.toString());
+  }
+}
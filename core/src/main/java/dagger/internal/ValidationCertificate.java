@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Proof that the compiler validated a set of modules. When full graph
+ * analysis finds no problems in a complete module, it lists a digest of the
+ * module's names and binding keys in the {@link #INDEX} resource. A graph
+ * whose modules and bindings have a listed digest has no dependency cycles or
+ * unused bindings that {@link dagger.ObjectGraph#validate} could find. The
+ * digest doesn't cover the {@code @Inject} classes the bindings depend on,
+ * which may come from other jars, so validation still links the graph.
+ */
+public final class ValidationCertificate {
+  private static final Logger logger = Logger.getLogger(ValidationCertificate.class.getName());
+
+  /**
+   * A resource listing the digests of validated module sets, one per line.
+   * Each compilation that validates complete modules contributes one.
+   */
+  public static final String INDEX = "META-INF/dagger/validated-graphs";
+
+  /** Digests by class loader. */
+  private static final Map<ClassLoader, Set<String>> digestsByLoader
+      = new WeakHashMap<ClassLoader, Set<String>>();
+
+  private final ClassLoader loader;
+  private final Collection<String> moduleNames;
+  private final Collection<String> keys;
+
+  /**
+   * @param loader the class loader whose index resources list the digests.
+   * @param moduleNames the binary names of all of a graph's modules.
+   * @param keys the keys of the bindings installed by the modules.
+   */
+  public ValidationCertificate(ClassLoader loader, Collection<String> moduleNames,
+      Collection<String> keys) {
+    this.loader = loader;
+    this.moduleNames = moduleNames;
+    this.keys = keys;
+  }
+
+  /** Returns true if the compiler validated these modules and bindings. */
+  public boolean isIssued() {
+    if (loader == null) {
+      return false; // The bootstrap loader has no generated resources.
+    }
+    Set<String> digests;
+    synchronized (digestsByLoader) {
+      digests = digestsByLoader.get(loader);
+      if (digests == null) {
+        digests = load(loader);
+        digestsByLoader.put(loader, digests);
+      }
+    }
+    return !digests.isEmpty() && digests.contains(digest(moduleNames, keys));
+  }
+
+  /**
+   * Returns a digest of {@code moduleNames} and {@code keys} that doesn't
+   * depend on their order.
+   */
+  public static String digest(Collection<String> moduleNames, Collection<String> keys) {
+    MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance("SHA-1");
+      update(messageDigest, moduleNames);
+      update(messageDigest, keys);
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new AssertionError(e);
+    }
+    StringBuilder result = new StringBuilder();
+    for (byte b : messageDigest.digest()) {
+      result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return result.toString();
+  }
+
+  private static void update(MessageDigest messageDigest, Collection<String> strings)
+      throws UnsupportedEncodingException {
+    List<String> sorted = new ArrayList<String>(strings);
+    Collections.sort(sorted);
+    for (String string : sorted) {
+      messageDigest.update(string.getBytes("UTF-8"));
+      messageDigest.update((byte) '\n');
+    }
+    messageDigest.update((byte) '\n');
+  }
+
+  private static Set<String> load(ClassLoader loader) {
+    Set<String> digests = new HashSet<String>();
+    try {
+      Enumeration<URL> indexes = loader.getResources(INDEX);
+      while (indexes.hasMoreElements()) {
+        readIndex(indexes.nextElement(), digests);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to read " + INDEX, e);
+    }
+    return digests;
+  }
+
+  private static void readIndex(URL index, Set<String> digests) throws IOException {
+    InputStream in = index.openStream();
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+      for (String line; (line = reader.readLine()) != null;) {
+        line = line.trim();
+        if (line.length() != 0 && !line.startsWith("#")) {
+          digests.add(line);
+        }
+      }
+    } finally {
+      in.close();
+    }
+  }
+}
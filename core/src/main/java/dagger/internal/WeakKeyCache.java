@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches a value computed from a key that belongs to a class loader, like a
+ * class or the loader itself. Cached values are read without locking.
+ *
+ * <p>Keys are weakly referenced. Values of keys that belong to Dagger's class
+ * loader or one of its parents are strongly held, because those loaders live
+ * as long as the cache. Other values are weakly held, so a value that refers
+ * back to its key doesn't keep the class loader alive; they are created again
+ * if they were collected.
+ */
+public abstract class WeakKeyCache<K, V> {
+  private final ConcurrentMap<Object, Object> map = new ConcurrentHashMap<Object, Object>();
+  private final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+
+  /**
+   * Returns the value for {@code key}, creating it with {@link #create} if
+   * it isn't cached. Exceptions thrown by {@code create} are propagated and
+   * nothing is cached.
+   */
+  public final V get(K key) {
+    V cached = value(map.get(new LookupKey(key)));
+    if (cached != null) {
+      return cached;
+    }
+
+    V created = create(key);
+    if (created == null) {
+      throw new NullPointerException("create returned null for " + key);
+    }
+
+    removeCollectedKeys();
+    WeakKey<K> weakKey = new WeakKey<K>(key, queue);
+    Object value = isCacheSafe(classLoader(key)) ? created : new WeakValue<V>(created);
+    while (true) { // If another thread cached a value in the meantime, keep that one.
+      Object existing = map.putIfAbsent(weakKey, value);
+      if (existing == null) {
+        return created;
+      }
+      V existingValue = value(existing);
+      if (existingValue != null) {
+        return existingValue;
+      }
+      if (map.replace(weakKey, existing, value)) {
+        return created; // The existing value was collected.
+      }
+    }
+  }
+
+  /** Returns the cached value held by {@code value}, or null if it has none. */
+  @SuppressWarnings("unchecked") // Only values of type 'V' are put in the map.
+  private V value(Object value) {
+    return (value instanceof WeakValue) ? ((WeakValue<V>) value).get() : (V) value;
+  }
+
+  private void removeCollectedKeys() {
+    for (Reference<?> key; (key = queue.poll()) != null;) {
+      map.remove(key);
+    }
+  }
+
+  /**
+   * Returns true if {@code loader} is Dagger's class loader or one of its
+   * parents, so that holding its classes doesn't prevent unloading them.
+   */
+  static boolean isCacheSafe(ClassLoader loader) {
+    for (ClassLoader l = WeakKeyCache.class.getClassLoader(); ; l = l.getParent()) {
+      if (l == loader) {
+        return true;
+      }
+      if (l == null) {
+        return false;
+      }
+    }
+  }
+
+  /** Returns the value for {@code key}. Never returns null. */
+  protected abstract V create(K key);
+
+  /** Returns the class loader that {@code key} belongs to. */
+  protected abstract ClassLoader classLoader(K key);
+
+  /** A weakly held value. */
+  private static final class WeakValue<V> extends WeakReference<V> {
+    WeakValue(V value) {
+      super(value);
+    }
+  }
+
+  /**
+   * A weakly referenced key in the map. Once its referent is collected, the
+   * key is only equal to itself, so that it can be removed.
+   */
+  private static final class WeakKey<K> extends WeakReference<K> {
+    private final int hashCode;
+
+    WeakKey(K key, ReferenceQueue<K> queue) {
+      super(key, queue);
+      this.hashCode = System.identityHashCode(key);
+    }
+
+    @Override public boolean equals(Object o) {
+      if (o == this) {
+        return true;
+      }
+      Object key = get();
+      if (key == null) {
+        return false;
+      }
+      if (o instanceof LookupKey) {
+        return ((LookupKey) o).key == key;
+      }
+      return o instanceof WeakKey && ((WeakKey<?>) o).get() == key;
+    }
+
+    @Override public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  /** Looks up a key without allocating a weak reference for it. */
+  private static final class LookupKey {
+    private final Object key;
+
+    LookupKey(Object key) {
+      this.key = key;
+    }
+
+    @Override public boolean equals(Object o) {
+      return o instanceof WeakKey && ((WeakKey<?>) o).get() == key;
+    }
+
+    @Override public int hashCode() {
+      return System.identityHashCode(key);
+    }
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal.plugins.bytecode;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+
+import static dagger.internal.plugins.bytecode.ClassFileWriter.AALOAD;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.ACC_FINAL;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.ACC_PUBLIC;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.ACC_SUPER;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.ARETURN;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.ATHROW;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.CHECKCAST;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.DUP;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.INVOKESPECIAL;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.INVOKEVIRTUAL;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.NEW;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.PUTFIELD;
+import static dagger.internal.plugins.bytecode.ClassFileWriter.RETURN;
+
+/**
+ * Generates the bytecode of an {@link InjectAccessor}. The generated methods
+ * do what an {@code $InjectAdapter} written by the annotation processor does:
+ * <pre>   {@code
+ *
+ *   public Object newInstance(Binding[] parameters) {
+ *     return new Foo((Bar) parameters[0].get(), ((Integer) parameters[1].get()).intValue());
+ *   }
+ *
+ *   public void injectFields(Object target, Binding[] fields) {
+ *     Foo foo = (Foo) target;
+ *     foo.baz = (Baz) fields[0].get();
+ *   }
+ * }</pre>
+ */
+final class AccessorGenerator {
+  private static final String ACCESSOR = "dagger/internal/plugins/bytecode/InjectAccessor";
+  private static final String BINDING = "dagger/internal/Binding";
+  private static final String UNSUPPORTED = "java/lang/UnsupportedOperationException";
+  private static final Map<Class<?>, Class<?>> BOXES = new HashMap<Class<?>, Class<?>>();
+  static {
+    BOXES.put(boolean.class, Boolean.class);
+    BOXES.put(byte.class, Byte.class);
+    BOXES.put(short.class, Short.class);
+    BOXES.put(char.class, Character.class);
+    BOXES.put(int.class, Integer.class);
+    BOXES.put(long.class, Long.class);
+    BOXES.put(float.class, Float.class);
+    BOXES.put(double.class, Double.class);
+  }
+
+  private AccessorGenerator() {
+  }
+
+  /**
+   * Returns the class file of an accessor named {@code name}, which must be
+   * in the package of {@code type}.
+   *
+   * @param constructor the constructor to call, or null if {@code
+   *     newInstance} should throw.
+   * @throws IllegalArgumentException if the generated code couldn't reach
+   *     the constructor or one of the fields.
+   */
+  static byte[] generate(String name, Class<?> type, Constructor<?> constructor, Field[] fields) {
+    checkAccessible(type, constructor, fields);
+    ClassFileWriter writer =
+        new ClassFileWriter(ACC_PUBLIC | ACC_FINAL | ACC_SUPER, internalName(name), ACCESSOR);
+
+    writer.method(ACC_PUBLIC, "<init>", "()V")
+        .aload(0)
+        .op(INVOKESPECIAL, writer.methodConstant(ACCESSOR, "<init>", "()V"))
+        .op(RETURN)
+        .end(1, 1);
+
+    ClassFileWriter.Code newInstance = writer.method(ACC_PUBLIC, "newInstance",
+        "([L" + BINDING + ";)Ljava/lang/Object;");
+    if (constructor != null) {
+      String typeName = internalName(type.getName());
+      newInstance.op(NEW, writer.classConstant(typeName)).op(DUP);
+      StringBuilder descriptor = new StringBuilder().append('(');
+      int slots = 0;
+      Class<?>[] parameterTypes = constructor.getParameterTypes();
+      for (int i = 0; i < parameterTypes.length; i++) {
+        newInstance.aload(1).push(i).op(AALOAD);
+        slots += get(writer, newInstance, parameterTypes[i]);
+        descriptor.append(descriptor(parameterTypes[i]));
+      }
+      descriptor.append(")V");
+      int init = writer.methodConstant(typeName, "<init>", descriptor.toString());
+      newInstance.op(INVOKESPECIAL, init)
+          .op(ARETURN)
+          .end(2 + slots + 2, 2);
+    } else {
+      newInstance.op(NEW, writer.classConstant(UNSUPPORTED))
+          .op(DUP)
+          .op(INVOKESPECIAL, writer.methodConstant(UNSUPPORTED, "<init>", "()V"))
+          .op(ATHROW)
+          .end(2, 2);
+    }
+
+    ClassFileWriter.Code injectFields = writer.method(ACC_PUBLIC, "injectFields",
+        "(Ljava/lang/Object;[L" + BINDING + ";)V");
+    injectFields.aload(1).op(CHECKCAST, writer.classConstant(internalName(type.getName())))
+        .astore(3);
+    for (int i = 0; i < fields.length; i++) {
+      Field field = fields[i];
+      injectFields.aload(3).aload(2).push(i).op(AALOAD);
+      get(writer, injectFields, field.getType());
+      String owner = internalName(field.getDeclaringClass().getName());
+      injectFields.op(PUTFIELD,
+          writer.fieldConstant(owner, field.getName(), descriptor(field.getType())));
+    }
+    injectFields.op(RETURN).end(4, 4);
+
+    return writer.toByteArray();
+  }
+
+  /**
+   * Appends code that replaces the binding on top of the stack with the value
+   * it provides, converted to {@code type}. Returns the number of stack slots
+   * the value takes.
+   */
+  private static int get(ClassFileWriter writer, ClassFileWriter.Code code, Class<?> type) {
+    code.op(INVOKEVIRTUAL, writer.methodConstant(BINDING, "get", "()Ljava/lang/Object;"));
+    if (type.isPrimitive()) {
+      String box = internalName(BOXES.get(type).getName());
+      code.op(CHECKCAST, writer.classConstant(box));
+      code.op(INVOKEVIRTUAL,
+          writer.methodConstant(box, type.getName() + "Value", "()" + descriptor(type)));
+      return type == long.class || type == double.class ? 2 : 1;
+    }
+    if (type != Object.class) {
+      code.op(CHECKCAST, writer.classConstant(
+          type.isArray() ? descriptor(type) : internalName(type.getName())));
+    }
+    return 1;
+  }
+
+  private static void checkAccessible(Class<?> type, Constructor<?> constructor, Field[] fields) {
+    if (constructor != null) {
+      if (Modifier.isPrivate(constructor.getModifiers())) {
+        throw new IllegalArgumentException("Can't call private constructor: " + constructor);
+      }
+      for (Class<?> parameterType : constructor.getParameterTypes()) {
+        checkVisible(parameterType, type);
+      }
+      for (Class<?> exceptionType : constructor.getExceptionTypes()) {
+        if (!RuntimeException.class.isAssignableFrom(exceptionType)
+            && !Error.class.isAssignableFrom(exceptionType)) {
+          // Reflection wraps checked exceptions; generated code would leak them.
+          throw new IllegalArgumentException("Can't call constructor throwing checked exception: "
+              + constructor);
+        }
+      }
+    }
+    for (Field field : fields) {
+      int modifiers = field.getModifiers();
+      if (Modifier.isPrivate(modifiers) || Modifier.isFinal(modifiers)) {
+        throw new IllegalArgumentException("Can't set private or final field: " + field);
+      }
+      Class<?> owner = field.getDeclaringClass();
+      checkVisible(owner, type);
+      if (!Modifier.isPublic(modifiers) && !samePackage(owner, type)) {
+        throw new IllegalArgumentException("Can't set field from another package: " + field);
+      }
+      checkVisible(field.getType(), type);
+    }
+  }
+
+  /** Throws unless code in the package of {@code from} can name {@code type}. */
+  private static void checkVisible(Class<?> type, Class<?> from) {
+    while (type.isArray()) {
+      type = type.getComponentType();
+    }
+    if (type.isPrimitive() || samePackage(type, from)) {
+      return;
+    }
+    for (Class<?> c = type; c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers())) {
+        throw new IllegalArgumentException(
+            type.getName() + " isn't visible from " + from.getName());
+      }
+    }
+  }
+
+  private static boolean samePackage(Class<?> a, Class<?> b) {
+    return a.getClassLoader() == b.getClassLoader() && packageName(a).equals(packageName(b));
+  }
+
+  private static String packageName(Class<?> c) {
+    String name = c.getName();
+    int lastDot = name.lastIndexOf('.');
+    return lastDot != -1 ? name.substring(0, lastDot) : "";
+  }
+
+  private static String internalName(String className) {
+    return className.replace('.', '/');
+  }
+
+  private static String descriptor(Class<?> type) {
+    if (type.isArray()) {
+      return internalName(type.getName()); // Like "[Ljava/lang/String;".
+    } else if (type == boolean.class) {
+      return "Z";
+    } else if (type == byte.class) {
+      return "B";
+    } else if (type == short.class) {
+      return "S";
+    } else if (type == char.class) {
+      return "C";
+    } else if (type == int.class) {
+      return "I";
+    } else if (type == long.class) {
+      return "J";
+    } else if (type == float.class) {
+      return "F";
+    } else if (type == double.class) {
+      return "D";
+    } else {
+      return "L" + internalName(type.getName()) + ";";
+    }
+  }
+}
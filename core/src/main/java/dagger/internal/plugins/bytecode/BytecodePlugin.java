@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal.plugins.bytecode;
+
+import dagger.internal.Binding;
+import dagger.internal.ModuleAdapter;
+import dagger.internal.Plugin;
+import dagger.internal.StaticInjection;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.ProtectionDomain;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Creates bindings for classes without a generated {@code $InjectAdapter} by
+ * generating an {@link InjectAccessor} for them at runtime. The accessor is
+ * defined in the injected class's loader and package, so after a one-time
+ * generation cost its instances are provided without reflection.
+ *
+ * <p>On Java 9 and later accessors are defined with a private {@code
+ * MethodHandles.Lookup} of the injected class, which needs its package to be
+ * open to Dagger; earlier runtimes use {@code ClassLoader.defineClass}.
+ * Module adapters and static injections aren't generated; this plugin returns
+ * null for them so that the next plugin handles them. It also returns null for
+ * classes it can't inject and when the runtime can't define classes, as on
+ * Android.
+ *
+ * <p>This plugin isn't one of the defaults of {@link dagger.ObjectGraph#create};
+ * install it with {@link dagger.ObjectGraph.Builder#plugins}.
+ */
+public final class BytecodePlugin implements Plugin {
+  public static final String INJECT_ACCESSOR_SUFFIX = "$$InjectAccessor";
+
+  /** {@code MethodHandles.privateLookupIn}, or null before Java 9. */
+  private static final Method PRIVATE_LOOKUP_IN;
+  /** {@code MethodHandles.Lookup.defineClass}, or null before Java 9. */
+  private static final Method LOOKUP_DEFINE_CLASS;
+  /** A lookup of this class, from which lookups of injected classes are made. */
+  private static final Object LOOKUP;
+  static {
+    Method privateLookupIn = null;
+    Method lookupDefineClass = null;
+    Object lookup = null;
+    try {
+      Class<?> methodHandles = Class.forName("java.lang.invoke.MethodHandles");
+      Class<?> lookupClass = Class.forName("java.lang.invoke.MethodHandles$Lookup");
+      privateLookupIn = methodHandles.getMethod("privateLookupIn", Class.class, lookupClass);
+      lookupDefineClass = lookupClass.getMethod("defineClass", byte[].class);
+      lookup = methodHandles.getMethod("lookup").invoke(null);
+    } catch (Exception e) {
+      privateLookupIn = null; // Before Java 9.
+      lookupDefineClass = null;
+      lookup = null;
+    }
+    PRIVATE_LOOKUP_IN = privateLookupIn;
+    LOOKUP_DEFINE_CLASS = lookupDefineClass;
+    LOOKUP = lookup;
+  }
+
+  /** {@code ClassLoader.defineClass}, used only where lookups can't define classes. */
+  private static final Method DEFINE_CLASS = (LOOKUP == null) ? findDefineClass() : null;
+  private static volatile boolean supported = LOOKUP != null || DEFINE_CLASS != null;
+
+  /**
+   * Accessors by injected class. Neither keys nor values are strongly held,
+   * so generated accessors don't keep their class loaders alive.
+   */
+  private static final Map<Class<?>, WeakReference<InjectAccessor>> accessors
+      = new WeakHashMap<Class<?>, WeakReference<InjectAccessor>>();
+
+  private static final AtomicInteger generatedClassCount = new AtomicInteger();
+  private static final AtomicLong generationNanos = new AtomicLong();
+
+  /** Returns true if this runtime can define generated classes. */
+  public static boolean isSupported() {
+    return supported;
+  }
+
+  /** Returns the number of accessor classes generated by this process. */
+  public static int getGeneratedClassCount() {
+    return generatedClassCount.get();
+  }
+
+  /**
+   * Returns the total time this process spent generating and defining
+   * accessor classes, in nanoseconds.
+   */
+  public static long getGenerationNanos() {
+    return generationNanos.get();
+  }
+
+  @Override public Binding<?> getAtInjectBinding(
+      String key, String className, ClassLoader classLoader, boolean mustBeInjectable) {
+    if (!supported) {
+      return null;
+    }
+    Class<?> c;
+    try {
+      c = Class.forName(className, false, classLoader);
+    } catch (ClassNotFoundException e) {
+      return null;
+    }
+
+    if (c.isInterface()) {
+      return null;
+    }
+
+    return GeneratedAtInjectBinding.create(c, mustBeInjectable);
+  }
+
+  @Override public <T> ModuleAdapter<T> getModuleAdapter(Class<? extends T> moduleClass, T module) {
+    return null; // Module adapters aren't generated at runtime.
+  }
+
+  @Override public StaticInjection getStaticInjection(Class<?> injectedClass) {
+    return null; // Static injections aren't generated at runtime.
+  }
+
+  /**
+   * Returns an accessor for {@code type}, generating its class if it hasn't
+   * been defined yet.
+   */
+  static InjectAccessor getAccessor(Class<?> type, Constructor<?> constructor, Field[] fields) {
+    synchronized (accessors) {
+      WeakReference<InjectAccessor> reference = accessors.get(type);
+      InjectAccessor accessor = reference != null ? reference.get() : null;
+      if (accessor == null) {
+        accessor = newAccessor(type, constructor, fields);
+        accessors.put(type, new WeakReference<InjectAccessor>(accessor));
+      }
+      return accessor;
+    }
+  }
+
+  private static InjectAccessor newAccessor(Class<?> type, Constructor<?> constructor,
+      Field[] fields) {
+    String name = type.getName() + INJECT_ACCESSOR_SUFFIX;
+    ClassLoader loader = type.getClassLoader();
+    if (loader == null) {
+      throw new IllegalArgumentException("Can't define classes for " + type.getName()
+          + " in the bootstrap class loader.");
+    }
+
+    Class<?> accessorClass;
+    try {
+      accessorClass = Class.forName(name, false, loader); // Generated before it was collected.
+    } catch (ClassNotFoundException e) {
+      accessorClass = define(loader, name, type, constructor, fields);
+    }
+
+    try {
+      return (InjectAccessor) accessorClass.getConstructor().newInstance();
+    } catch (LinkageError e) {
+      throw new RuntimeException("Failed to link " + name, e);
+    } catch (ClassCastException e) {
+      throw new RuntimeException(name + " doesn't extend " + InjectAccessor.class.getName(), e);
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to construct " + name, e);
+    }
+  }
+
+  private static Class<?> define(ClassLoader loader, String name, Class<?> type,
+      Constructor<?> constructor, Field[] fields) {
+    long start = System.nanoTime();
+    byte[] classFile = AccessorGenerator.generate(name, type, constructor, fields);
+    Class<?> result;
+    try {
+      if (LOOKUP != null) {
+        Object lookup = PRIVATE_LOOKUP_IN.invoke(null, type, LOOKUP);
+        result = (Class<?>) LOOKUP_DEFINE_CLASS.invoke(lookup, (Object) classFile);
+      } else {
+        result = (Class<?>) DEFINE_CLASS.invoke(
+            loader, name, classFile, 0, classFile.length, type.getProtectionDomain());
+      }
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof UnsupportedOperationException) {
+        supported = false; // Like Android, which runs dex rather than class files.
+      }
+      // Includes the IllegalAccessException of a package that isn't open to
+      // Dagger, which only leaves that class to reflection.
+      throw new RuntimeException("Failed to define " + name, e.getCause());
+    } catch (IllegalAccessException e) {
+      supported = false;
+      throw new RuntimeException("Failed to define " + name, e);
+    }
+    generationNanos.addAndGet(System.nanoTime() - start);
+    generatedClassCount.incrementAndGet();
+    return result;
+  }
+
+  private static Method findDefineClass() {
+    try {
+      Method defineClass = ClassLoader.class.getDeclaredMethod("defineClass",
+          String.class, byte[].class, int.class, int.class, ProtectionDomain.class);
+      defineClass.setAccessible(true);
+      return defineClass;
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (RuntimeException e) {
+      return null; // A security manager or module system denied access.
+    }
+  }
+}
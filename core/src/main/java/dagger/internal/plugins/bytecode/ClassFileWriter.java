@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal.plugins.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Writes a class file with no fields and methods without branches or
+ * exception handlers. Such methods need no stack map frames, so the class is
+ * written in the Java 5 format that every supported VM verifies.
+ */
+final class ClassFileWriter {
+  static final int ACC_PUBLIC = 0x0001;
+  static final int ACC_FINAL = 0x0010;
+  static final int ACC_SUPER = 0x0020;
+
+  static final int ICONST_0 = 0x03;
+  static final int BIPUSH = 0x10;
+  static final int SIPUSH = 0x11;
+  static final int ALOAD_0 = 0x2a;
+  static final int AALOAD = 0x32;
+  static final int ASTORE_0 = 0x4b;
+  static final int DUP = 0x59;
+  static final int ARETURN = 0xb0;
+  static final int RETURN = 0xb1;
+  static final int PUTFIELD = 0xb5;
+  static final int INVOKEVIRTUAL = 0xb6;
+  static final int INVOKESPECIAL = 0xb7;
+  static final int NEW = 0xbb;
+  static final int ATHROW = 0xbf;
+  static final int CHECKCAST = 0xc0;
+
+  private static final int MAGIC = 0xcafebabe;
+  private static final int MAJOR_VERSION = 49;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_FIELDREF = 9;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+  private final Map<String, Integer> constants = new HashMap<String, Integer>();
+  private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+  private final DataOutputStream pool = new DataOutputStream(poolBytes);
+  private int poolCount = 1;
+
+  private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+  private final DataOutputStream methods = new DataOutputStream(methodBytes);
+  private int methodCount;
+
+  private final int access;
+  private final int thisClass;
+  private final int superClass;
+  private final int codeName;
+
+  /**
+   * @param name the internal name of the class, like {@code
+   *     com/example/Foo$Bar}.
+   */
+  ClassFileWriter(int access, String name, String superName) {
+    this.access = access;
+    this.thisClass = classConstant(name);
+    this.superClass = classConstant(superName);
+    this.codeName = utf8Constant("Code");
+  }
+
+  /** Starts a method. Call {@link Code#end} once its code is complete. */
+  Code method(int access, String name, String descriptor) {
+    return new Code(access, utf8Constant(name), utf8Constant(descriptor));
+  }
+
+  byte[] toByteArray() {
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(MAGIC);
+      out.writeShort(0);
+      out.writeShort(MAJOR_VERSION);
+      out.writeShort(poolCount);
+      poolBytes.writeTo(out);
+      out.writeShort(access);
+      out.writeShort(thisClass);
+      out.writeShort(superClass);
+      out.writeShort(0); // Interfaces.
+      out.writeShort(0); // Fields.
+      out.writeShort(methodCount);
+      methodBytes.writeTo(out);
+      out.writeShort(0); // Attributes.
+      return bytes.toByteArray();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  int classConstant(String internalName) {
+    int name = utf8Constant(internalName);
+    return constant("Class " + internalName, CONSTANT_CLASS, name, -1);
+  }
+
+  int fieldConstant(String owner, String name, String descriptor) {
+    int ownerClass = classConstant(owner);
+    int nameAndType = nameAndTypeConstant(name, descriptor);
+    return constant("Field " + owner + "." + name + ":" + descriptor, CONSTANT_FIELDREF,
+        ownerClass, nameAndType);
+  }
+
+  int methodConstant(String owner, String name, String descriptor) {
+    int ownerClass = classConstant(owner);
+    int nameAndType = nameAndTypeConstant(name, descriptor);
+    return constant("Method " + owner + "." + name + descriptor, CONSTANT_METHODREF,
+        ownerClass, nameAndType);
+  }
+
+  private int nameAndTypeConstant(String name, String descriptor) {
+    int nameIndex = utf8Constant(name);
+    int descriptorIndex = utf8Constant(descriptor);
+    return constant("NameAndType " + name + ":" + descriptor, CONSTANT_NAME_AND_TYPE,
+        nameIndex, descriptorIndex);
+  }
+
+  private int utf8Constant(String value) {
+    String key = "Utf8 " + value;
+    Integer index = constants.get(key);
+    if (index != null) {
+      return index;
+    }
+    try {
+      pool.writeByte(CONSTANT_UTF8);
+      pool.writeUTF(value);
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+    return add(key);
+  }
+
+  /** Returns the index of a constant made of one or two constant indices. */
+  private int constant(String key, int tag, int first, int second) {
+    Integer index = constants.get(key);
+    if (index != null) {
+      return index;
+    }
+    try {
+      pool.writeByte(tag);
+      pool.writeShort(first);
+      if (second != -1) {
+        pool.writeShort(second);
+      }
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+    return add(key);
+  }
+
+  private int add(String key) {
+    int index = poolCount++;
+    if (index > 0xffff) {
+      throw new IllegalStateException("Too many constants");
+    }
+    constants.put(key, index);
+    return index;
+  }
+
+  /** The instructions of a method. */
+  final class Code {
+    private final int access;
+    private final int name;
+    private final int descriptor;
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+    Code(int access, int name, int descriptor) {
+      this.access = access;
+      this.name = name;
+      this.descriptor = descriptor;
+    }
+
+    /** Appends an instruction without operands. */
+    Code op(int opcode) {
+      code.write(opcode);
+      return this;
+    }
+
+    /** Appends an instruction with a two byte operand, like a constant pool index. */
+    Code op(int opcode, int constant) {
+      code.write(opcode);
+      code.write(constant >>> 8);
+      code.write(constant);
+      return this;
+    }
+
+    Code aload(int local) {
+      return op(ALOAD_0 + checkShortLocal(local));
+    }
+
+    Code astore(int local) {
+      return op(ASTORE_0 + checkShortLocal(local));
+    }
+
+    /** Pushes the int {@code value}. */
+    Code push(int value) {
+      if (value >= -1 && value <= 5) {
+        return op(ICONST_0 + value);
+      } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+        code.write(BIPUSH);
+        code.write(value);
+        return this;
+      } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+        return op(SIPUSH, value);
+      }
+      throw new IllegalArgumentException("Unsupported constant " + value);
+    }
+
+    /** Adds the method to the class. */
+    void end(int maxStack, int maxLocals) {
+      try {
+        methods.writeShort(access);
+        methods.writeShort(name);
+        methods.writeShort(descriptor);
+        methods.writeShort(1); // Attributes.
+        methods.writeShort(codeName);
+        methods.writeInt(12 + code.size());
+        methods.writeShort(maxStack);
+        methods.writeShort(maxLocals);
+        methods.writeInt(code.size());
+        code.writeTo(methods);
+        methods.writeShort(0); // Exception handlers.
+        methods.writeShort(0); // Attributes.
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+      methodCount++;
+    }
+
+    private int checkShortLocal(int local) {
+      if (local < 0 || local > 3) {
+        throw new IllegalArgumentException("Unsupported local " + local);
+      }
+      return local;
+    }
+  }
+}
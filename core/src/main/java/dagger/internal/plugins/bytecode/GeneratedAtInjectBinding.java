@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal.plugins.bytecode;
+
+import dagger.internal.Binding;
+import dagger.internal.ClassCache;
+import dagger.internal.Key;
+import dagger.internal.Keys;
+import dagger.internal.Linker;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Injects the {@code @Inject}-annotated fields and constructors of a class
+ * with an {@link InjectAccessor} generated at runtime. Classes that can't be
+ * injected this way are left to {@code ReflectivePlugin}, which reports any
+ * errors.
+ */
+final class GeneratedAtInjectBinding<T> extends Binding<T> {
+  private final InjectAccessor accessor;
+  private final Field[] fields;
+  private final Constructor<T> constructor;
+  private final Class<?> supertype;
+  private final Key[] keys;
+  private final Binding<?>[] fieldBindings;
+  private final Binding<?>[] parameterBindings;
+  private Binding<? super T> supertypeBinding;
+
+  /**
+   * @param keys keys for the fields, constructor parameters and supertype in
+   *     that order.
+   * @param constructor the injectable constructor, or null if this binding
+   *     supports members injection only.
+   * @param supertype the injectable supertype, or null if the supertype is a
+   *     platform type.
+   */
+  private GeneratedAtInjectBinding(String provideKey, String membersKey, boolean singleton,
+      Class<?> type, InjectAccessor accessor, Field[] fields, Constructor<T> constructor,
+      int parameterCount, Class<?> supertype, Key[] keys) {
+    super(provideKey, membersKey, singleton, type);
+    this.accessor = accessor;
+    this.fields = fields;
+    this.constructor = constructor;
+    this.supertype = supertype;
+    this.keys = keys;
+    this.parameterBindings = new Binding<?>[parameterCount];
+    this.fieldBindings = new Binding<?>[fields.length];
+  }
+
+  @SuppressWarnings("unchecked") // We're careful to make keys and bindings match up.
+  @Override public void attach(Linker linker) {
+    int k = 0;
+    for (int i = 0; i < fields.length; i++) {
+      if (fieldBindings[i] == null) {
+        fieldBindings[i] = linker.requestBinding(keys[k], fields[i]);
+      }
+      k++;
+    }
+    if (constructor != null) {
+      for (int i = 0; i < parameterBindings.length; i++) {
+        if (parameterBindings[i] == null) {
+          parameterBindings[i] = linker.requestBinding(keys[k], constructor);
+        }
+        k++;
+      }
+    }
+    if (supertype != null && supertypeBinding == null) {
+      supertypeBinding =
+          (Binding<? super T>) linker.requestBinding(keys[k], membersKey, false, true);
+    }
+  }
+
+  @SuppressWarnings("unchecked") // The accessor constructs instances of 'T'.
+  @Override public T get() {
+    if (constructor == null) {
+      throw new UnsupportedOperationException();
+    }
+    T result = (T) accessor.newInstance(parameterBindings);
+    injectMembers(result);
+    return result;
+  }
+
+  @Override public void injectMembers(T t) {
+    accessor.injectFields(t, fieldBindings);
+    if (supertypeBinding != null) {
+      supertypeBinding.injectMembers(t);
+    }
+  }
+
+  @Override public void getDependencies(Set<Binding<?>> get, Set<Binding<?>> injectMembers) {
+    Collections.addAll(get, parameterBindings);
+    Collections.addAll(injectMembers, fieldBindings);
+    if (supertypeBinding != null) {
+      injectMembers.add(supertypeBinding);
+    }
+  }
+
+  @Override public String toString() {
+    return provideKey != null ? provideKey : membersKey;
+  }
+
+  /**
+   * Returns a binding for {@code type}, or null if it isn't injectable or an
+   * accessor couldn't be generated for it. Injectable classes follow the same
+   * rules as with reflection.
+   */
+  @SuppressWarnings("unchecked") // The plan's constructor is a constructor of 'T'.
+  static <T> Binding<T> create(Class<T> type, boolean mustBeInjectable) {
+    Plan plan = PLANS.get(type);
+    if (plan.rejection != null) {
+      return null;
+    }
+    if (!plan.hasInjectConstructor && plan.fields.length == 0 && mustBeInjectable) {
+      return null; // No injectable members.
+    }
+    if (plan.constructor == null && plan.singleton) {
+      return null; // No injectable constructor on a @Singleton.
+    }
+    return new GeneratedAtInjectBinding<T>(plan.provideKey, plan.membersKey, plan.singleton, type,
+        plan.accessor, plan.fields, (Constructor<T>) plan.constructor, plan.parameterCount,
+        plan.supertype, plan.keys);
+  }
+
+  /**
+   * Plans by class. Classes that can't be injected with an accessor are
+   * cached too, so they're only scanned once before falling back to
+   * reflection.
+   */
+  private static final ClassCache<Plan> PLANS = new ClassCache<Plan>() {
+    @Override protected Plan create(Class<?> type) {
+      try {
+        return new Plan(type);
+      } catch (RuntimeException e) {
+        return new Plan(e.getMessage());
+      }
+    }
+  };
+
+  /**
+   * The injectable members of a class, their keys and the accessor that
+   * injects them, shared by every binding for the class.
+   */
+  private static final class Plan {
+    /** Why this class can't be injected with an accessor, or null if it can. */
+    final String rejection;
+    final boolean singleton;
+    /** True if the constructor is annotated rather than a default constructor. */
+    final boolean hasInjectConstructor;
+    final Field[] fields;
+    final Constructor<?> constructor;
+    final int parameterCount;
+    final Class<?> supertype;
+    final String provideKey;
+    final String membersKey;
+    final Key[] keys;
+    final InjectAccessor accessor;
+
+    Plan(String rejection) {
+      this.rejection = rejection != null ? rejection : "Rejected";
+      this.singleton = false;
+      this.hasInjectConstructor = false;
+      this.fields = null;
+      this.constructor = null;
+      this.parameterCount = 0;
+      this.supertype = null;
+      this.provideKey = null;
+      this.membersKey = null;
+      this.keys = null;
+      this.accessor = null;
+    }
+
+    Plan(Class<?> type) {
+      rejection = null;
+      singleton = type.isAnnotationPresent(Singleton.class);
+      List<Key> keys = new ArrayList<Key>();
+
+      List<Field> injectedFields = new ArrayList<Field>();
+      for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (!field.isAnnotationPresent(Inject.class) || Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          injectedFields.add(field);
+          keys.add(Key.get(Keys.get(field.getGenericType(), field.getAnnotations(), field)));
+        }
+      }
+      fields = injectedFields.toArray(new Field[injectedFields.size()]);
+
+      Constructor<?> injectedConstructor = null;
+      for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+        if (!constructor.isAnnotationPresent(Inject.class)) {
+          continue;
+        }
+        if (injectedConstructor != null) {
+          throw new IllegalArgumentException(
+              "Too many injectable constructors on " + type.getName());
+        }
+        injectedConstructor = constructor;
+      }
+      hasInjectConstructor = injectedConstructor != null;
+      if (injectedConstructor == null) {
+        try {
+          injectedConstructor = type.getDeclaredConstructor();
+        } catch (NoSuchMethodException ignored) {
+        }
+      }
+      constructor = injectedConstructor;
+
+      if (constructor != null) {
+        if ((constructor.getModifiers() & Modifier.PRIVATE) != 0) {
+          throw new IllegalStateException("Can't inject private constructor: " + constructor);
+        }
+        provideKey = Keys.get(type);
+        Type[] types = constructor.getGenericParameterTypes();
+        parameterCount = types.length;
+        if (parameterCount != 0) {
+          Annotation[][] annotations = constructor.getParameterAnnotations();
+          for (int p = 0; p < types.length; p++) {
+            keys.add(Key.get(Keys.get(types[p], annotations[p], constructor)));
+          }
+        }
+      } else {
+        provideKey = null;
+        parameterCount = 0;
+      }
+
+      Class<?> supertype = type.getSuperclass();
+      if (supertype != null) {
+        if (Keys.isPlatformType(supertype.getName())) {
+          supertype = null;
+        } else {
+          keys.add(Key.get(Keys.getMembersKey(supertype)));
+        }
+      }
+      this.supertype = supertype;
+
+      membersKey = Keys.getMembersKey(type);
+      this.keys = keys.toArray(new Key[keys.size()]);
+      Constructor<?> instantiable = Modifier.isAbstract(type.getModifiers()) ? null : constructor;
+      accessor = BytecodePlugin.getAccessor(type, instantiable, fields);
+    }
+  }
+}
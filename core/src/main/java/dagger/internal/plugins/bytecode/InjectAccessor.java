@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal.plugins.bytecode;
+
+import dagger.internal.Binding;
+
+/**
+ * Calls the injectable constructor and sets the injectable fields of one
+ * class without reflection. Subclasses are generated at runtime and defined
+ * in the injected class's package so they can reach its non-public members.
+ */
+public abstract class InjectAccessor {
+  protected InjectAccessor() {
+  }
+
+  /**
+   * Returns a new instance constructed with values from {@code parameters},
+   * one binding per constructor parameter. Doesn't inject fields.
+   */
+  public abstract Object newInstance(Binding<?>[] parameters);
+
+  /**
+   * Sets the injectable fields of {@code target} to values from {@code
+   * fields}, one binding per field.
+   */
+  public abstract void injectFields(Object target, Binding<?>[] fields);
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal.plugins.loading;
+
+import dagger.internal.WeakKeyCache;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The {@link AdapterRegistry registries} visible to a class loader, indexed
+ * by the names of the classes they create, and the names of the classes
+ * that the loader doesn't have.
+ */
+final class AdapterRegistries {
+  private static final Logger logger = Logger.getLogger(ClassloadingPlugin.class.getName());
+
+  /** The registries of the bootstrap loader, which has no generated classes. */
+  private static final AdapterRegistries BOOTSTRAP =
+      new AdapterRegistries(Collections.<String, Entry>emptyMap());
+
+  /**
+   * Registries by class loader. They are read without locking, and the
+   * registries of loaders other than Dagger's don't keep those loaders alive.
+   */
+  private static final WeakKeyCache<ClassLoader, AdapterRegistries> byLoader
+      = new WeakKeyCache<ClassLoader, AdapterRegistries>() {
+    @Override protected AdapterRegistries create(ClassLoader loader) {
+      return load(loader);
+    }
+    @Override protected ClassLoader classLoader(ClassLoader loader) {
+      return loader;
+    }
+  };
+
+  private final Map<String, Entry> entries;
+  private final Set<String> missingClasses =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private AdapterRegistries(Map<String, Entry> entries) {
+    this.entries = entries;
+  }
+
+  /** Returns the registries listed by the index resources visible to {@code loader}. */
+  static AdapterRegistries forLoader(ClassLoader loader) {
+    return (loader != null) ? byLoader.get(loader) : BOOTSTRAP;
+  }
+
+  /** Returns the entry for the generated class {@code name}, or null if no registry has it. */
+  Entry get(String name) {
+    return entries.get(name);
+  }
+
+  /** Returns true if {@link #addMissingClass} was called with {@code className}. */
+  boolean isMissingClass(String className) {
+    return missingClasses.contains(className);
+  }
+
+  /** Remembers that this loader doesn't have {@code className}. */
+  void addMissingClass(String className) {
+    missingClasses.add(className);
+  }
+
+  private static AdapterRegistries load(ClassLoader loader) {
+    Set<String> registryNames = new LinkedHashSet<String>();
+    try {
+      Enumeration<URL> indexes = loader.getResources(ClassloadingPlugin.REGISTRY_INDEX);
+      while (indexes.hasMoreElements()) {
+        readIndex(indexes.nextElement(), registryNames);
+      }
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "Failed to read " + ClassloadingPlugin.REGISTRY_INDEX, e);
+    }
+    if (registryNames.isEmpty()) {
+      return new AdapterRegistries(Collections.<String, Entry>emptyMap());
+    }
+
+    Map<String, Entry> entries = new HashMap<String, Entry>();
+    for (String registryName : registryNames) {
+      AdapterRegistry registry;
+      try {
+        registry = (AdapterRegistry) Class.forName(registryName, true, loader).newInstance();
+      } catch (Exception e) {
+        // Adapters missing from the registries are still found by name.
+        logger.log(Level.WARNING, "Failed to load adapter registry " + registryName, e);
+        continue;
+      }
+      String[] classNames = registry.getClassNames();
+      for (int i = 0; i < classNames.length; i++) {
+        if (!entries.containsKey(classNames[i])) {
+          entries.put(classNames[i], new Entry(registry, i));
+        }
+      }
+    }
+    return new AdapterRegistries(entries);
+  }
+
+  private static void readIndex(URL index, Set<String> registryNames) throws IOException {
+    InputStream in = index.openStream();
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+      for (String line; (line = reader.readLine()) != null;) {
+        line = line.trim();
+        if (line.length() != 0 && !line.startsWith("#")) {
+          registryNames.add(line);
+        }
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /** A generated class and the registry that creates it. */
+  static final class Entry {
+    private final AdapterRegistry registry;
+    private final int index;
+
+    Entry(AdapterRegistry registry, int index) {
+      this.registry = registry;
+      this.index = index;
+    }
+
+    Object newInstance() {
+      return registry.newInstance(index);
+    }
+  }
+}
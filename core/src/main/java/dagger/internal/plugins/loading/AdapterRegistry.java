@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal.plugins.loading;
+
+/**
+ * Creates the classes generated by one compilation without reflection.
+ * Implementations are generated alongside the adapters they create and
+ * listed in the {@link ClassloadingPlugin#REGISTRY_INDEX} resource.
+ */
+public interface AdapterRegistry {
+  /**
+   * Returns the names of the generated classes this registry creates, like
+   * {@code com.example.Foo$InjectAdapter}.
+   */
+  String[] getClassNames();
+
+  /**
+   * Returns a new instance of the class named by {@code
+   * getClassNames()[index]}.
+   */
+  Object newInstance(int index);
+}
@@ -16,6 +16,7 @@
 package dagger.internal.plugins.loading;
 
 import dagger.internal.Binding;
+import dagger.internal.ClassCache;
 import dagger.internal.ModuleAdapter;
 import dagger.internal.Plugin;
 import dagger.internal.StaticInjection;
@@ -23,35 +24,132 @@ import java.lang.reflect.Constructor;
 
 /**
  * A runtime {@link Plugin} that loads generated classes.
+ *
+ * <p>Generated classes are loaded by the class loader of the class they were
+ * generated for. They are created with {@link AdapterRegistry registries}
+ * when that loader has them, and with reflection otherwise. Whether a class
+ * has a generated class is looked up once: found classes and the absence of
+ * missing ones are cached, and this plugin returns null for missing classes
+ * without throwing. Injected classes are loaded by the requesting graph's
+ * loader, unless its registries create their adapters, and names that loader
+ * doesn't have are also cached.
  */
 public final class ClassloadingPlugin implements Plugin {
   public static final String INJECT_ADAPTER_SUFFIX = "$InjectAdapter";
   public static final String MODULE_ADAPTER_SUFFIX = "$ModuleAdapter";
   public static final String STATIC_INJECTION_SUFFIX = "$StaticInjection";
 
+  /**
+   * A resource listing the names of {@link AdapterRegistry} classes, one per
+   * line. Each compilation that generates adapters contributes one.
+   */
+  public static final String REGISTRY_INDEX = "META-INF/dagger/adapter-registries";
+
+  private static final GeneratedClassCache INJECT_ADAPTERS =
+      new GeneratedClassCache(INJECT_ADAPTER_SUFFIX);
+  private static final GeneratedClassCache MODULE_ADAPTERS =
+      new GeneratedClassCache(MODULE_ADAPTER_SUFFIX);
+  private static final GeneratedClassCache STATIC_INJECTIONS =
+      new GeneratedClassCache(STATIC_INJECTION_SUFFIX);
+
   @Override public <T> ModuleAdapter<T> getModuleAdapter(Class<? extends T> moduleClass, T module) {
-    return instantiate(moduleClass.getName(), MODULE_ADAPTER_SUFFIX);
+    return MODULE_ADAPTERS.get(moduleClass).newInstance();
   }
 
   @Override public Binding<?> getAtInjectBinding(
-      String key, String className, boolean mustBeInjectable) {
-    return instantiate(className, INJECT_ADAPTER_SUFFIX);
+      String key, String className, ClassLoader classLoader, boolean mustBeInjectable) {
+    AdapterRegistries registries = AdapterRegistries.forLoader(classLoader);
+    AdapterRegistries.Entry registryEntry = registries.get(className + INJECT_ADAPTER_SUFFIX);
+    if (registryEntry != null) {
+      return (Binding<?>) registryEntry.newInstance(); // Without loading the injected class.
+    }
+    Class<?> type = loadClass(className, classLoader, registries);
+    return (type != null) ? INJECT_ADAPTERS.get(type).<Binding<?>>newInstance() : null;
   }
 
   @Override public StaticInjection getStaticInjection(Class<?> injectedClass) {
-    return instantiate(injectedClass.getName(), STATIC_INJECTION_SUFFIX);
+    return STATIC_INJECTIONS.get(injectedClass).newInstance();
   }
 
-  @SuppressWarnings("unchecked") // We use a naming convention to defend against mismatches.
-  private <T> T instantiate(String className, String suffix) {
-    String name = className + suffix;
+  /**
+   * Returns the class {@code className} of {@code loader}, or null if it has
+   * none. Misses are remembered in the loader's {@code registries}, so that a
+   * miss throws a {@code ClassNotFoundException} only once.
+   */
+  private static Class<?> loadClass(String className, ClassLoader loader,
+      AdapterRegistries registries) {
+    if (registries.isMissingClass(className)) {
+      return null;
+    }
     try {
-      Class<?> generatedClass = Class.forName(name);
-      Constructor<?> constructor = generatedClass.getConstructor();
-      constructor.setAccessible(true);
-      return (T) constructor.newInstance();
-    } catch (Exception e) {
-      throw new RuntimeException("Unexpected failure loading " + name, e);
+      return Class.forName(className, false, loader);
+    } catch (ClassNotFoundException e) {
+      registries.addMissingClass(className);
+      return null;
+    }
+  }
+
+  /**
+   * The generated class for a class, or {@link #MISSING} if it has none.
+   */
+  private static final class GeneratedClass {
+    static final GeneratedClass MISSING = new GeneratedClass(null, null);
+
+    private final AdapterRegistries.Entry registryEntry;
+    private final Constructor<?> constructor;
+
+    GeneratedClass(AdapterRegistries.Entry registryEntry, Constructor<?> constructor) {
+      this.registryEntry = registryEntry;
+      this.constructor = constructor;
+    }
+
+    /** Returns a new instance of the generated class, or null if it's missing. */
+    @SuppressWarnings("unchecked") // We use a naming convention to defend against mismatches.
+    <T> T newInstance() {
+      if (registryEntry != null) {
+        return (T) registryEntry.newInstance();
+      }
+      if (constructor == null) {
+        return null;
+      }
+      try {
+        return (T) constructor.newInstance();
+      } catch (Exception e) {
+        throw new RuntimeException("Unexpected failure loading "
+            + constructor.getDeclaringClass().getName(), e);
+      }
+    }
+  }
+
+  /** Caches the generated class with a suffix for each class. */
+  private static final class GeneratedClassCache extends ClassCache<GeneratedClass> {
+    private final String suffix;
+
+    GeneratedClassCache(String suffix) {
+      this.suffix = suffix;
+    }
+
+    @Override protected GeneratedClass create(Class<?> type) {
+      String name = type.getName() + suffix;
+      ClassLoader loader = type.getClassLoader();
+      AdapterRegistries.Entry registryEntry = AdapterRegistries.forLoader(loader).get(name);
+      if (registryEntry != null) {
+        return new GeneratedClass(registryEntry, null);
+      }
+
+      Class<?> generatedClass;
+      try {
+        generatedClass = Class.forName(name, true, loader);
+      } catch (ClassNotFoundException e) {
+        return GeneratedClass.MISSING;
+      }
+      try {
+        Constructor<?> constructor = generatedClass.getConstructor();
+        constructor.setAccessible(true);
+        return new GeneratedClass(null, constructor);
+      } catch (Exception e) {
+        throw new RuntimeException("Unexpected failure loading " + name, e);
+      }
     }
   }
 }
@@ -16,6 +16,8 @@
 package dagger.internal.plugins.reflect;
 
 import dagger.internal.Binding;
+import dagger.internal.ClassCache;
+import dagger.internal.Key;
 import dagger.internal.Keys;
 import dagger.internal.Linker;
 import java.lang.annotation.Annotation;
@@ -36,10 +38,13 @@ import javax.inject.Singleton;
  * using reflection.
  */
 final class ReflectiveAtInjectBinding<T> extends Binding<T> {
+  /** Arguments for constructors without parameters, which don't modify them. */
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+
   private final Field[] fields;
   private final Constructor<T> constructor;
   private final Class<?> supertype;
-  private final String[] keys;
+  private final Key[] keys;
   private final Binding<?>[] fieldBindings;
   private final Binding<?>[] parameterBindings;
   private Binding<? super T> supertypeBinding;
@@ -54,7 +59,7 @@ final class ReflectiveAtInjectBinding<T> extends Binding<T> {
    */
   private ReflectiveAtInjectBinding(String provideKey, String membersKey, boolean singleton,
       Class<?> type, Field[] fields, Constructor<T> constructor, int parameterCount,
-      Class<?> supertype, String[] keys) {
+      Class<?> supertype, Key[] keys) {
     super(provideKey, membersKey, singleton, type);
     this.constructor = constructor;
     this.fields = fields;
@@ -91,7 +96,9 @@ final class ReflectiveAtInjectBinding<T> extends Binding<T> {
     if (constructor == null) {
       throw new UnsupportedOperationException();
     }
-    Object[] args = new Object[parameterBindings.length];
+    Object[] args = parameterBindings.length == 0
+        ? NO_ARGUMENTS
+        : new Object[parameterBindings.length];
     for (int i = 0; i < parameterBindings.length; i++) {
       args[i] = parameterBindings[i].get();
     }
@@ -143,93 +150,121 @@ final class ReflectiveAtInjectBinding<T> extends Binding<T> {
    * @param mustBeInjectable true if the binding must have {@code @Inject}
    *     annotations.
    */
+  @SuppressWarnings("unchecked") // The plan's constructor is a constructor of 'T'.
   public static <T> Binding<T> create(Class<T> type, boolean mustBeInjectable) {
-    boolean singleton = type.isAnnotationPresent(Singleton.class);
-    List<String> keys = new ArrayList<String>();
-
-    // Lookup the injectable fields and their corresponding keys.
-    List<Field> injectedFields = new ArrayList<Field>();
-    for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
-      for (Field field : c.getDeclaredFields()) {
-        if (!field.isAnnotationPresent(Inject.class) || Modifier.isStatic(field.getModifiers())) {
-          continue;
-        }
-        if ((field.getModifiers() & Modifier.PRIVATE) != 0) {
-          throw new IllegalStateException("Can't inject private field: " + field);
-        }
-        field.setAccessible(true);
-        injectedFields.add(field);
-        keys.add(Keys.get(field.getGenericType(), field.getAnnotations(), field));
-      }
+    Plan plan = PLANS.get(type);
+    if (!plan.hasInjectConstructor && plan.fields.length == 0 && mustBeInjectable) {
+      throw new IllegalArgumentException("No injectable members on " + type.getName()
+          + ". Do you want to add an injectable constructor?");
     }
-
-    // Look up @Inject-annotated constructors. If there's no @Inject-annotated
-    // constructor, use a default public constructor if the class has other
-    // injections. Otherwise treat the class as non-injectable.
-    Constructor<T> injectedConstructor = null;
-    for (Constructor<T> constructor : getConstructorsForType(type)) {
-      if (!constructor.isAnnotationPresent(Inject.class)) {
-        continue;
-      }
-      if (injectedConstructor != null) {
-        throw new IllegalArgumentException("Too many injectable constructors on " + type.getName());
-      }
-      injectedConstructor = constructor;
+    if (plan.constructor != null && (plan.constructor.getModifiers() & Modifier.PRIVATE) != 0) {
+      throw new IllegalStateException("Can't inject private constructor: " + plan.constructor);
     }
-    if (injectedConstructor == null) {
-      if (injectedFields.isEmpty() && mustBeInjectable) {
-        throw new IllegalArgumentException("No injectable members on " + type.getName()
-            + ". Do you want to add an injectable constructor?");
-      }
-      try {
-        injectedConstructor = type.getDeclaredConstructor();
-      } catch (NoSuchMethodException ignored) {
-      }
+    if (plan.constructor == null && plan.singleton) {
+      throw new IllegalArgumentException(
+          "No injectable constructor on @Singleton " + type.getName());
     }
+    return new ReflectiveAtInjectBinding<T>(plan.provideKey, plan.membersKey, plan.singleton, type,
+        plan.fields, (Constructor<T>) plan.constructor, plan.parameterCount, plan.supertype,
+        plan.keys);
+  }
+
+  private static final ClassCache<Plan> PLANS = new ClassCache<Plan>() {
+    @Override protected Plan create(Class<?> type) {
+      return new Plan(type);
+    }
+  };
+
+  /**
+   * The injectable members of a class and their keys, found once with
+   * reflection and shared by every binding for the class.
+   */
+  private static final class Plan {
+    final boolean singleton;
+    /** True if the constructor is annotated rather than a default constructor. */
+    final boolean hasInjectConstructor;
+    final Field[] fields;
+    final Constructor<?> constructor;
+    final int parameterCount;
+    final Class<?> supertype;
+    final String provideKey;
+    final String membersKey;
+    final Key[] keys;
 
-    int parameterCount;
-    String provideKey;
-    if (injectedConstructor != null) {
-      if ((injectedConstructor.getModifiers() & Modifier.PRIVATE) != 0) {
-        throw new IllegalStateException("Can't inject private constructor: " + injectedConstructor);
+    Plan(Class<?> type) {
+      singleton = type.isAnnotationPresent(Singleton.class);
+      List<Key> keys = new ArrayList<Key>();
+
+      // Lookup the injectable fields and their corresponding keys.
+      List<Field> injectedFields = new ArrayList<Field>();
+      for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+        for (Field field : c.getDeclaredFields()) {
+          if (!field.isAnnotationPresent(Inject.class) || Modifier.isStatic(field.getModifiers())) {
+            continue;
+          }
+          if ((field.getModifiers() & Modifier.PRIVATE) != 0) {
+            throw new IllegalStateException("Can't inject private field: " + field);
+          }
+          field.setAccessible(true);
+          injectedFields.add(field);
+          keys.add(Key.get(Keys.get(field.getGenericType(), field.getAnnotations(), field)));
+        }
       }
+      fields = injectedFields.toArray(new Field[injectedFields.size()]);
 
-      provideKey = Keys.get(type);
-      injectedConstructor.setAccessible(true);
-      Type[] types = injectedConstructor.getGenericParameterTypes();
-      parameterCount = types.length;
-      if (parameterCount != 0) {
-        Annotation[][] annotations = injectedConstructor.getParameterAnnotations();
-        for (int p = 0; p < types.length; p++) {
-          keys.add(Keys.get(types[p], annotations[p], injectedConstructor));
+      // Look up @Inject-annotated constructors. If there's no @Inject-annotated
+      // constructor, use a default constructor. Whether the class is injectable
+      // without one is decided per request.
+      Constructor<?> injectedConstructor = null;
+      for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+        if (!constructor.isAnnotationPresent(Inject.class)) {
+          continue;
+        }
+        if (injectedConstructor != null) {
+          throw new IllegalArgumentException(
+              "Too many injectable constructors on " + type.getName());
         }
+        injectedConstructor = constructor;
       }
-    } else {
-      provideKey = null;
-      parameterCount = 0;
-      if (singleton) {
-        throw new IllegalArgumentException(
-            "No injectable constructor on @Singleton " + type.getName());
+      hasInjectConstructor = injectedConstructor != null;
+      if (injectedConstructor == null) {
+        try {
+          injectedConstructor = type.getDeclaredConstructor();
+        } catch (NoSuchMethodException ignored) {
+        }
       }
-    }
+      constructor = injectedConstructor;
 
-    Class<? super T> supertype = type.getSuperclass();
-    if (supertype != null) {
-      if (Keys.isPlatformType(supertype.getName())) {
-        supertype = null;
+      if (constructor != null) {
+        provideKey = Keys.get(type);
+        Type[] types = constructor.getGenericParameterTypes();
+        parameterCount = types.length;
+        if ((constructor.getModifiers() & Modifier.PRIVATE) == 0) {
+          constructor.setAccessible(true);
+          if (parameterCount != 0) {
+            Annotation[][] annotations = constructor.getParameterAnnotations();
+            for (int p = 0; p < types.length; p++) {
+              keys.add(Key.get(Keys.get(types[p], annotations[p], constructor)));
+            }
+          }
+        }
       } else {
-        keys.add(Keys.getMembersKey(supertype));
+        provideKey = null;
+        parameterCount = 0;
       }
-    }
 
-    String membersKey = Keys.getMembersKey(type);
-    return new ReflectiveAtInjectBinding<T>(provideKey, membersKey, singleton, type,
-        injectedFields.toArray(new Field[injectedFields.size()]), injectedConstructor,
-        parameterCount, supertype, keys.toArray(new String[keys.size()]));
-  }
+      Class<?> supertype = type.getSuperclass();
+      if (supertype != null) {
+        if (Keys.isPlatformType(supertype.getName())) {
+          supertype = null;
+        } else {
+          keys.add(Key.get(Keys.getMembersKey(supertype)));
+        }
+      }
+      this.supertype = supertype;
 
-  @SuppressWarnings("unchecked") // Class.getDeclaredConstructors is an unsafe API.
-  private static <T> Constructor<T>[] getConstructorsForType(Class<T> type) {
-    return (Constructor<T>[]) type.getDeclaredConstructors();
+      membersKey = Keys.getMembersKey(type);
+      this.keys = keys.toArray(new Key[keys.size()]);
+    }
   }
 }
@@ -16,11 +16,15 @@
 package dagger.internal.plugins.reflect;
 
 import dagger.Lazy;
+import dagger.MapKey;
 import dagger.Module;
 import dagger.Provides;
 import dagger.internal.Binding;
+import dagger.internal.ClassCache;
+import dagger.internal.Key;
 import dagger.internal.Keys;
 import dagger.internal.Linker;
+import dagger.internal.MapBinding;
 import dagger.internal.ModuleAdapter;
 import dagger.internal.SetBinding;
 import dagger.internal.plugins.AbstractProviderMethodBinding;
@@ -30,12 +34,17 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.inject.Provider;
 import javax.inject.Singleton;
 
 final class ReflectiveModuleAdapter extends ModuleAdapter<Object> {
+  /** Arguments for provider methods without parameters, which don't modify them. */
+  private static final Object[] NO_ARGUMENTS = new Object[0];
+
   final Class<?> moduleClass;
 
   public ReflectiveModuleAdapter(Class<?> moduleClass, Module annotation) {
@@ -49,6 +58,12 @@ final class ReflectiveModuleAdapter extends ModuleAdapter<Object> {
     this.moduleClass = moduleClass;
   }
 
+  private ReflectiveModuleAdapter(ReflectiveModuleAdapter prototype) {
+    super(prototype.entryPoints, prototype.staticInjections, prototype.overrides,
+        prototype.includes, prototype.complete, prototype.library);
+    this.moduleClass = prototype.moduleClass;
+  }
+
   private static String[] toMemberKeys(Class<?>[] entryPoints) {
     String[] result = new String[entryPoints.length];
     for (int i = 0; i < entryPoints.length; i++) {
@@ -58,56 +73,21 @@ final class ReflectiveModuleAdapter extends ModuleAdapter<Object> {
   }
 
   @Override public void getBindings(Map<String, Binding<?>> bindings) {
-    for (Class<?> c = moduleClass; c != Object.class; c = c.getSuperclass()) {
-      for (Method method : c.getDeclaredMethods()) {
-        Provides provides = method.getAnnotation(Provides.class);
-        if (provides != null) {
-          Type genericReturnType = method.getGenericReturnType();
-
-          Type typeToCheck = genericReturnType;
-          if (genericReturnType instanceof ParameterizedType) {
-            typeToCheck = ((ParameterizedType) genericReturnType).getRawType();
-          }
-          if (Provider.class.equals(typeToCheck)) {
-            throw new IllegalStateException("@Provides method must not return Provider directly: "
-                + c.getName()
-                + "."
-                + method.getName());
-          }
-          if (Lazy.class.equals(typeToCheck)) {
-            throw new IllegalStateException("@Provides method must not return Lazy directly: "
-                + c.getName()
-                + "."
-                + method.getName());
-          }
-
-          String key = Keys.get(genericReturnType, method.getAnnotations(), method);
-          switch (provides.type()) {
-            case UNIQUE:
-              handleBindings(bindings, method, key, library);
-              break;
-            case SET:
-              handleSetBindings(bindings, method, key, library);
-              break;
-            default:
-              throw new AssertionError("Unknown @Provides type " + provides.type());
-          }
-        }
+    for (ProviderMethod providerMethod : PROVIDER_METHODS.get(moduleClass)) {
+      ProviderMethodBinding<Object> binding =
+          new ProviderMethodBinding<Object>(providerMethod, module, library);
+      if (providerMethod.mapEntryKey != null) {
+        MapBinding.add(bindings, providerMethod.elementKey, providerMethod.mapEntryKey, binding);
+      } else if (providerMethod.elementKey != null) {
+        SetBinding.add(bindings, providerMethod.elementKey, binding);
+      } else {
+        bindings.put(providerMethod.key, binding);
       }
     }
   }
 
-  private <T> void handleBindings(Map<String, Binding<?>> bindings, Method method, String key,
-      boolean library) {
-    bindings.put(key, new ProviderMethodBinding<T>(method, key, module, library));
-  }
-
-  private <T> void handleSetBindings(Map<String, Binding<?>> bindings, Method method, String key,
-      boolean library) {
-    String elementKey =
-        Keys.getElementKey(method.getGenericReturnType(), method.getAnnotations(), method);
-    SetBinding.<T>add(bindings, elementKey, new ProviderMethodBinding<T>(method, key, module,
-        library));
+  @Override protected ModuleAdapter<Object> newAdapter() {
+    return new ReflectiveModuleAdapter(this);
   }
 
   @Override protected Object newModule() {
@@ -128,37 +108,124 @@ final class ReflectiveModuleAdapter extends ModuleAdapter<Object> {
     }
   }
 
+  /**
+   * The {@code @Provides} methods of each module class, found once with
+   * reflection and shared by every adapter for the class.
+   */
+  private static final ClassCache<ProviderMethod[]> PROVIDER_METHODS =
+      new ClassCache<ProviderMethod[]>() {
+        @Override protected ProviderMethod[] create(Class<?> moduleClass) {
+          List<ProviderMethod> result = new ArrayList<ProviderMethod>();
+          for (Class<?> c = moduleClass; c != Object.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+              Provides provides = method.getAnnotation(Provides.class);
+              if (provides != null) {
+                result.add(new ProviderMethod(c, method, provides));
+              }
+            }
+          }
+          return result.toArray(new ProviderMethod[result.size()]);
+        }
+      };
+
+  /** A {@code @Provides} method and the keys of its value and parameters. */
+  private static final class ProviderMethod {
+    final Method method;
+    final String key;
+    /**
+     * The key of the set or map this method contributes to, or null if it
+     * provides a unique value.
+     */
+    final String elementKey;
+    /** The key of the entry this method contributes to a map, or null. */
+    final String mapEntryKey;
+    final boolean singleton;
+    final Key[] parameterKeys;
+
+    ProviderMethod(Class<?> c, Method method, Provides provides) {
+      Type genericReturnType = method.getGenericReturnType();
+
+      Type typeToCheck = genericReturnType;
+      if (genericReturnType instanceof ParameterizedType) {
+        typeToCheck = ((ParameterizedType) genericReturnType).getRawType();
+      }
+      if (Provider.class.equals(typeToCheck)) {
+        throw new IllegalStateException("@Provides method must not return Provider directly: "
+            + c.getName()
+            + "."
+            + method.getName());
+      }
+      if (Lazy.class.equals(typeToCheck)) {
+        throw new IllegalStateException("@Provides method must not return Lazy directly: "
+            + c.getName()
+            + "."
+            + method.getName());
+      }
+
+      this.method = method;
+      this.key = Keys.get(genericReturnType, method.getAnnotations(), method);
+      switch (provides.type()) {
+        case UNIQUE:
+          this.elementKey = null;
+          this.mapEntryKey = null;
+          break;
+        case SET:
+          this.elementKey = Keys.getElementKey(genericReturnType, method.getAnnotations(), method);
+          this.mapEntryKey = null;
+          break;
+        case MAP:
+          MapKey mapKey = method.getAnnotation(MapKey.class);
+          if (mapKey == null) {
+            throw new IllegalStateException("@Provides(type = MAP) method must be annotated "
+                + "@MapKey: " + c.getName() + "." + method.getName());
+          }
+          this.elementKey = Keys.getMapKey(genericReturnType, method.getAnnotations(), method);
+          this.mapEntryKey = mapKey.value();
+          break;
+        default:
+          throw new AssertionError("Unknown @Provides type " + provides.type());
+      }
+      this.singleton = method.isAnnotationPresent(Singleton.class);
+      method.setAccessible(true);
+
+      Type[] types = method.getGenericParameterTypes();
+      Annotation[][] annotations = method.getParameterAnnotations();
+      this.parameterKeys = new Key[types.length];
+      for (int i = 0; i < types.length; i++) {
+        parameterKeys[i] = Key.get(Keys.get(types[i], annotations[i], method + " parameter " + i));
+      }
+    }
+  }
+
   /**
    * Invokes a method to provide a value. The method's parameters are injected.
    */
   private final class ProviderMethodBinding<T> extends AbstractProviderMethodBinding<T> {
     private Binding<?>[] parameters;
+    private final ProviderMethod providerMethod;
     private final Method method;
     private final Object instance;
 
-    public ProviderMethodBinding(Method method, String key, Object instance, boolean library) {
-      super(key, null, method.isAnnotationPresent(Singleton.class), method);
-      this.method = method;
+    public ProviderMethodBinding(ProviderMethod providerMethod, Object instance, boolean library) {
+      super(providerMethod.key, null, providerMethod.singleton, providerMethod.method);
+      this.providerMethod = providerMethod;
+      this.method = providerMethod.method;
       this.instance = instance;
-      method.setAccessible(true);
       setLibrary(library);
       setModuleName(moduleClass.getName());
       setMethodName(method.getName());
     }
 
     @Override public void attach(Linker linker) {
-      Type[] types = method.getGenericParameterTypes();
-      Annotation[][] annotations = method.getParameterAnnotations();
-      parameters = new Binding[types.length];
+      Key[] keys = providerMethod.parameterKeys;
+      parameters = new Binding[keys.length];
       for (int i = 0; i < parameters.length; i++) {
-        String key = Keys.get(types[i], annotations[i], method + " parameter " + i);
-        parameters[i] = linker.requestBinding(key, method);
+        parameters[i] = linker.requestBinding(keys[i], method);
       }
     }
-
     @SuppressWarnings("unchecked") // We defined 'T' in terms of the method's return type.
     @Override public T get() {
-      Object[] args = new Object[parameters.length];
+      Object[] args = parameters.length == 0 ? NO_ARGUMENTS : new Object[parameters.length];
       for (int i = 0; i < parameters.length; i++) {
         args[i] = parameters[i].get();
       }
@@ -31,10 +31,10 @@ import javax.inject.Inject;
  */
 public final class ReflectivePlugin implements Plugin {
   @Override public Binding<?> getAtInjectBinding(
-      String key, String className, boolean mustBeInjectable) {
+      String key, String className, ClassLoader classLoader, boolean mustBeInjectable) {
     Class<?> c;
     try {
-      c = Class.forName(className);
+      c = Class.forName(className, false, classLoader);
     } catch (ClassNotFoundException e) {
       throw new RuntimeException(e);
     }
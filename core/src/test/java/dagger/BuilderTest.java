@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger;
+
+import dagger.internal.Binding;
+import dagger.internal.Instrumentation;
+import dagger.internal.ModuleAdapter;
+import dagger.internal.Plugin;
+import dagger.internal.StaticInjection;
+import dagger.internal.plugins.reflect.ReflectivePlugin;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public final class BuilderTest {
+  static int poolsConstructed;
+
+  @Singleton
+  static class Pool {
+    @Inject Pool() {
+      poolsConstructed++;
+    }
+  }
+
+  static class Service {
+    @Inject Pool pool;
+  }
+
+  static class Config {
+    @Inject static Pool pool;
+  }
+
+  @Module(entryPoints = Service.class, staticInjections = Config.class)
+  static class ServiceModule {
+  }
+
+  /** Finds nothing, as if no classes had generated adapters. */
+  static class EmptyPlugin implements Plugin {
+    @Override public Binding<?> getAtInjectBinding(
+        String key, String className, ClassLoader classLoader, boolean mustBeInjectable) {
+      return null;
+    }
+    @Override public <T> ModuleAdapter<T> getModuleAdapter(
+        Class<? extends T> moduleClass, T module) {
+      return null;
+    }
+    @Override public StaticInjection getStaticInjection(Class<?> injectedClass) {
+      return null;
+    }
+  }
+
+  @Test public void buildWithoutConfiguration() {
+    ObjectGraph graph = new ObjectGraph.Builder().addModules(new ServiceModule()).build();
+    Service service = graph.get(Service.class);
+    assertThat(service.pool).isSameAs(graph.get(Service.class).pool);
+  }
+
+  @Test public void pluginsAndInstrumentation() {
+    final List<String> resolved = new ArrayList<String>();
+    final ReflectivePlugin reflectivePlugin = new ReflectivePlugin();
+    Instrumentation instrumentation = new Instrumentation() {
+      @Override public void atInjectBindingResolved(String className, Plugin plugin, long nanos) {
+        assertThat(plugin).isSameAs(reflectivePlugin);
+        resolved.add(className);
+      }
+      @Override public void moduleAdapterResolved(
+          Class<?> moduleClass, Plugin plugin, long nanos) {
+        assertThat(plugin).isSameAs(reflectivePlugin);
+        resolved.add(moduleClass.getName());
+      }
+      @Override public void staticInjectionResolved(
+          Class<?> injectedClass, Plugin plugin, long nanos) {
+        resolved.add(injectedClass.getName());
+      }
+    };
+
+    ObjectGraph graph = new ObjectGraph.Builder()
+        .addModules(new ServiceModule())
+        .plugins(new EmptyPlugin(), reflectivePlugin)
+        .instrumentation(instrumentation)
+        .build();
+    assertThat(resolved).isEqualTo(Arrays.asList(ServiceModule.class.getName()));
+    graph.get(Service.class);
+    assertThat(resolved).contains(Service.class.getName());
+    assertThat(resolved).contains(Pool.class.getName());
+  }
+
+  @Test public void executorWarmsUpSingletons() {
+    Executor direct = new Executor() {
+      @Override public void execute(Runnable command) {
+        command.run();
+      }
+    };
+    int constructed = poolsConstructed;
+    ObjectGraph graph = new ObjectGraph.Builder()
+        .addModules(new ServiceModule())
+        .executor(direct)
+        .build();
+    assertThat(poolsConstructed).isEqualTo(constructed + 1);
+    graph.get(Service.class);
+    assertThat(poolsConstructed).isEqualTo(constructed + 1);
+  }
+
+  @Test public void strictModeListsEveryMissingGeneratedClass() {
+    try {
+      new ObjectGraph.Builder()
+          .addModules(new ServiceModule())
+          .plugins(new EmptyPlugin())
+          .strict()
+          .build();
+      fail();
+    } catch (IllegalStateException expected) {
+      assertThat(expected.getMessage())
+          .contains(ServiceModule.class.getName() + "$ModuleAdapter")
+          .contains(Service.class.getName() + "$InjectAdapter")
+          .contains(Pool.class.getName() + "$InjectAdapter")
+          .contains(Config.class.getName() + "$StaticInjection");
+    }
+  }
+
+  @Test public void strictModeAcceptsGraphsThePluginsResolve() {
+    ObjectGraph graph = new ObjectGraph.Builder()
+        .addModules(new ServiceModule())
+        .plugins(new ReflectivePlugin())
+        .strict()
+        .build();
+    assertThat(graph.get(Service.class).pool).isNotNull();
+  }
+
+  @Test public void strictGraphsFailOnTheFirstMissingClassAfterBuilding() {
+    ObjectGraph graph = new ObjectGraph.Builder()
+        .plugins(new EmptyPlugin())
+        .strict()
+        .build();
+    try {
+      graph.plus(new ServiceModule());
+      fail();
+    } catch (IllegalStateException expected) {
+      assertThat(expected.getMessage()).contains(ServiceModule.class.getName());
+    }
+  }
+
+  @Test public void parallelSetsDontWarmUpSingletons() {
+    Executor direct = new Executor() {
+      @Override public void execute(Runnable command) {
+        command.run();
+      }
+    };
+    int constructed = poolsConstructed;
+    new ObjectGraph.Builder()
+        .addModules(new ServiceModule())
+        .parallelSets(direct)
+        .build();
+    assertThat(poolsConstructed).isEqualTo(constructed);
+  }
+}
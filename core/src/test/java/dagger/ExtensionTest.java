@@ -25,6 +25,7 @@ import org.junit.runners.JUnit4;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 
 @RunWith(JUnit4.class)
 public final class ExtensionTest {
@@ -54,6 +55,30 @@ public final class ExtensionTest {
   @Module(addsTo = RootModule.class, entryPoints = { C.class, D.class })
   static class ExtensionModule { }
 
+  static class E {
+    final String source;
+    @Inject E() {
+      this("jit");
+    }
+    E(String source) {
+      this.source = source;
+    }
+  }
+
+  static class F {
+    @Inject E e;
+  }
+
+  @Module(addsTo = RootModule.class, entryPoints = F.class)
+  static class UsesEModule { }
+
+  @Module(addsTo = RootModule.class, entryPoints = F.class)
+  static class ProvidesEModule {
+    @Provides E provideE() {
+      return new E("child");
+    }
+  }
+
   @Test public void basicExtension() {
     assertNotNull(ObjectGraph.create(new RootModule()).plus(new ExtensionModule()));
   }
@@ -101,6 +126,40 @@ public final class ExtensionTest {
     assertThat(request1.get(C.class).a).isSameAs(request2.get(C.class).a);
   }
 
+  @Test public void childBindingsShadowJitBindingsOfHoistedDependents() {
+    ObjectGraph app = ObjectGraph.create(new RootModule());
+    assertThat(app.plus(new ProvidesEModule()).get(F.class).e.source).isEqualTo("child");
+    assertThat(app.plus(new UsesEModule()).get(F.class).e.source).isEqualTo("jit");
+    // F was hoisted into the root for the second child, but can't be shared with this one.
+    assertThat(app.plus(new ProvidesEModule()).get(F.class).e.source).isEqualTo("child");
+    assertThat(app.freeze().plus(new ProvidesEModule()).get(F.class).e.source)
+        .isEqualTo("child");
+  }
+
+  @Test public void templateGraphs() {
+    ObjectGraph app = ObjectGraph.create(new RootModule());
+    ObjectGraph.Template template = app.planPlus(ExtensionModule.class);
+    ObjectGraph request1 = template.create();
+    ObjectGraph request2 = template.create(new ExtensionModule());
+    for (ObjectGraph request : Arrays.asList(request1, request2)) {
+      assertThat(request.get(A.class)).isSameAs(app.get(A.class));
+      assertThat(request.get(B.class)).isNotSameAs(request.get(B.class));
+      assertThat(request.get(C.class)).isSameAs(request.get(C.class));
+      assertThat(request.get(D.class)).isNotSameAs(request.get(D.class));
+    }
+    assertThat(request1.get(C.class)).isNotSameAs(request2.get(C.class));
+  }
+
+  @Test public void templateRejectsUnplannedModules() {
+    ObjectGraph.Template template =
+        ObjectGraph.create(new RootModule()).planPlus(ExtensionModule.class);
+    try {
+      template.create(new RootModule());
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
   private void assertFailNoEntryPoint(ObjectGraph graph, Class<?> clazz) {
     try {
       assertThat(graph.get(clazz)).isNull();
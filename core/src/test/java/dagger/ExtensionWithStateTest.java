@@ -46,6 +46,20 @@ public final class ExtensionWithStateTest {
   @Module(addsTo = RootModule.class, entryPoints = { B.class })
   static class ExtensionModule { }
 
+  static class C {
+    @Inject A a;
+    @Inject String name;
+  }
+
+  @Module(addsTo = RootModule.class, entryPoints = { C.class })
+  static class NamedExtensionModule {
+    final String name;
+    NamedExtensionModule(String name) {
+      this.name = name;
+    }
+    @Provides String provideName() { return name; }
+  }
+
   @Test public void basicInjectionWithExtension() {
     A a = new A();
     ObjectGraph root = ObjectGraph.create(new RootModule(a));
@@ -57,4 +71,15 @@ public final class ExtensionWithStateTest {
     assertThat(extension.get(B.class).a).isSameAs(a);
   }
 
+  @Test public void templateUsesEachGraphsModules() {
+    A a = new A();
+    ObjectGraph root = ObjectGraph.create(new RootModule(a));
+    ObjectGraph.Template template = root.planPlus(NamedExtensionModule.class);
+    C one = template.create(new NamedExtensionModule("one")).get(C.class);
+    C two = template.create(new NamedExtensionModule("two")).get(C.class);
+    assertThat(one.name).isEqualTo("one");
+    assertThat(two.name).isEqualTo("two");
+    assertThat(one.a).isSameAs(a);
+    assertThat(two.a).isSameAs(a);
+  }
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2012 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public final class FrozenGraphTest {
+  @Singleton
+  static class A {
+    @Inject A() {}
+  }
+
+  static class B {
+    @Inject A a;
+  }
+
+  @Singleton
+  static class C {
+    @Inject A a;
+    @Inject B b;
+  }
+
+  static class D {
+    @Inject C c;
+  }
+
+  static class InjectsStatics {
+    @Inject static A a;
+  }
+
+  @Module(entryPoints = { A.class, B.class }, staticInjections = InjectsStatics.class)
+  static class RootModule { }
+
+  @Module(addsTo = RootModule.class, entryPoints = { C.class, D.class })
+  static class ExtensionModule { }
+
+  @Test public void frozenGraphSharesSingletons() {
+    ObjectGraph graph = ObjectGraph.create(new RootModule());
+    A a = graph.get(A.class);
+    ObjectGraph frozen = graph.freeze();
+    assertThat(frozen.get(A.class)).isSameAs(a);
+    assertThat(frozen.get(B.class)).isNotSameAs(frozen.get(B.class));
+    assertThat(frozen.get(B.class).a).isSameAs(a);
+  }
+
+  @Test public void frozenGraphInjectsMembers() {
+    ObjectGraph frozen = ObjectGraph.create(new RootModule()).freeze();
+    B b = frozen.inject(new B());
+    assertThat(b.a).isSameAs(frozen.get(A.class));
+  }
+
+  @Test public void frozenGraphRejectsMissingEntryPoints() {
+    ObjectGraph frozen = ObjectGraph.create(new RootModule()).freeze();
+    try {
+      frozen.get(C.class);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).contains("No entry point");
+    }
+  }
+
+  @Test public void frozenGraphInjectsStatics() {
+    InjectsStatics.a = null;
+    ObjectGraph frozen = ObjectGraph.create(new RootModule()).freeze();
+    frozen.injectStatics();
+    assertThat(InjectsStatics.a).isSameAs(frozen.get(A.class));
+  }
+
+  @Test public void plusOnFrozenGraph() {
+    ObjectGraph frozen = ObjectGraph.create(new RootModule()).freeze();
+    ObjectGraph extension = frozen.plus(new ExtensionModule());
+    assertThat(extension.get(A.class)).isSameAs(frozen.get(A.class));
+    assertThat(extension.get(C.class)).isSameAs(extension.get(C.class));
+    assertThat(extension.get(D.class).c.a).isSameAs(frozen.get(A.class));
+    extension.validate();
+  }
+
+  @Test public void freezingAnExtensionFlattensEntryPoints() {
+    ObjectGraph root = ObjectGraph.create(new RootModule());
+    ObjectGraph extension = root.plus(new ExtensionModule());
+    C c = extension.get(C.class);
+    ObjectGraph frozen = extension.freeze();
+    assertThat(frozen.get(A.class)).isSameAs(root.get(A.class));
+    assertThat(frozen.get(C.class)).isSameAs(c);
+    assertThat(frozen.get(D.class).c).isSameAs(c);
+    assertThat(frozen.freeze()).isSameAs(frozen);
+    frozen.validate();
+  }
+}
@@ -19,12 +19,15 @@ package dagger;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
 import javax.inject.Provider;
+import javax.inject.Singleton;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 /**
  * Tests of injection of Lazy<T> bindings.
@@ -126,6 +129,55 @@ public final class InjectionOfLazyTest {
     assertEquals(1, ep.lazyInteger.get().intValue()); // still the same instance.
   }
 
+  @Test public void lazySingletonsAreShared() {
+    final AtomicInteger counter = new AtomicInteger();
+    class TestEntryPoint {
+      @Inject Lazy<Integer> i;
+      @Inject Lazy<Integer> j;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides @Singleton Integer provideInteger() {
+        return counter.incrementAndGet();
+      }
+    }
+
+    TestEntryPoint ep = injectWithModule(new TestEntryPoint(), new TestModule());
+    assertSame(ep.i, ep.j);
+    assertEquals(0, counter.get());
+    assertEquals(1, ep.i.get().intValue());
+    assertEquals(1, ep.j.get().intValue());
+    assertEquals(1, counter.get());
+  }
+
+  @Test public void lazyValueIsComputedAgainAfterFailure() {
+    final AtomicInteger counter = new AtomicInteger();
+    class TestEntryPoint {
+      @Inject Lazy<Integer> i;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides Integer provideInteger() {
+        if (counter.incrementAndGet() == 1) {
+          throw new IllegalStateException("first");
+        }
+        return counter.get();
+      }
+    }
+
+    TestEntryPoint ep = injectWithModule(new TestEntryPoint(), new TestModule());
+    try {
+      ep.i.get();
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+    assertEquals(2, ep.i.get().intValue());
+    assertEquals(2, ep.i.get().intValue());
+    assertEquals(2, counter.get());
+  }
+
   private <T> T injectWithModule(T ep, Object ... modules) {
     return ObjectGraph.create(modules).inject(ep);
   }
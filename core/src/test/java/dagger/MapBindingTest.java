@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static dagger.Provides.Type.MAP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public final class MapBindingTest {
+  @Test public void mapBindingsKeepContributionOrder() {
+    class TestEntryPoint {
+      @Inject Map<String, Integer> numbers;
+    }
+
+    @Module
+    class ThreeModule {
+      @Provides(type=MAP) @MapKey("three") Integer provideThree() { return 3; }
+    }
+
+    @Module
+    class TwoModule {
+      @Provides(type=MAP) @MapKey("two") Integer provideTwo() { return 2; }
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class OneModule {
+      @Provides(type=MAP) @MapKey("one") Integer provideOne() { return 1; }
+    }
+
+    TestEntryPoint ep = injectWithModule(new TestEntryPoint(),
+        new OneModule(), new TwoModule(), new ThreeModule());
+    assertEquals(Arrays.asList("one", "two", "three"),
+        new ArrayList<String>(ep.numbers.keySet()));
+    assertEquals(Arrays.asList(1, 2, 3), new ArrayList<Integer>(ep.numbers.values()));
+    try {
+      ep.numbers.put("four", 4);
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  @Test public void mapOfProvidersConstructsOnlyTheValuesUsed() {
+    final AtomicInteger aCount = new AtomicInteger();
+    final AtomicInteger bCount = new AtomicInteger();
+    class TestEntryPoint {
+      @Inject Map<String, Provider<String>> providers1;
+      @Inject Map<String, Provider<String>> providers2;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides(type=MAP) @MapKey("a") String provideA() {
+        return "a" + aCount.incrementAndGet();
+      }
+      @Provides(type=MAP) @MapKey("b") String provideB() {
+        return "b" + bCount.incrementAndGet();
+      }
+    }
+
+    TestEntryPoint ep = injectWithModule(new TestEntryPoint(), new TestModule());
+    assertSame(ep.providers1, ep.providers2);
+    // Methods of one module contribute in no particular order.
+    assertEquals(new HashSet<String>(Arrays.asList("a", "b")), ep.providers1.keySet());
+    assertEquals(0, aCount.get());
+    assertEquals("b1", ep.providers1.get("b").get());
+    assertEquals("b2", ep.providers1.get("b").get());
+    assertEquals(0, aCount.get());
+  }
+
+  @Test public void mapsOfSingletonsAreShared() {
+    final AtomicInteger counter = new AtomicInteger();
+    class TestEntryPoint {
+      @Inject Map<String, Integer> numbers1;
+      @Inject Map<String, Integer> numbers2;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides(type=MAP) @MapKey("a") @Singleton Integer provideA() {
+        return counter.incrementAndGet();
+      }
+      @Provides(type=MAP) @MapKey("b") Integer provideB() {
+        return counter.incrementAndGet();
+      }
+    }
+
+    TestEntryPoint ep = injectWithModule(new TestEntryPoint(), new TestModule());
+    assertNotSame(ep.numbers1, ep.numbers2);
+    assertEquals(ep.numbers1.get("a"), ep.numbers2.get("a"));
+    assertEquals(3, counter.get());
+
+    class SingletonEntryPoint {
+      @Inject Map<String, Integer> numbers1;
+      @Inject Map<String, Integer> numbers2;
+    }
+
+    @Module(entryPoints = SingletonEntryPoint.class)
+    class SingletonModule {
+      @Provides(type=MAP) @MapKey("a") @Singleton Integer provideA() {
+        return counter.incrementAndGet();
+      }
+    }
+
+    SingletonEntryPoint singletonEp =
+        injectWithModule(new SingletonEntryPoint(), new SingletonModule());
+    assertSame(singletonEp.numbers1, singletonEp.numbers2);
+  }
+
+  @Test public void qualifiedMapBindings() {
+    class TestEntryPoint {
+      @Inject @Named("foo") Map<String, String> foo;
+      @Inject Map<String, String> plain;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides(type=MAP) @MapKey("a") @Named("foo") String provideFoo() { return "foo"; }
+      @Provides(type=MAP) @MapKey("a") String providePlain() { return "plain"; }
+    }
+
+    TestEntryPoint ep = injectWithModule(new TestEntryPoint(), new TestModule());
+    assertEquals("foo", ep.foo.get("a"));
+    assertEquals("plain", ep.plain.get("a"));
+  }
+
+  @Test public void qualifiedMapsOfProviders() {
+    class TestEntryPoint {
+      @Inject @Named("foo") Map<String, Provider<String>> foo;
+      @Inject Map<String, Provider<String>> plain;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides(type=MAP) @MapKey("a") @Named("foo") String provideFoo() { return "foo"; }
+      @Provides(type=MAP) @MapKey("a") String providePlain() { return "plain"; }
+    }
+
+    TestEntryPoint ep = injectWithModule(new TestEntryPoint(), new TestModule());
+    assertEquals("foo", ep.foo.get("a").get());
+    assertEquals("plain", ep.plain.get("a").get());
+  }
+
+  static class Node {
+    @Inject Map<String, Provider<Node>> children;
+  }
+
+  @Test public void contributorsMayDependOnTheirMapOfProviders() {
+    @Module(entryPoints = Node.class)
+    class TestModule {
+      @Provides(type=MAP) @MapKey("self") Node provideSelf(Node node) { return node; }
+    }
+
+    ObjectGraph graph = ObjectGraph.create(new TestModule());
+    graph.validate(); // The map of providers doesn't call the contributor when it's injected.
+    Node node = graph.get(Node.class);
+    assertNotSame(node, node.children.get("self").get());
+  }
+
+  @Test public void duplicateMapKeysAreRejected() {
+    @Module
+    class TestIncludesModule {
+      @Provides(type=MAP) @MapKey("a") String provideOther() { return "other"; }
+    }
+
+    @Module(includes = TestIncludesModule.class)
+    class TestModule {
+      @Provides(type=MAP) @MapKey("a") String provideA() { return "a"; }
+    }
+
+    try {
+      ObjectGraph.create(new TestModule(), new TestIncludesModule());
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void validateMapBinding() {
+    class TestEntryPoint {
+      @Inject Map<String, String> strings;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides(type=MAP) @MapKey("a") String provideA() { return "a"; }
+    }
+
+    ObjectGraph.create(new TestModule()).validate();
+  }
+
+  private <T> T injectWithModule(T ep, Object ... modules) {
+    return ObjectGraph.create(modules).inject(ep);
+  }
+}
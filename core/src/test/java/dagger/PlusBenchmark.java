@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Compares creating per-request graphs with {@link ObjectGraph#plus} to
+ * creating them with a {@link ObjectGraph#planPlus template}. Run with {@code
+ * java dagger.PlusBenchmark [iterations]}.
+ */
+public final class PlusBenchmark {
+  @Singleton
+  static class Database {
+    @Inject Database() {}
+  }
+
+  static class Request {
+    final String path;
+    Request(String path) {
+      this.path = path;
+    }
+  }
+
+  static class Handler {
+    @Inject Database database;
+    @Inject Request request;
+    @Inject Session session;
+  }
+
+  @Singleton
+  static class Session {
+    @Inject Request request;
+  }
+
+  @Module(entryPoints = Database.class)
+  static class ApplicationModule { }
+
+  @Module(
+      addsTo = ApplicationModule.class,
+      entryPoints = Handler.class,
+      includes = HelperModule.class
+  )
+  static class RequestModule {
+    final Request request;
+    RequestModule(Request request) {
+      this.request = request;
+    }
+    @Provides Request provideRequest() {
+      return request;
+    }
+  }
+
+  @Module(addsTo = ApplicationModule.class, complete = false)
+  static class HelperModule {
+    @Provides @Singleton StringBuilder provideBuffer() {
+      return new StringBuilder();
+    }
+  }
+
+  public static void main(String[] args) {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    ObjectGraph application = ObjectGraph.create(new ApplicationModule());
+    ObjectGraph.Template template = application.planPlus(RequestModule.class);
+
+    for (int round = 0; round < 3; round++) {
+      long plusNanos = timePlus(application, iterations);
+      long templateNanos = timeTemplate(template, iterations);
+      System.out.printf("plus(): %,d ns/graph  planPlus(): %,d ns/graph%n",
+          plusNanos / iterations, templateNanos / iterations);
+    }
+  }
+
+  private static long timePlus(ObjectGraph application, int iterations) {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      ObjectGraph request = application.plus(new RequestModule(new Request("/")));
+      request.get(Handler.class);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static long timeTemplate(ObjectGraph.Template template, int iterations) {
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      ObjectGraph request = template.create(new RequestModule(new Request("/")));
+      request.get(Handler.class);
+    }
+    return System.nanoTime() - start;
+  }
+}
@@ -15,11 +15,18 @@
  */
 package dagger;
 
+import dagger.internal.Binding;
+import dagger.internal.ProblemDetector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 import javax.inject.Inject;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import static org.fest.assertions.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
 @RunWith(JUnit4.class)
@@ -75,6 +82,199 @@ public final class ProblemDetectorTest {
     graph.validate();
   }
 
+  @Test public void validateEntryPointChecksOnlyItsDependencies() {
+    @Module(entryPoints = { Rock.class, Pebble.class })
+    class TestModule {
+    }
+
+    ObjectGraph graph = ObjectGraph.create(new TestModule());
+    graph.validate(Pebble.class);
+    try {
+      graph.validate(Rock.class);
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test public void validateEntryPointChecksItsProvideKey() {
+    @Module(entryPoints = Tree.class)
+    class TestModule {
+    }
+
+    ObjectGraph graph = ObjectGraph.create(new TestModule());
+    try {
+      graph.validate(Tree.class);
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      graph.freeze().validate(Tree.class);
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test public void validateEntryPointChecksProvidesMethods() {
+    @Module(entryPoints = String.class)
+    class TestModule {
+      @Provides String provideString(Integer i) {
+        throw new AssertionError();
+      }
+      @Provides Integer provideInteger(String s) {
+        throw new AssertionError();
+      }
+    }
+
+    ObjectGraph graph = ObjectGraph.create(new TestModule());
+    try {
+      graph.validate(String.class);
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test public void validateEntryPointRequiresEntryPoint() {
+    @Module(entryPoints = Pebble.class)
+    class TestModule {
+    }
+
+    ObjectGraph graph = ObjectGraph.create(new TestModule());
+    try {
+      graph.validate(Rock.class);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  @Test public void validatePlusChecksBindingsItAdds() {
+    @Module(entryPoints = Pebble.class)
+    class BaseModule {
+    }
+
+    @Module(addsTo = BaseModule.class, entryPoints = Rock.class)
+    class CyclicModule {
+    }
+
+    @Module(addsTo = BaseModule.class, entryPoints = Pebble.class)
+    class PebbleModule {
+    }
+
+    ObjectGraph base = ObjectGraph.create(new BaseModule());
+    base.validate();
+    base.plus(new PebbleModule()).validate();
+    try {
+      base.plus(new CyclicModule()).validate();
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test public void everyCycleIsReportedInOneRun() {
+    TestBinding a = new TestBinding("A");
+    TestBinding b = new TestBinding("B");
+    TestBinding c = new TestBinding("C");
+    TestBinding d = new TestBinding("D");
+    TestBinding e = new TestBinding("E");
+    a.dependsOn(b);
+    b.dependsOn(a);
+    c.dependsOn(d);
+    d.dependsOn(e);
+    e.dependsOn(c);
+    try {
+      new ProblemDetector().detectCircularDependencies(bindings(a, b, c, d, e));
+      fail();
+    } catch (IllegalStateException expected) {
+      assertThat(expected.getMessage()).isEqualTo(""
+          + "Dependency cycle:\n"
+          + "    0. A bound by A\n"
+          + "    1. B bound by B\n"
+          + "    0. A\n"
+          + "Dependency cycle:\n"
+          + "    0. C bound by C\n"
+          + "    1. D bound by D\n"
+          + "    2. E bound by E\n"
+          + "    0. C");
+    }
+  }
+
+  @Test public void bindingsThatReachCyclesAreNotCycleFree() {
+    TestBinding root = new TestBinding("Root");
+    TestBinding leaf = new TestBinding("Leaf");
+    TestBinding self = new TestBinding("Self");
+    TestBinding user = new TestBinding("User");
+    root.dependsOn(leaf);
+    self.dependsOn(self);
+    user.dependsOn(self);
+    user.dependsOn(leaf);
+    try {
+      new ProblemDetector().detectCircularDependencies(bindings(root, user));
+      fail();
+    } catch (IllegalStateException expected) {
+      assertThat(expected.getMessage()).contains("0. Self bound by Self");
+    }
+    assertThat(root.isCycleFree()).isTrue();
+    assertThat(leaf.isCycleFree()).isTrue();
+    assertThat(self.isCycleFree()).isFalse();
+    assertThat(user.isCycleFree()).isFalse();
+  }
+
+  @Test public void deepGraphsDontOverflowTheStack() {
+    List<Binding<?>> chain = new ArrayList<Binding<?>>();
+    TestBinding previous = new TestBinding("0");
+    chain.add(previous);
+    for (int i = 1; i < 100000; i++) {
+      TestBinding binding = new TestBinding(Integer.toString(i));
+      binding.dependsOn(previous);
+      chain.add(binding);
+      previous = binding;
+    }
+    Collections.reverse(chain);
+    new ProblemDetector().detectCircularDependencies(chain);
+    assertThat(previous.isCycleFree()).isTrue();
+  }
+
+  private static List<Binding<?>> bindings(Binding<?>... bindings) {
+    List<Binding<?>> result = new ArrayList<Binding<?>>();
+    Collections.addAll(result, bindings);
+    return result;
+  }
+
+  static class TestBinding extends Binding<Object> {
+    private final List<Binding<?>> dependencies = new ArrayList<Binding<?>>();
+
+    TestBinding(String key) {
+      super(key, null, NOT_SINGLETON, key);
+    }
+
+    void dependsOn(Binding<?> dependency) {
+      dependencies.add(dependency);
+    }
+
+    @Override public void getDependencies(Set<Binding<?>> get, Set<Binding<?>> injectMembers) {
+      get.addAll(dependencies);
+    }
+
+    @Override public String toString() {
+      return provideKey;
+    }
+  }
+
+  static class Pebble {
+    @Inject Pebble() {
+    }
+  }
+
+  /** Has no injected members, so only its provide key has a cycle. */
+  static class Tree {
+    @Inject Tree(Seed seed) {
+    }
+  }
+
+  static class Seed {
+    @Inject Seed(Tree tree) {
+    }
+  }
+
   static class Rock {
     @Inject Scissors scissors;
   }
@@ -21,10 +21,16 @@ import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -35,6 +41,8 @@ import static org.fest.assertions.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 @RunWith(JUnit4.class)
 public final class SetBindingTest {
@@ -116,6 +124,36 @@ public final class SetBindingTest {
 
  }
 
+  @Test public void multiValueBindings_AllSingletonsAreShared() {
+    final AtomicInteger singletonCounter = new AtomicInteger(100);
+    class TestEntryPoint {
+      @Inject Set<Integer> objects1;
+      @Inject Set<Integer> objects2;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides(type=SET) @Singleton Integer a() { return singletonCounter.getAndIncrement(); }
+      @Provides(type=SET) @Singleton Integer b() { return singletonCounter.getAndIncrement(); }
+    }
+
+    TestEntryPoint ep = injectWithModule(new TestEntryPoint(), new TestModule());
+    assertEquals(set(100, 101), ep.objects1);
+    assertEquals(Arrays.asList(100, 101), Arrays.asList(ep.objects1.toArray()));
+    assertSame(ep.objects1, ep.objects2);
+    assertEquals(ep.objects1.hashCode(), set(100, 101).hashCode());
+    try {
+      ep.objects1.add(102);
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+    try {
+      ep.objects1.clear();
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
   @Test public void multiValueBindings_WithQualifiers() {
     class TestEntryPoint {
       @Inject Set<String> strings;
@@ -135,6 +173,184 @@ public final class SetBindingTest {
     assertEquals(set("string4", "string3"), ep.fooStrings);
   }
 
+  @Test public void multiValueBindings_SetOfProvidersConstructsOnlyElementsUsed() {
+    final AtomicInteger aCounter = new AtomicInteger();
+    final AtomicInteger bCounter = new AtomicInteger();
+    class TestEntryPoint {
+      @Inject Set<Provider<String>> providers1;
+      @Inject Set<Provider<String>> providers2;
+      @Inject @Named("foo") Set<Provider<String>> fooProviders;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides(type=SET) String a() { return "a" + aCounter.incrementAndGet(); }
+      @Provides(type=SET) String b() { return "b" + bCounter.incrementAndGet(); }
+      @Provides(type=SET) @Named("foo") String foo() { return "foo"; }
+    }
+
+    TestEntryPoint ep = injectWithModule(new TestEntryPoint(), new TestModule());
+    assertSame(ep.providers1, ep.providers2);
+    assertEquals(2, ep.providers1.size());
+    assertEquals(0, aCounter.get() + bCounter.get());
+    Set<String> values = new LinkedHashSet<String>();
+    for (Provider<String> provider : ep.providers1) {
+      values.add(provider.get());
+    }
+    assertEquals(set("a1", "b1"), values);
+    assertEquals("foo", ep.fooProviders.iterator().next().get());
+    try {
+      ep.providers1.clear();
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  @Test public void multiValueBindings_SetOfLaziesRemembersValues() {
+    final AtomicInteger counter = new AtomicInteger();
+    final AtomicInteger singletonCounter = new AtomicInteger(100);
+    class TestEntryPoint {
+      @Inject Set<Lazy<Integer>> lazies1;
+      @Inject Set<Lazy<Integer>> lazies2;
+      @Inject @Named("singletons") Set<Lazy<Integer>> singletons1;
+      @Inject @Named("singletons") Set<Lazy<Integer>> singletons2;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides(type=SET) Integer a() { return counter.incrementAndGet(); }
+      @Provides(type=SET) @Named("singletons") @Singleton Integer b() {
+        return singletonCounter.getAndIncrement();
+      }
+    }
+
+    TestEntryPoint ep = injectWithModule(new TestEntryPoint(), new TestModule());
+    assertEquals(0, counter.get());
+    Lazy<Integer> lazy1 = ep.lazies1.iterator().next();
+    assertEquals(1, (int) lazy1.get());
+    assertEquals(1, (int) lazy1.get());
+    assertEquals(2, (int) ep.lazies2.iterator().next().get());
+    assertSame(ep.singletons1, ep.singletons2);
+    assertEquals(100, (int) ep.singletons1.iterator().next().get());
+    assertEquals(100, (int) ep.singletons2.iterator().next().get());
+  }
+
+  @Test public void multiValueBindings_SetOfProvidersRequiresMultibinding() {
+    class TestEntryPoint {
+      @Inject Set<Provider<String>> providers;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class TestModule {
+      @Provides Set<String> strings() { return set("a"); }
+    }
+
+    try {
+      ObjectGraph.create(new TestModule()).validate();
+      fail();
+    } catch (IllegalStateException expected) {
+      assertThat(expected.getMessage()).contains("No binding for ");
+      assertThat(expected.getMessage()).contains("required by ");
+      assertThat(expected.getMessage()).contains(TestEntryPoint.class.getName() + ".providers");
+    }
+  }
+
+  @Test public void multiValueBindings_ParallelSetsConstructContributorsConcurrently() {
+    final CountDownLatch allStarted = new CountDownLatch(3);
+    class TestEntryPoint {
+      @Inject Set<String> strings;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class ModuleA {
+      @Provides(type=SET) String a() { return awaitAll(allStarted, "a"); }
+    }
+
+    @Module
+    class ModuleB {
+      @Provides(type=SET) String b() { return awaitAll(allStarted, "b"); }
+    }
+
+    @Module
+    class ModuleC {
+      @Provides(type=SET) String c() { return awaitAll(allStarted, "c"); }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      ObjectGraph graph = new ObjectGraph.Builder()
+          .addModules(new ModuleA(), new ModuleB(), new ModuleC())
+          .parallelSets(executor)
+          .build();
+      TestEntryPoint ep = graph.inject(new TestEntryPoint());
+      assertEquals(Arrays.asList("a", "b", "c"), Arrays.asList(ep.strings.toArray()));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test public void multiValueBindings_ParallelSetsThrowFirstFailure() {
+    class TestEntryPoint {
+      @Inject Set<String> strings;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class ModuleA {
+      @Provides(type=SET) String a() { return "a"; }
+    }
+
+    @Module
+    class ModuleB {
+      @Provides(type=SET) String b() { throw new IllegalStateException("b"); }
+    }
+
+    @Module
+    class ModuleC {
+      @Provides(type=SET) String c() { throw new IllegalStateException("c"); }
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      ObjectGraph graph = new ObjectGraph.Builder()
+          .addModules(new ModuleA(), new ModuleB(), new ModuleC())
+          .parallelSets(executor)
+          .build();
+      graph.inject(new TestEntryPoint());
+      fail();
+    } catch (IllegalStateException expected) {
+      assertEquals("b", expected.getMessage());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test public void multiValueBindings_ParallelSetsDontWaitForTheExecutor() {
+    class TestEntryPoint {
+      @Inject Set<String> strings;
+    }
+
+    @Module(entryPoints = TestEntryPoint.class)
+    class ModuleA {
+      @Provides(type=SET) String a() { return "a"; }
+    }
+
+    @Module
+    class ModuleB {
+      @Provides(type=SET) String b() { return "b"; }
+    }
+
+    Executor neverRuns = new Executor() {
+      @Override public void execute(Runnable command) {
+      }
+    };
+    ObjectGraph graph = new ObjectGraph.Builder()
+        .addModules(new ModuleA(), new ModuleB())
+        .parallelSets(neverRuns)
+        .build();
+    TestEntryPoint ep = graph.plus().inject(new TestEntryPoint());
+    assertEquals(Arrays.asList("a", "b"), Arrays.asList(ep.strings.toArray()));
+  }
+
   // TODO(cgruber): Move this into an example project.
   @Test public void sampleMultiBindingLogger() {
     class TestEntryPoint {
@@ -211,6 +427,18 @@ public final class SetBindingTest {
     void log(LogMessage message);
   }
 
+  private static String awaitAll(CountDownLatch allStarted, String value) {
+    allStarted.countDown();
+    try {
+      if (!allStarted.await(10, TimeUnit.SECONDS)) {
+        throw new AssertionError("Contributors weren't constructed concurrently");
+      }
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+    return value;
+  }
+
   private <T> T injectWithModule(T ep, Object ... modules) {
     return ObjectGraph.create(modules).inject(ep);
   }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public final class TemplateTest {
+  @Singleton
+  static class Counter {
+    int count;
+    @Inject Counter() {}
+  }
+
+  static class Client {
+    @Inject Counter counter;
+    @Inject String name;
+  }
+
+  @Module(entryPoints = Client.class)
+  static class ClientModule {
+    final String name;
+    ClientModule(String name) {
+      this.name = name;
+    }
+    @Provides String provideName() {
+      return name;
+    }
+  }
+
+  @Module(entryPoints = Client.class)
+  static class IncompleteModule { }
+
+  @Test public void graphsHaveTheirOwnModulesAndSingletons() {
+    ObjectGraph.Template template = ObjectGraph.planCreate(ClientModule.class);
+    ObjectGraph one = template.create(new ClientModule("one"));
+    ObjectGraph two = template.create(new ClientModule("two"));
+    one.get(Client.class).counter.count++;
+    assertThat(one.get(Client.class).name).isEqualTo("one");
+    assertThat(two.get(Client.class).name).isEqualTo("two");
+    assertThat(one.get(Client.class).counter).isSameAs(one.get(Client.class).counter);
+    assertThat(two.get(Client.class).counter).isNotSameAs(one.get(Client.class).counter);
+    assertThat(two.get(Client.class).counter.count).isEqualTo(0);
+  }
+
+  @Test public void validatedGraphsShareValidation() {
+    ObjectGraph.Template template = ObjectGraph.planCreate(ClientModule.class);
+    template.create(new ClientModule("one")).validate();
+    ObjectGraph two = template.create(new ClientModule("two"));
+    two.validate();
+    assertThat(two.get(Client.class).name).isEqualTo("two");
+  }
+
+  @Test public void everyGraphWithProblemsFailsValidation() {
+    ObjectGraph.Template template = ObjectGraph.planCreate(IncompleteModule.class);
+    for (int i = 0; i < 2; i++) {
+      try {
+        template.create().validate();
+        fail();
+      } catch (IllegalStateException expected) {
+      }
+    }
+  }
+
+  @Test public void rejectsUnplannedModules() {
+    ObjectGraph.Template template = ObjectGraph.planCreate(IncompleteModule.class);
+    try {
+      template.create(new ClientModule("one"));
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger;
+
+import dagger.internal.Binding;
+import dagger.internal.Linker;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that graphs of certified modules skip problem detection, but are
+ * still linked. The modules' adapters are written by hand, with bindings that
+ * depend on each other in a cycle that problem detection would find.
+ */
+@RunWith(JUnit4.class)
+public final class ValidationCertificateTest {
+  /** Listed in this test's certificate index resource. */
+  public static class CertifiedModule {
+    public static class ModuleAdapter extends CyclicModuleAdapter<CertifiedModule> {
+      @Override protected CertifiedModule newModule() {
+        return new CertifiedModule();
+      }
+    }
+  }
+
+  /**
+   * Listed in this test's certificate index resource, with a binding that
+   * depends on a class that isn't injectable.
+   */
+  public static class CertifiedIncompleteModule {
+    public static class ModuleAdapter
+        extends dagger.internal.ModuleAdapter<CertifiedIncompleteModule> {
+      public ModuleAdapter() {
+        super(new String[0], new Class<?>[0], false, new Class<?>[0], true, true);
+      }
+
+      @Override public void getBindings(Map<String, Binding<?>> map) {
+        map.put("java.lang.String",
+            new DependentBinding("java.lang.String", NotInjectable.class.getName()));
+      }
+
+      @Override protected CertifiedIncompleteModule newModule() {
+        return new CertifiedIncompleteModule();
+      }
+    }
+  }
+
+  /** Stands for an @Inject class from another jar that no longer has an @Inject constructor. */
+  static class NotInjectable {
+    NotInjectable(String name) {
+    }
+  }
+
+  public static class UncertifiedModule {
+    public static class ModuleAdapter extends CyclicModuleAdapter<UncertifiedModule> {
+      @Override protected UncertifiedModule newModule() {
+        return new UncertifiedModule();
+      }
+    }
+  }
+
+  public static class EmptyModule {
+    public static class ModuleAdapter extends dagger.internal.ModuleAdapter<EmptyModule> {
+      public ModuleAdapter() {
+        super(new String[0], new Class<?>[0], false, new Class<?>[0], true, true);
+      }
+      @Override protected EmptyModule newModule() {
+        return new EmptyModule();
+      }
+    }
+  }
+
+  @Test public void certifiedGraphsSkipProblemDetection() {
+    ObjectGraph.create(new CertifiedModule()).validate();
+  }
+
+  @Test public void certifiedGraphsReportMissingBindings() {
+    assertValidationFails(ObjectGraph.create(new CertifiedIncompleteModule()));
+  }
+
+  @Test public void uncertifiedGraphsAreValidated() {
+    assertValidationFails(ObjectGraph.create(new UncertifiedModule()));
+  }
+
+  @Test public void graphsWithOtherModulesAreValidated() {
+    assertValidationFails(ObjectGraph.create(new CertifiedModule(), new EmptyModule()));
+  }
+
+  @Test public void extendedGraphsAreValidated() {
+    ObjectGraph graph = ObjectGraph.create(new EmptyModule()).plus(new CertifiedModule());
+    assertValidationFails(graph);
+  }
+
+  private void assertValidationFails(ObjectGraph graph) {
+    try {
+      graph.validate();
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  abstract static class CyclicModuleAdapter<T> extends dagger.internal.ModuleAdapter<T> {
+    CyclicModuleAdapter() {
+      super(new String[0], new Class<?>[0], false, new Class<?>[0], true, true);
+    }
+
+    @Override public void getBindings(Map<String, Binding<?>> map) {
+      map.put("java.lang.String", new DependentBinding("java.lang.String", "java.lang.Integer"));
+      map.put("java.lang.Integer", new DependentBinding("java.lang.Integer", "java.lang.String"));
+    }
+  }
+
+  static class DependentBinding extends Binding<Object> {
+    private final String dependencyKey;
+    private Binding<?> dependency;
+
+    DependentBinding(String key, String dependencyKey) {
+      super(key, null, NOT_SINGLETON, key);
+      this.dependencyKey = dependencyKey;
+      setLibrary(true);
+    }
+
+    @Override public void attach(Linker linker) {
+      dependency = linker.requestBinding(dependencyKey, requiredBy);
+    }
+
+    @Override public void getDependencies(Set<Binding<?>> get, Set<Binding<?>> injectMembers) {
+      get.add(dependency);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public final class WarmUpTest {
+  static final List<Class<?>> constructed = Collections.synchronizedList(new ArrayList<Class<?>>());
+
+  @Singleton
+  static class Pool {
+    @Inject Pool() {
+      constructed.add(Pool.class);
+    }
+  }
+
+  /** Not a singleton: warm-up looks through it to the singletons it needs. */
+  static class Connection {
+    @Inject Pool pool;
+  }
+
+  @Singleton
+  static class Cache {
+    @Inject Connection connection;
+    @Inject Cache() {
+      constructed.add(Cache.class);
+    }
+  }
+
+  @Singleton
+  static class Parser {
+    @Inject Parser() {
+      constructed.add(Parser.class);
+    }
+  }
+
+  static class Service {
+    @Inject Cache cache;
+    @Inject Parser parser;
+  }
+
+  @Singleton
+  static class Broken {
+    @Inject Broken() {
+      throw new UnsupportedOperationException("broken");
+    }
+  }
+
+  @Module(entryPoints = Service.class)
+  static class ServiceModule { }
+
+  @Module(entryPoints = Broken.class)
+  static class BrokenModule { }
+
+  private ExecutorService executor;
+
+  @Before public void setUp() {
+    constructed.clear();
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Test public void warmUpConstructsSingletonsInDependencyOrder() throws Exception {
+    ObjectGraph graph = ObjectGraph.create(new ServiceModule());
+    graph.warmUp(executor).get();
+    assertThat(constructed).hasSize(3);
+    assertThat(constructed.indexOf(Pool.class)).isLessThan(constructed.indexOf(Cache.class));
+
+    Service service = graph.get(Service.class);
+    assertThat(constructed).hasSize(3);
+    assertThat(service.cache.connection.pool).isNotNull();
+  }
+
+  @Test public void frozenGraphWarmUp() throws Exception {
+    ObjectGraph graph = ObjectGraph.create(new ServiceModule()).freeze();
+    graph.warmUp(executor).get();
+    assertThat(constructed).hasSize(3);
+    graph.get(Service.class);
+    assertThat(constructed).hasSize(3);
+  }
+
+  @Test public void warmUpFailsWithSingletonException() throws Exception {
+    ObjectGraph graph = ObjectGraph.create(new BrokenModule());
+    try {
+      graph.warmUp(executor).get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertThat(expected.getCause().getMessage()).isEqualTo("broken");
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+@RunWith(JUnit4.class)
+public final class ClassCacheTest {
+  private final List<Class<?>> created = new ArrayList<Class<?>>();
+
+  private final ClassCache<String> cache = new ClassCache<String>() {
+    @Override protected String create(Class<?> type) {
+      created.add(type);
+      if (type == Void.class) {
+        throw new IllegalArgumentException("void");
+      }
+      return type.getSimpleName();
+    }
+  };
+
+  @Test public void valuesAreCreatedOncePerClass() {
+    assertThat(cache.get(String.class)).isEqualTo("String");
+    assertThat(cache.get(Integer.class)).isEqualTo("Integer");
+    assertThat(cache.get(String.class)).isEqualTo("String");
+    assertThat(created).hasSize(2);
+  }
+
+  @Test public void failuresAreNotCached() {
+    for (int i = 0; i < 2; i++) {
+      try {
+        cache.get(Void.class);
+        fail();
+      } catch (IllegalArgumentException expected) {
+      }
+    }
+    assertThat(created).hasSize(2);
+  }
+
+  @Test public void valuesDontKeepOtherClassLoadersAlive() throws Exception {
+    ClassCache<Object> cache = new ClassCache<Object>() {
+      @Override protected Object create(Class<?> type) {
+        return type; // The strongest possible reference to the loader.
+      }
+    };
+    WeakReference<ClassLoader> loader = cacheInNewLoader(cache);
+    for (int i = 0; i < 10 && loader.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertThat(loader.get()).isNull();
+  }
+
+  private WeakReference<ClassLoader> cacheInNewLoader(ClassCache<Object> cache)
+      throws Exception {
+    ClassLoader loader = new IsolatingLoader();
+    Class<?> type = loader.loadClass(Isolated.class.getName());
+    assertThat(type).isNotSameAs(Isolated.class);
+    assertThat(cache.get(type)).isSameAs(type);
+    return new WeakReference<ClassLoader>(loader);
+  }
+
+  static class Isolated {
+  }
+
+  /** Loads its own copy of {@link Isolated}. */
+  static class IsolatingLoader extends ClassLoader {
+    IsolatingLoader() {
+      super(ClassCacheTest.class.getClassLoader());
+    }
+
+    @Override protected synchronized Class<?> loadClass(String name, boolean resolve)
+        throws ClassNotFoundException {
+      if (!name.equals(Isolated.class.getName())) {
+        return super.loadClass(name, resolve);
+      }
+      try {
+        InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        for (int count; (count = in.read(buffer)) != -1;) {
+          out.write(buffer, 0, count);
+        }
+        in.close();
+        byte[] classFile = out.toByteArray();
+        return defineClass(name, classFile, 0, classFile.length);
+      } catch (IOException e) {
+        throw new ClassNotFoundException(name, e);
+      }
+    }
+  }
+}
@@ -18,17 +18,23 @@ package dagger.internal;
 import dagger.Lazy;
 import dagger.MembersInjector;
 import dagger.Provides;
+import java.lang.annotation.Retention;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Named;
 import javax.inject.Provider;
+import javax.inject.Qualifier;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 import static dagger.Provides.Type.SET;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
 import static org.fest.assertions.Assertions.assertThat;
 
 @RunWith(JUnit4.class)
@@ -145,6 +151,59 @@ public final class KeysTest {
         .isEqualTo("@javax.inject.Named(value=foo)/java.util.Set<java.lang.String>");
   }
 
+  @Qualifier @Retention(RUNTIME)
+  @interface Tagged {
+    String value();
+    int size() default 3;
+    TimeUnit unit() default TimeUnit.SECONDS;
+    Class<?> type() default String.class;
+    String[] names() default { "a", "b" };
+  }
+
+  @Tagged(value = "foo", size = 4, type = KeysTest[].class) List<String> tagged;
+  @Test public void qualifierMembersAreSortedAndIncludeDefaults() throws NoSuchFieldException {
+    assertThat(fieldKey("tagged")).isEqualTo("@dagger.internal.KeysTest$Tagged("
+        + "names=[a, b], size=4, type=dagger.internal.KeysTest[], unit=SECONDS, value=foo)"
+        + "/java.util.List<java.lang.String>");
+  }
+
+  @Tagged("foo") List<String> equalTagged1;
+  @Tagged("foo") List<String> equalTagged2;
+  @Test public void equalQualifiersShareKeys() throws NoSuchFieldException {
+    assertThat(fieldKey("equalTagged1")).isSameAs(fieldKey("equalTagged2"));
+  }
+
+  @Test public void keysAreInterned() {
+    String name = "java.util.List<java.lang.String>";
+    assertThat(Key.get(name)).isSameAs(Key.get(new String(name)));
+  }
+
+  @Test public void unusedKeysAreCollected() throws InterruptedException {
+    WeakReference<Key> key = new WeakReference<Key>(Key.get(KeysTest.class.getName() + "$Unused"));
+    for (int i = 0; i < 10 && key.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertThat(key.get()).isNull();
+  }
+
+  @Test public void keysDontKeepOtherClassLoadersAlive() throws Exception {
+    WeakReference<ClassLoader> loader = keyInNewLoader();
+    for (int i = 0; i < 10 && loader.get() != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertThat(loader.get()).isNull();
+  }
+
+  private WeakReference<ClassLoader> keyInNewLoader() throws Exception {
+    ClassLoader loader = new ClassCacheTest.IsolatingLoader();
+    Class<?> type = loader.loadClass(ClassCacheTest.Isolated.class.getName());
+    Class<?> arrayType = Array.newInstance(type, 0).getClass();
+    assertThat(Keys.get(arrayType)).isEqualTo(ClassCacheTest.Isolated.class.getName() + "[]");
+    return new WeakReference<ClassLoader>(loader);
+  }
+
   private String fieldKey(String fieldName) throws NoSuchFieldException {
     Field field = KeysTest.class.getDeclaredField(fieldName);
     return Keys.get(field.getGenericType(), field.getAnnotations(), field);
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how long a linker takes to link a large graph of just-in-time
+ * bindings, and how many times each binding is attached. Run with {@code
+ * java dagger.internal.LinkerBenchmark [bindings]}.
+ */
+public final class LinkerBenchmark {
+  public static void main(String[] args) {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 8192;
+    for (int round = 0; round < 5; round++) {
+      NodePlugin plugin = new NodePlugin(size);
+      Linker linker = new Linker(null, plugin, new ThrowingErrorHandler());
+      long startNanos = System.nanoTime();
+      synchronized (linker) {
+        linker.requestBinding("node0", LinkerBenchmark.class);
+        linker.linkRequested();
+      }
+      long nanos = System.nanoTime() - startNanos;
+
+      int attaches = 0;
+      int maxAttaches = 0;
+      for (NodeBinding binding : plugin.created) {
+        attaches += binding.attachCount;
+        maxAttaches = Math.max(maxAttaches, binding.attachCount);
+      }
+      System.out.printf("%,d bindings linked in %,d us: %,d attaches, at most %d per binding%n",
+          linker.getLinkedCount(), nanos / 1000, attaches, maxAttaches);
+    }
+  }
+
+  /**
+   * Creates bindings for the nodes of a binary heap, where {@code node<i>}
+   * depends on its children and on the next node, so that the graph is both
+   * deep and wide.
+   */
+  private static class NodePlugin implements Plugin {
+    final List<NodeBinding> created = new ArrayList<NodeBinding>();
+    private final int size;
+
+    NodePlugin(int size) {
+      this.size = size;
+    }
+
+    @Override public Binding<?> getAtInjectBinding(
+        String key, String className, ClassLoader classLoader, boolean mustBeInjectable) {
+      NodeBinding binding = new NodeBinding(
+          key, Integer.parseInt(className.substring("node".length())), size);
+      created.add(binding);
+      return binding;
+    }
+
+    @Override public <T> ModuleAdapter<T> getModuleAdapter(Class<? extends T> moduleClass,
+        T module) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public StaticInjection getStaticInjection(Class<?> injectedClass) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class NodeBinding extends Binding<Object> {
+    private final int index;
+    private final int size;
+    int attachCount;
+
+    NodeBinding(String key, int index, int size) {
+      super(key, null, NOT_SINGLETON, key);
+      this.index = index;
+      this.size = size;
+    }
+
+    @Override public void attach(Linker linker) {
+      attachCount++;
+      for (int dependency : new int[] { 2 * index + 1, 2 * index + 2, index + 1 }) {
+        if (dependency < size) {
+          linker.requestBinding("node" + dependency, this);
+        }
+      }
+    }
+  }
+}
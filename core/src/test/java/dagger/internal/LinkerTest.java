@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dagger.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public final class LinkerTest {
+  private static final int CHAIN_LENGTH = 200;
+
+  @Test public void deepJitChainAttachesEachBindingOnce() {
+    ChainPlugin plugin = new ChainPlugin();
+    Linker linker = new Linker(null, plugin, new ThrowingErrorHandler());
+    synchronized (linker) {
+      Binding<?> head = linker.requestBinding("link0", LinkerTest.class);
+      linker.linkRequested();
+      assertThat(head.isLinked()).isTrue();
+    }
+    assertThat(linker.getLinkedCount()).isEqualTo(CHAIN_LENGTH + 1);
+    assertAttachedOnce(plugin);
+  }
+
+  @Test public void linkingAgainAttachesNothing() {
+    ChainPlugin plugin = new ChainPlugin();
+    Linker linker = new Linker(null, plugin, new ThrowingErrorHandler());
+    synchronized (linker) {
+      linker.requestBinding("link0", LinkerTest.class);
+      linker.linkRequested();
+      linker.linkAll();
+    }
+    assertThat(linker.getLinkedCount()).isEqualTo(CHAIN_LENGTH + 1);
+    assertAttachedOnce(plugin);
+  }
+
+  @Test public void childLinksOnlyTheBaseBindingsItUses() {
+    Linker base = new Linker(null, new ChainPlugin(), new ThrowingErrorHandler());
+    base.installBindings(Collections.singletonMap("link190", new LinkBinding("link190", 190)));
+    base.setRoots(new RequestLink0());
+    Linker child = new Linker(base, new ChainPlugin(), new ThrowingErrorHandler());
+    synchronized (child) {
+      Binding<?> binding = child.requestBinding("link190", LinkerTest.class);
+      child.linkRequested();
+      assertThat(binding.isLinked()).isTrue();
+    }
+    assertThat(base.getLinkedCount()).isEqualTo(CHAIN_LENGTH - 190 + 1);
+    assertThat(child.getLinkedCount()).isEqualTo(0);
+  }
+
+  @Test public void childLinksBaseRootsBeforeCreatingJitBindings() {
+    Linker base = new Linker(null, new ChainPlugin(), new ThrowingErrorHandler());
+    base.setRoots(new RequestLink0());
+    Linker child = new Linker(base, new ChainPlugin(), new ThrowingErrorHandler());
+    synchronized (child) {
+      child.requestBinding("link5", LinkerTest.class);
+      child.linkRequested();
+    }
+    assertThat(base.getLinkedCount()).isEqualTo(CHAIN_LENGTH + 1);
+    assertThat(child.getLinkedCount()).isEqualTo(0);
+  }
+
+  @Test public void jitBindingsAreHoistedIntoBaseAndShared() {
+    Linker base = new Linker(null, new ChainPlugin(), new ThrowingErrorHandler());
+    Linker child1 = new Linker(base, new ChainPlugin(), new ThrowingErrorHandler());
+    Linker child2 = new Linker(base, new ChainPlugin(), new ThrowingErrorHandler());
+    Binding<?> binding1;
+    synchronized (child1) {
+      binding1 = child1.requestBinding("link0", LinkerTest.class);
+      child1.linkRequested();
+    }
+    Binding<?> binding2;
+    synchronized (child2) {
+      binding2 = child2.requestBinding("link0", LinkerTest.class);
+      child2.linkRequested();
+    }
+    assertThat(binding1).isSameAs(binding2);
+    assertThat(base.getLinkedCount()).isEqualTo(CHAIN_LENGTH + 1);
+    assertThat(child1.getLinkedCount()).isEqualTo(0);
+    assertThat(child2.getLinkedCount()).isEqualTo(0);
+  }
+
+  @Test public void singletonJitBindingsAreNotHoisted() {
+    Linker base = new Linker(null, new ChainPlugin(), new ThrowingErrorHandler());
+    Linker child1 = new Linker(base, new ChainPlugin(), new ThrowingErrorHandler());
+    Linker child2 = new Linker(base, new ChainPlugin(), new ThrowingErrorHandler());
+    Binding<?> binding1;
+    synchronized (child1) {
+      binding1 = child1.requestBinding("singleton", LinkerTest.class);
+      child1.linkRequested();
+    }
+    Binding<?> binding2;
+    synchronized (child2) {
+      binding2 = child2.requestBinding("singleton", LinkerTest.class);
+      child2.linkRequested();
+    }
+    assertThat(binding1).isNotSameAs(binding2);
+    assertThat(base.getLinkedCount()).isEqualTo(0);
+    assertThat(child1.getLinkedCount()).isEqualTo(1);
+  }
+
+  private static void assertAttachedOnce(ChainPlugin plugin) {
+    assertThat(plugin.created).hasSize(CHAIN_LENGTH + 1);
+    for (LinkBinding binding : plugin.created) {
+      assertThat(binding.attachCount).isEqualTo(1);
+    }
+  }
+
+  private static class RequestLink0 implements Linker.Roots {
+    @Override public void request(Linker linker) {
+      linker.requestBinding("link0", LinkerTest.class);
+    }
+  }
+
+  /**
+   * Creates a chain of bindings where {@code link<i>} depends on {@code
+   * link<i+1>} and on the last link in the chain, plus a {@code singleton}
+   * binding without dependencies.
+   */
+  private static class ChainPlugin implements Plugin {
+    final List<LinkBinding> created = new ArrayList<LinkBinding>();
+
+    @Override public Binding<?> getAtInjectBinding(
+        String key, String className, ClassLoader classLoader, boolean mustBeInjectable) {
+      LinkBinding binding = className.equals("singleton")
+          ? new LinkBinding(key, CHAIN_LENGTH, true)
+          : new LinkBinding(key, Integer.parseInt(className.substring("link".length())));
+      created.add(binding);
+      return binding;
+    }
+
+    @Override public <T> ModuleAdapter<T> getModuleAdapter(Class<? extends T> moduleClass,
+        T module) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override public StaticInjection getStaticInjection(Class<?> injectedClass) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static class LinkBinding extends Binding<Object> {
+    private final int index;
+    int attachCount;
+
+    LinkBinding(String key, int index) {
+      this(key, index, NOT_SINGLETON);
+    }
+
+    LinkBinding(String key, int index, boolean singleton) {
+      super(key, null, singleton, key);
+      this.index = index;
+    }
+
+    @Override public void attach(Linker linker) {
+      attachCount++;
+      if (index < CHAIN_LENGTH) {
+        linker.requestBinding("link" + (index + 1), this);
+        linker.requestBinding("link" + CHAIN_LENGTH, this);
+      }
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures cache hit throughput as threads are added, for {@link LruCache}
+ * and for a synchronized access-ordered map like the one it replaced. Run
+ * with {@code java dagger.internal.LruCacheBenchmark [iterations]}.
+ */
+public final class LruCacheBenchmark {
+  private static final int KEYS = 64;
+
+  interface Cache {
+    Object get(Integer key);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+    final LruCache<Integer, Object> lruCache = new LruCache<Integer, Object>(Integer.MAX_VALUE) {
+      @Override protected Object create(Integer key) {
+        return key;
+      }
+    };
+    final Map<Integer, Object> map = new LinkedHashMap<Integer, Object>(0, 0.75f, true);
+    Cache concurrent = new Cache() {
+      @Override public Object get(Integer key) {
+        return lruCache.get(key);
+      }
+    };
+    Cache synchronizedMap = new Cache() {
+      @Override public Object get(Integer key) {
+        synchronized (map) {
+          Object value = map.get(key);
+          if (value == null) {
+            value = key;
+            map.put(key, value);
+          }
+          return value;
+        }
+      }
+    };
+
+    int processors = Runtime.getRuntime().availableProcessors();
+    for (int round = 0; round < 3; round++) {
+      for (int threads = 1; threads <= processors; threads *= 2) {
+        long concurrentNanos = time(concurrent, threads, iterations);
+        long synchronizedNanos = time(synchronizedMap, threads, iterations);
+        System.out.printf("%d threads: LruCache %,d hits/ms  synchronized %,d hits/ms%n", threads,
+            hitsPerMilli(threads, iterations, concurrentNanos),
+            hitsPerMilli(threads, iterations, synchronizedNanos));
+      }
+    }
+  }
+
+  private static long hitsPerMilli(int threads, int iterations, long nanos) {
+    return threads * (long) iterations * 1000000L / nanos;
+  }
+
+  /** Returns the time {@code threads} threads take to each get {@code iterations} keys. */
+  private static long time(final Cache cache, int threads, final int iterations)
+      throws InterruptedException {
+    final Integer[] keys = new Integer[KEYS];
+    for (int i = 0; i < KEYS; i++) {
+      keys[i] = i;
+    }
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      final int offset = t;
+      Thread worker = new Thread() {
+        @Override public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < iterations; i++) {
+            cache.get(keys[(i + offset) % KEYS]);
+          }
+        }
+      };
+      worker.start();
+      workers.add(worker);
+    }
+    long startNanos = System.nanoTime();
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    return System.nanoTime() - startNanos;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public final class LruCacheTest {
+  private final List<String> removed = new ArrayList<String>();
+
+  private final LruCache<String, String> cache = new LruCache<String, String>(3) {
+    @Override protected String create(String key) {
+      return key.startsWith("-") ? null : key.toUpperCase();
+    }
+
+    @Override protected void entryRemoved(
+        boolean evicted, String key, String oldValue, String newValue) {
+      removed.add((evicted ? "evicted " : "removed ") + key + "=" + oldValue);
+    }
+  };
+
+  @Test public void getCreatesAndCountsHitsAndMisses() {
+    assertThat(cache.get("a")).isEqualTo("A");
+    assertThat(cache.get("a")).isEqualTo("A");
+    assertThat(cache.get("-b")).isNull();
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(2);
+    assertThat(cache.createCount()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test public void leastRecentlyAccessedEntryIsEvicted() {
+    cache.get("a");
+    cache.get("b");
+    cache.get("c");
+    cache.get("a"); // 'b' is now the least recently accessed.
+    cache.get("d");
+    assertThat(new ArrayList<String>(cache.snapshot().keySet()))
+        .isEqualTo(Arrays.asList("c", "a", "d"));
+    assertThat(removed).isEqualTo(Arrays.asList("evicted b=B"));
+    assertThat(cache.evictionCount()).isEqualTo(1);
+  }
+
+  @Test public void putAndRemove() {
+    assertThat(cache.put("a", "1")).isNull();
+    assertThat(cache.put("a", "2")).isEqualTo("1");
+    assertThat(cache.get("a")).isEqualTo("2");
+    assertThat(cache.remove("a")).isEqualTo("2");
+    assertThat(cache.remove("a")).isNull();
+    assertThat(cache.putCount()).isEqualTo(2);
+    assertThat(removed).isEqualTo(Arrays.asList("removed a=1", "removed a=2"));
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test public void evictAll() {
+    cache.get("a");
+    cache.get("b");
+    cache.evictAll();
+    assertThat(cache.size()).isEqualTo(0);
+    assertThat(cache.snapshot().isEmpty()).isTrue();
+    assertThat(removed).isEqualTo(Arrays.asList("evicted a=A", "evicted b=B"));
+  }
+
+  @Test public void concurrentHitsAreAllCounted() throws Exception {
+    final LruCache<Integer, Integer> cache = new LruCache<Integer, Integer>(100) {
+      @Override protected Integer create(Integer key) {
+        return key;
+      }
+    };
+    for (int i = 0; i < 10; i++) {
+      cache.get(i);
+    }
+
+    final int threads = 4;
+    final int iterations = 10000;
+    final CountDownLatch start = new CountDownLatch(1);
+    final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int t = 0; t < threads; t++) {
+      Thread worker = new Thread() {
+        @Override public void run() {
+          try {
+            start.await();
+            for (int i = 0; i < iterations; i++) {
+              if (cache.get(i % 10) != i % 10) {
+                throw new AssertionError("Wrong value for " + (i % 10));
+              }
+            }
+          } catch (Throwable e) {
+            failure.set(e);
+          }
+        }
+      };
+      worker.start();
+      workers.add(worker);
+    }
+    start.countDown();
+    for (Thread worker : workers) {
+      worker.join();
+    }
+
+    assertThat(failure.get()).isNull();
+    assertThat(cache.hitCount()).isEqualTo(threads * iterations);
+    assertThat(cache.missCount()).isEqualTo(10);
+    assertThat(cache.snapshot().size()).isEqualTo(10);
+  }
+}
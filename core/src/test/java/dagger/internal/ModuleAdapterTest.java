@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public final class ModuleAdapterTest {
+  @Test public void copiesDontShareState() {
+    StatefulAdapter adapter = new StatefulAdapter();
+    adapter.state.add("adapter");
+    StatefulAdapter copy = (StatefulAdapter) adapter.withoutModule().withModule(null);
+    assertThat(copy.state).isEmpty();
+    assertThat(copy.getModule()).isEqualTo("module");
+    assertThat(copy.entryPoints).isSameAs(adapter.entryPoints);
+  }
+
+  public static class StatefulAdapter extends ModuleAdapter<String> {
+    private static final String[] ENTRY_POINTS = { "members/java.lang.String" };
+
+    final List<String> state = new ArrayList<String>();
+
+    public StatefulAdapter() {
+      super(ENTRY_POINTS, new Class<?>[0], false, new Class<?>[0], true, false);
+    }
+
+    @Override protected String newModule() {
+      return "module";
+    }
+  }
+}
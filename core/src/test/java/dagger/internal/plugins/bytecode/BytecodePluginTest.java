@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal.plugins.bytecode;
+
+import dagger.Module;
+import dagger.ObjectGraph;
+import dagger.Provides;
+import dagger.internal.Binding;
+import dagger.internal.plugins.loading.ClassloadingPlugin;
+import dagger.internal.plugins.reflect.ReflectivePlugin;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests the generated accessors. These tests are skipped on runtimes that
+ * can't define classes, where graphs use reflection instead.
+ */
+@RunWith(JUnit4.class)
+public final class BytecodePluginTest {
+  static class Base {
+    @Inject String baseName;
+  }
+
+  static class Widget extends Base {
+    final int size;
+    final long[] weights;
+    @Inject @Named("color") String color;
+    @Inject double ratio;
+
+    @Inject Widget(int size, long[] weights) {
+      this.size = size;
+      this.weights = weights;
+    }
+  }
+
+  static class PrivateField {
+    @Inject private String name;
+  }
+
+  static class FinalField {
+    @Inject final String name = null;
+  }
+
+  static class ChecksumFailure extends Exception {
+  }
+
+  static class CheckedConstructor {
+    @Inject CheckedConstructor() throws ChecksumFailure {
+    }
+  }
+
+  @Module(entryPoints = Widget.class)
+  static class WidgetModule {
+    @Provides String provideName() {
+      return "name";
+    }
+    @Provides @Named("color") String provideColor() {
+      return "red";
+    }
+    @Provides int provideSize() {
+      return 3;
+    }
+    @Provides long[] provideWeights() {
+      return new long[] { 5L };
+    }
+    @Provides double provideRatio() {
+      return 0.5;
+    }
+  }
+
+  @Test public void generatedAccessorInjectsConstructorAndFields() throws Exception {
+    assumeTrue(BytecodePlugin.isSupported());
+    Widget widget = newGraph(new WidgetModule()).get(Widget.class);
+    assertThat(widget.size).isEqualTo(3);
+    assertThat(widget.weights[0]).isEqualTo(5L);
+    assertThat(widget.color).isEqualTo("red");
+    assertThat(widget.ratio).isEqualTo(0.5);
+    assertThat(widget.baseName).isEqualTo("name");
+    assertThat(Class.forName(Widget.class.getName() + BytecodePlugin.INJECT_ACCESSOR_SUFFIX,
+        false, Widget.class.getClassLoader())).isNotNull();
+  }
+
+  @Test public void accessorClassesAreGeneratedOnce() {
+    assumeTrue(BytecodePlugin.isSupported());
+    newGraph(new WidgetModule()).get(Widget.class);
+    int generated = BytecodePlugin.getGeneratedClassCount();
+    assertThat(BytecodePlugin.getGenerationNanos()).isGreaterThan(0L);
+    newGraph(new WidgetModule()).get(Widget.class);
+    assertThat(BytecodePlugin.getGeneratedClassCount()).isEqualTo(generated);
+  }
+
+  @Test public void bindingsUseGeneratedAccessors() {
+    assumeTrue(BytecodePlugin.isSupported());
+    Binding<?> binding = new BytecodePlugin().getAtInjectBinding(
+        "members/" + Base.class.getName(), Base.class.getName(), Base.class.getClassLoader(),
+        false);
+    assertThat(binding.getClass().getName()).isEqualTo(GeneratedAtInjectBinding.class.getName());
+  }
+
+  @Test public void unreachableMembersAreLeftToReflection() {
+    assumeTrue(BytecodePlugin.isSupported());
+    assertRejected(PrivateField.class);
+    assertRejected(FinalField.class);
+    assertRejected(CheckedConstructor.class);
+  }
+
+  static class Gadget {
+    @Inject String name;
+  }
+
+  @Module(entryPoints = Gadget.class)
+  static class GadgetModule {
+    @Provides String provideName() {
+      return "name";
+    }
+  }
+
+  @Test public void defaultGraphsDontGenerateAccessors() {
+    int generated = BytecodePlugin.getGeneratedClassCount();
+    ObjectGraph.create(new GadgetModule()).get(Gadget.class);
+    assertThat(BytecodePlugin.getGeneratedClassCount()).isEqualTo(generated);
+  }
+
+  private static ObjectGraph newGraph(Object... modules) {
+    return new ObjectGraph.Builder()
+        .addModules(modules)
+        .plugins(new ClassloadingPlugin(), new BytecodePlugin(), new ReflectivePlugin())
+        .build();
+  }
+
+  private void assertRejected(Class<?> type) {
+    assertThat(new BytecodePlugin().getAtInjectBinding(
+        "members/" + type.getName(), type.getName(), type.getClassLoader(), false)).isNull();
+  }
+}
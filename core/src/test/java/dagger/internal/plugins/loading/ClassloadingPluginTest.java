@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2013 Square, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dagger.internal.plugins.loading;
+
+import dagger.internal.Binding;
+import dagger.internal.Linker;
+import dagger.internal.StaticInjection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+@RunWith(JUnit4.class)
+public final class ClassloadingPluginTest {
+  /** Never processed, so it has no generated classes. */
+  static class Unprocessed {
+  }
+
+  /**
+   * Has a static injection and an inject adapter that are only created by
+   * {@link TestRegistry}.
+   */
+  public static class Registered {
+    public static class StaticInjection extends dagger.internal.StaticInjection {
+      @Override public void attach(Linker linker) {
+      }
+      @Override public void inject() {
+      }
+    }
+
+    public static class InjectAdapter extends Binding<Registered> {
+      public InjectAdapter() {
+        super(Registered.class.getName(), null, false, Registered.class);
+      }
+    }
+  }
+
+  /** Listed in this test's registry index resource. */
+  public static class TestRegistry implements AdapterRegistry {
+    static int created;
+
+    @Override public String[] getClassNames() {
+      return new String[] {
+          Registered.class.getName() + ClassloadingPlugin.STATIC_INJECTION_SUFFIX,
+          Registered.class.getName() + ClassloadingPlugin.INJECT_ADAPTER_SUFFIX
+      };
+    }
+
+    @Override public Object newInstance(int index) {
+      created++;
+      switch (index) {
+        case 0:
+          return new Registered.StaticInjection();
+        case 1:
+          return new Registered.InjectAdapter();
+        default:
+          throw new IllegalArgumentException(String.valueOf(index));
+      }
+    }
+  }
+
+  @Test public void registeredClassesAreCreatedByTheirRegistry() {
+    int created = TestRegistry.created;
+    StaticInjection staticInjection = new ClassloadingPlugin().getStaticInjection(Registered.class);
+    assertThat(staticInjection.getClass()).isEqualTo(Registered.StaticInjection.class);
+    assertThat(TestRegistry.created).isEqualTo(created + 1);
+  }
+
+  @Test public void missingGeneratedClassesAreNotFoundWithoutThrowing() {
+    ClassloadingPlugin plugin = new ClassloadingPlugin();
+    ClassLoader loader = getClass().getClassLoader();
+    for (int i = 0; i < 2; i++) {
+      assertThat(plugin.getAtInjectBinding(
+          Unprocessed.class.getName(), Unprocessed.class.getName(), loader, false)).isNull();
+      assertThat(plugin.getModuleAdapter(Unprocessed.class, null)).isNull();
+      assertThat(plugin.getStaticInjection(Unprocessed.class)).isNull();
+    }
+  }
+
+  @Test public void classesAreLoadedByTheGivenLoader() {
+    RecordingLoader loader = new RecordingLoader();
+    new ClassloadingPlugin().getAtInjectBinding(
+        Unprocessed.class.getName(), Unprocessed.class.getName(), loader, false);
+    assertThat(loader.requested).contains(Unprocessed.class.getName());
+  }
+
+  @Test public void registeredAdaptersDontLoadTheirClasses() {
+    RecordingLoader loader = new RecordingLoader();
+    Binding<?> binding = new ClassloadingPlugin().getAtInjectBinding(
+        Registered.class.getName(), Registered.class.getName(), loader, false);
+    assertThat(binding).isInstanceOf(Registered.InjectAdapter.class);
+    assertThat(loader.requested).excludes(Registered.class.getName());
+  }
+
+  @Test public void unknownClassesAreLookedUpOnce() {
+    RecordingLoader loader = new RecordingLoader();
+    ClassloadingPlugin plugin = new ClassloadingPlugin();
+    for (int i = 0; i < 2; i++) {
+      assertThat(plugin.getAtInjectBinding(
+          "com.example.Missing", "com.example.Missing", loader, false)).isNull();
+    }
+    assertThat(Collections.frequency(loader.requested, "com.example.Missing")).isEqualTo(1);
+  }
+
+  /** Records the names of the classes it's asked for. */
+  static class RecordingLoader extends ClassLoader {
+    final List<String> requested = new ArrayList<String>();
+
+    RecordingLoader() {
+      super(ClassloadingPluginTest.class.getClassLoader());
+    }
+
+    @Override protected synchronized Class<?> loadClass(String name, boolean resolve)
+        throws ClassNotFoundException {
+      requested.add(name);
+      return super.loadClass(name, resolve);
+    }
+  }
+
+  @Test public void unknownClassesAreNotFound() {
+    ClassLoader loader = getClass().getClassLoader();
+    assertThat(new ClassloadingPlugin().getAtInjectBinding(
+        "com.example.Missing", "com.example.Missing", loader, false)).isNull();
+  }
+}